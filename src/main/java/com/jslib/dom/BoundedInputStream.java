@@ -0,0 +1,85 @@
+package com.jslib.dom;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails when more than a given number of bytes are read from underlying stream. Since an input
+ * stream cannot throw a SAX exception, {@link ParseLimitException} is thrown as cause of an I/O exception; parse
+ * profile unwraps it, see {@link #unwrap(IOException)}.
+ *
+ * @author Iulian Rotaru
+ */
+final class BoundedInputStream extends FilterInputStream
+{
+  /** Maximum number of bytes allowed to be read. */
+  private final long maxBytes;
+  /** The number of bytes read so far. */
+  private long count;
+
+  public BoundedInputStream(InputStream stream, long maxBytes)
+  {
+    super(stream);
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    int b = in.read();
+    if(b != -1) {
+      count(1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException
+  {
+    int readCount = in.read(buffer, offset, length);
+    if(readCount != -1) {
+      count(readCount);
+    }
+    return readCount;
+  }
+
+  @Override
+  public long skip(long n) throws IOException
+  {
+    long skipCount = in.skip(n);
+    count(skipCount);
+    return skipCount;
+  }
+
+  @Override
+  public boolean markSupported()
+  {
+    // mark and reset would allow reading the same bytes more than once
+    return false;
+  }
+
+  private void count(long bytesCount) throws IOException
+  {
+    count += bytesCount;
+    if(count > maxBytes) {
+      throw new IOException(new ParseLimitException(ParseLimitException.Limit.BYTES, maxBytes));
+    }
+  }
+
+  /**
+   * Get parse limit exception thrown by bounded source, if given I/O exception was caused by one.
+   *
+   * @param exception I/O exception thrown while parsing.
+   * @return parse limit exception or null.
+   */
+  static ParseLimitException unwrap(IOException exception)
+  {
+    for(Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+      if(cause instanceof ParseLimitException) {
+        return (ParseLimitException)cause;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,67 @@
+package com.jslib.dom;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader that fails when more than a given number of characters are read from underlying reader. It is the characters
+ * counterpart of {@link BoundedInputStream} and reports exceeded limit in the same way.
+ *
+ * @author Iulian Rotaru
+ */
+final class BoundedReader extends FilterReader
+{
+  /** Maximum number of characters allowed to be read. */
+  private final long maxChars;
+  /** The number of characters read so far. */
+  private long count;
+
+  public BoundedReader(Reader reader, long maxChars)
+  {
+    super(reader);
+    this.maxChars = maxChars;
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    int c = in.read();
+    if(c != -1) {
+      count(1);
+    }
+    return c;
+  }
+
+  @Override
+  public int read(char[] buffer, int offset, int length) throws IOException
+  {
+    int readCount = in.read(buffer, offset, length);
+    if(readCount != -1) {
+      count(readCount);
+    }
+    return readCount;
+  }
+
+  @Override
+  public long skip(long n) throws IOException
+  {
+    long skipCount = in.skip(n);
+    count(skipCount);
+    return skipCount;
+  }
+
+  @Override
+  public boolean markSupported()
+  {
+    return false;
+  }
+
+  private void count(long charsCount) throws IOException
+  {
+    count += charsCount;
+    if(count > maxChars) {
+      throw new IOException(new ParseLimitException(ParseLimitException.Limit.BYTES, maxChars));
+    }
+  }
+}
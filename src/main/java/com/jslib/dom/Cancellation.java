@@ -0,0 +1,72 @@
+package com.jslib.dom;
+
+import static com.jslib.util.Params.isTrue;
+
+/**
+ * Cancellation token for long running queries, see {@link DocumentImpl#findByXPath(Cancellation, String, Object...)}.
+ * A token is cancelled explicitly, from any thread, with {@link #cancel()} or implicitly when its deadline, if any,
+ * passes. Query evaluation checks the token cooperatively and aborts with {@link XPathCancelledException}.
+ *
+ * <pre>
+ * Cancellation cancellation = Cancellation.timeout(200);
+ * EList items = doc.findByXPath(cancellation, "//*[contains(., '%s')]", text);
+ * </pre>
+ *
+ * @author Iulian Rotaru
+ */
+public final class Cancellation
+{
+  /** Deadline, as returned by {@link System#nanoTime()}, meaningful only if {@link #hasDeadline} is true. */
+  private final long deadline;
+  /** Flag true if this token has a deadline. */
+  private final boolean hasDeadline;
+  /** Flag set by {@link #cancel()}. */
+  private volatile boolean cancelled;
+
+  private Cancellation(long deadline, boolean hasDeadline)
+  {
+    this.deadline = deadline;
+    this.hasDeadline = hasDeadline;
+  }
+
+  /**
+   * Create cancellation token with no deadline; it is cancelled only explicitly.
+   *
+   * @return newly created token.
+   */
+  public static Cancellation create()
+  {
+    return new Cancellation(0, false);
+  }
+
+  /**
+   * Create cancellation token with a deadline given timeout from now; it can also be cancelled explicitly.
+   *
+   * @param timeout timeout, in milliseconds.
+   * @return newly created token.
+   * @throws IllegalArgumentException if timeout is negative.
+   */
+  public static Cancellation timeout(long timeout)
+  {
+    isTrue(timeout >= 0, "Timeout should be positive or zero.");
+    return new Cancellation(System.nanoTime() + timeout * 1000000L, true);
+  }
+
+  /**
+   * Cancel this token. Queries using it are aborted at their next cancellation check.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+  }
+
+  /**
+   * Test if this token was cancelled or its deadline passed.
+   *
+   * @return true if this token is cancelled.
+   */
+  public boolean isCancelled()
+  {
+    return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0);
+  }
+}
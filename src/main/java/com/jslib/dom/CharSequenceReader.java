@@ -0,0 +1,136 @@
+package com.jslib.dom;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader over characters sequence. Unlike {@link java.io.StringReader} this reader does not need a string instance and
+ * reads characters directly from the sequence; it is used to feed string builders or other mutable sequences to parsers
+ * without <code>toString()</code> copy. For {@link String} source uses {@link String#getChars(int, int, char[], int)}
+ * for bulk transfer.
+ * <p>
+ * Reader instance is not thread safe and source characters sequence should not be changed while reading.
+ *
+ * @author Iulian Rotaru
+ */
+final class CharSequenceReader extends Reader
+{
+  /** Source characters sequence, null after reader close. */
+  private CharSequence source;
+  /** Source characters sequence length, cached at reader creation. */
+  private final int length;
+  /** Index of the next character to read. */
+  private int position;
+  /** Position saved by {@link #mark(int)}. */
+  private int mark;
+
+  /**
+   * Create reader for given characters sequence.
+   *
+   * @param source source characters sequence.
+   */
+  public CharSequenceReader(CharSequence source)
+  {
+    this.source = source;
+    this.length = source.length();
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    ensureOpen();
+    if(position >= length) {
+      return -1;
+    }
+    return source.charAt(position++);
+  }
+
+  @Override
+  public int read(char[] buffer, int offset, int count) throws IOException
+  {
+    ensureOpen();
+    if(offset < 0 || count < 0 || offset + count > buffer.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    if(count == 0) {
+      return 0;
+    }
+    if(position >= length) {
+      return -1;
+    }
+
+    int end = Math.min(length, position + count);
+    if(source instanceof String) {
+      ((String)source).getChars(position, end, buffer, offset);
+    }
+    else if(source instanceof StringBuilder) {
+      ((StringBuilder)source).getChars(position, end, buffer, offset);
+    }
+    else {
+      for(int i = position, j = offset; i < end; ++i, ++j) {
+        buffer[j] = source.charAt(i);
+      }
+    }
+
+    int readCount = end - position;
+    position = end;
+    return readCount;
+  }
+
+  @Override
+  public long skip(long count) throws IOException
+  {
+    ensureOpen();
+    if(count <= 0 || position >= length) {
+      return 0;
+    }
+    int skipCount = (int)Math.min(length - position, count);
+    position += skipCount;
+    return skipCount;
+  }
+
+  @Override
+  public boolean ready() throws IOException
+  {
+    ensureOpen();
+    return true;
+  }
+
+  @Override
+  public boolean markSupported()
+  {
+    return true;
+  }
+
+  @Override
+  public void mark(int readAheadLimit) throws IOException
+  {
+    ensureOpen();
+    mark = position;
+  }
+
+  @Override
+  public void reset() throws IOException
+  {
+    ensureOpen();
+    position = mark;
+  }
+
+  @Override
+  public void close()
+  {
+    source = null;
+  }
+
+  /**
+   * Throw IO exception if this reader was closed.
+   *
+   * @throws IOException if reader is closed.
+   */
+  private void ensureOpen() throws IOException
+  {
+    if(source == null) {
+      throw new IOException("Reader closed.");
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package com.jslib.dom;
+
+import com.jslib.util.Params;
+
+/**
+ * Live view on element CSS classes, in the spirit of W3C DOM <code>classList</code>. Element class attribute is a
+ * white space separated set of class names; this view reads the attribute on every operation so that it always
+ * reflects current element state and writes attribute at most once per operation, even when adding or removing
+ * multiple classes.
+ * <p>
+ * Class names are located by scanning attribute value for white space delimited tokens, without splitting value and
+ * without regular expressions. Class name arguments should not be empty and should not contain white space.
+ *
+ * @author Iulian Rotaru
+ */
+public final class ClassList
+{
+  /** Attribute name for CSS class. */
+  private static final String ATTR_CLASS = "class";
+
+  /** Wrapped W3C DOM element. */
+  private final org.w3c.dom.Element node;
+
+  ClassList(org.w3c.dom.Element node)
+  {
+    this.node = node;
+  }
+
+  /**
+   * Test if element has given CSS class.
+   *
+   * @param cssClass CSS class.
+   * @return true if element has CSS class.
+   * @throws IllegalArgumentException if CSS class is empty or contains white space.
+   */
+  public boolean contains(String cssClass)
+  {
+    checkClass(cssClass);
+    return indexOf(node.getAttribute(ATTR_CLASS), cssClass, 0) != -1;
+  }
+
+  /**
+   * Add CSS classes not already present on element. Classes are appended in given order and class attribute is written
+   * only if at least one class is added.
+   *
+   * @param cssClasses CSS classes to add.
+   * @throws IllegalArgumentException if a CSS class is empty or contains white space.
+   */
+  public void add(String... cssClasses)
+  {
+    String classes = node.getAttribute(ATTR_CLASS);
+    StringBuilder builder = null;
+    for(String cssClass : cssClasses) {
+      checkClass(cssClass);
+      if(indexOf(classes, cssClass, 0) != -1 || (builder != null && indexOf(builder, cssClass, 0) != -1)) {
+        continue;
+      }
+      if(builder == null) {
+        builder = new StringBuilder(classes);
+      }
+      if(builder.length() > 0 && !isSpace(builder.charAt(builder.length() - 1))) {
+        builder.append(' ');
+      }
+      builder.append(cssClass);
+    }
+    if(builder != null) {
+      node.setAttribute(ATTR_CLASS, builder.toString());
+    }
+  }
+
+  /**
+   * Remove CSS classes from element. All occurrences of given classes are removed and remaining classes are separated
+   * by a single space. Class attribute is not written if element has none of given classes.
+   *
+   * @param cssClasses CSS classes to remove.
+   * @throws IllegalArgumentException if a CSS class is empty or contains white space.
+   */
+  public void remove(String... cssClasses)
+  {
+    String classes = node.getAttribute(ATTR_CLASS);
+    boolean found = false;
+    for(String cssClass : cssClasses) {
+      checkClass(cssClass);
+      found |= indexOf(classes, cssClass, 0) != -1;
+    }
+    if(!found) {
+      return;
+    }
+
+    StringBuilder builder = new StringBuilder(classes.length());
+    int length = classes.length();
+    int start = 0;
+    while(start < length) {
+      while(start < length && isSpace(classes.charAt(start))) {
+        ++start;
+      }
+      int end = start;
+      while(end < length && !isSpace(classes.charAt(end))) {
+        ++end;
+      }
+      if(end > start && !matches(classes, start, end, cssClasses)) {
+        append(builder, classes, start, end);
+      }
+      start = end;
+    }
+    node.setAttribute(ATTR_CLASS, builder.toString());
+  }
+
+  /**
+   * Remove CSS class if present, otherwise add it.
+   *
+   * @param cssClass CSS class.
+   * @return true if element has CSS class after this operation.
+   * @throws IllegalArgumentException if CSS class is empty or contains white space.
+   */
+  public boolean toggle(String cssClass)
+  {
+    return toggle(cssClass, !contains(cssClass));
+  }
+
+  /**
+   * Add CSS class if <code>force</code> flag is true, otherwise remove it.
+   *
+   * @param cssClass CSS class,
+   * @param force flag true to add and false to remove CSS class.
+   * @return the value of <code>force</code> flag, that is, true if element has CSS class after this operation.
+   * @throws IllegalArgumentException if CSS class is empty or contains white space.
+   */
+  public boolean toggle(String cssClass, boolean force)
+  {
+    if(force) {
+      add(cssClass);
+    }
+    else {
+      remove(cssClass);
+    }
+    return force;
+  }
+
+  /**
+   * Replace CSS class with a new one, at the position of the first occurrence of existing class. Other occurrences of
+   * existing class are removed, as are duplicates of new class. Does nothing if element has not existing class.
+   *
+   * @param cssClass existing CSS class,
+   * @param newCssClass new CSS class.
+   * @return true if existing CSS class was found and replaced.
+   * @throws IllegalArgumentException if a CSS class is empty or contains white space.
+   */
+  public boolean replace(String cssClass, String newCssClass)
+  {
+    checkClass(cssClass);
+    checkClass(newCssClass);
+    String classes = node.getAttribute(ATTR_CLASS);
+    if(indexOf(classes, cssClass, 0) == -1) {
+      return false;
+    }
+
+    StringBuilder builder = new StringBuilder(classes.length() + newCssClass.length());
+    boolean replaced = false;
+    int length = classes.length();
+    int start = 0;
+    while(start < length) {
+      while(start < length && isSpace(classes.charAt(start))) {
+        ++start;
+      }
+      int end = start;
+      while(end < length && !isSpace(classes.charAt(end))) {
+        ++end;
+      }
+      if(end > start) {
+        boolean existing = classes.regionMatches(start, cssClass, 0, end - start) && cssClass.length() == end - start;
+        boolean duplicate = classes.regionMatches(start, newCssClass, 0, end - start) && newCssClass.length() == end - start;
+        if(!existing && !duplicate) {
+          append(builder, classes, start, end);
+        }
+        else if(!replaced) {
+          append(builder, newCssClass, 0, newCssClass.length());
+          replaced = true;
+        }
+      }
+      start = end;
+    }
+    node.setAttribute(ATTR_CLASS, builder.toString());
+    return true;
+  }
+
+  @Override
+  public String toString()
+  {
+    return node.getAttribute(ATTR_CLASS);
+  }
+
+  /**
+   * Find the index of a white space delimited token into a tokens list. Returns -1 if token is not found or is empty.
+   * This method does not allocate memory.
+   *
+   * @param tokens white space separated tokens, e.g. element class attribute value,
+   * @param token token to search for,
+   * @param fromIndex index to start search from.
+   * @return token index or -1.
+   */
+  static int indexOf(CharSequence tokens, String token, int fromIndex)
+  {
+    int length = token.length();
+    if(length == 0) {
+      return -1;
+    }
+    int last = tokens.length() - length;
+    for(int index = fromIndex; index <= last; ++index) {
+      if(index > 0 && !isSpace(tokens.charAt(index - 1))) {
+        continue;
+      }
+      int end = index + length;
+      if(end < tokens.length() && !isSpace(tokens.charAt(end))) {
+        continue;
+      }
+      if(regionMatches(tokens, index, token)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionMatches(CharSequence tokens, int index, String token)
+  {
+    for(int i = 0; i < token.length(); ++i) {
+      if(tokens.charAt(index + i) != token.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(String classes, int start, int end, String[] cssClasses)
+  {
+    for(String cssClass : cssClasses) {
+      if(cssClass.length() == end - start && classes.regionMatches(start, cssClass, 0, end - start)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void append(StringBuilder builder, String value, int start, int end)
+  {
+    if(builder.length() > 0) {
+      builder.append(' ');
+    }
+    builder.append(value, start, end);
+  }
+
+  private static void checkClass(String cssClass)
+  {
+    Params.notNullOrEmpty(cssClass, "CSS class");
+    for(int i = 0; i < cssClass.length(); ++i) {
+      Params.isFalse(isSpace(cssClass.charAt(i)), "CSS class |%s| contains white space.", cssClass);
+    }
+  }
+
+  static boolean isSpace(char c)
+  {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+  }
+}
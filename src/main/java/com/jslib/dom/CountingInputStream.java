@@ -0,0 +1,75 @@
+package com.jslib.dom;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that counts bytes read from underlying stream.
+ *
+ * @author Iulian Rotaru
+ */
+final class CountingInputStream extends FilterInputStream
+{
+  /** The number of bytes read so far. */
+  private long count;
+  /** Count value saved on mark. */
+  private long mark;
+
+  public CountingInputStream(InputStream stream)
+  {
+    super(stream);
+  }
+
+  /**
+   * Get the number of bytes read so far from underlying stream, including bytes skipped.
+   *
+   * @return bytes count.
+   */
+  public long getCount()
+  {
+    return count;
+  }
+
+  @Override
+  public int read() throws IOException
+  {
+    int b = in.read();
+    if(b != -1) {
+      ++count;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException
+  {
+    int readCount = in.read(buffer, offset, length);
+    if(readCount != -1) {
+      count += readCount;
+    }
+    return readCount;
+  }
+
+  @Override
+  public long skip(long n) throws IOException
+  {
+    long skipCount = in.skip(n);
+    count += skipCount;
+    return skipCount;
+  }
+
+  @Override
+  public synchronized void mark(int readLimit)
+  {
+    in.mark(readLimit);
+    mark = count;
+  }
+
+  @Override
+  public synchronized void reset() throws IOException
+  {
+    in.reset();
+    count = mark;
+  }
+}
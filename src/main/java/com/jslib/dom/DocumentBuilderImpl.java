@@ -4,14 +4,13 @@ import static com.jslib.util.Params.isFalse;
 import static com.jslib.util.Params.notNull;
 import static com.jslib.util.Params.notNullOrEmpty;
 
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.nio.charset.Charset;
 
@@ -41,6 +40,10 @@ import com.jslib.lang.BugError;
  * <p>
  * All loaders use XML declaration or HTML meta Content-Type to choose characters encoding; anyway, loader variant using
  * input source can force a particular encoding.
+ * <p>
+ * Parser features are configured by a {@link ParseProfile} supplied to constructor; default constructor uses
+ * {@link ParseProfile#DEFAULT}. Loaders reuse parsers pooled by profile. If profile has resource limits, see
+ * {@link ParseLimits}, loaders throw {@link ParseLimitException} as soon as source exceeds one of them.
  * 
  * @author Iulian Rotaru
  */
@@ -49,13 +52,43 @@ public final class DocumentBuilderImpl implements DocumentBuilder
   /** Class logger. */
   private final static Log log = LogFactory.getLog(DocumentBuilderImpl.class);
 
-  /** XML parser feature for name space support. */
-  private static final String FEAT_NAMESPACES = "http://xml.org/sax/features/namespaces";
   /** XML parser feature for schema validation. */
   private static final String FEAT_SCHEMA_VALIDATION = "http://apache.org/xml/features/validation/schema";
   /** XML parser feature for DOCTYPE disable. */
   private static final String FEAT_DOCTYPE_DECL = "http://apache.org/xml/features/disallow-doctype-decl";
 
+  /** Parser configuration. */
+  private final ParseProfile profile;
+
+  /**
+   * Create document builder with default parse profile.
+   */
+  public DocumentBuilderImpl()
+  {
+    this(ParseProfile.DEFAULT);
+  }
+
+  /**
+   * Create document builder with given parse profile.
+   * 
+   * @param profile parse profile.
+   */
+  public DocumentBuilderImpl(ParseProfile profile)
+  {
+    notNull(profile, "Parse profile");
+    this.profile = profile;
+  }
+
+  /**
+   * Get parse profile used by this document builder.
+   * 
+   * @return parse profile.
+   */
+  public ParseProfile getProfile()
+  {
+    return profile;
+  }
+
   @Override
   public EntityResolver getDefaultEntityResolver()
   {
@@ -98,27 +131,48 @@ public final class DocumentBuilderImpl implements DocumentBuilder
   @Override
   public Document parseXML(String string) throws SAXException
   {
-    notNullOrEmpty(string, "Source string");
+    return parseXML((CharSequence)string);
+  }
+
+  @Override
+  public Document parseXMLNS(String string) throws SAXException
+  {
+    return parseXMLNS((CharSequence)string);
+  }
+
+  /**
+   * Parse XML document from characters sequence. Characters are fed to parser directly, via a character stream input
+   * source, with no intermediate bytes encoding; this also avoids <code>toString()</code> copy for string builders.
+   * 
+   * @param string source characters sequence.
+   * @return newly created XML document.
+   * @throws SAXException if source is not a valid XML document.
+   */
+  public Document parseXML(CharSequence string) throws SAXException
+  {
+    notNull(string, "Source string");
+    isFalse(string.length() == 0, "Source string is empty.");
     try {
-      return loadXML(new ByteArrayInputStream(string.getBytes("UTF-8")));
-    }
-    catch(UnsupportedEncodingException e) {
-      throw new BugError("JVM with missing support for UTF-8.");
+      return loadXML(new InputSource(new CharSequenceReader(string)), false);
     }
     catch(IOException e) {
       throw new BugError("IO exception while reading string.");
     }
   }
 
-  @Override
-  public Document parseXMLNS(String string) throws SAXException
+  /**
+   * Name space aware variant of {@link #parseXML(CharSequence)}.
+   * 
+   * @param string source characters sequence.
+   * @return newly created XML document.
+   * @throws SAXException if source is not a valid XML document.
+   */
+  public Document parseXMLNS(CharSequence string) throws SAXException
   {
-    notNullOrEmpty(string, "Source string");
+    notNull(string, "Source string");
+    isFalse(string.length() == 0, "Source string is empty.");
     try {
-      return loadXMLNS(new ByteArrayInputStream(string.getBytes("UTF-8")));
-    }
-    catch(UnsupportedEncodingException e) {
-      throw new BugError("JVM with missing support for UTF-8.");
+      return loadXML(new InputSource(new CharSequenceReader(string)), true);
     }
     catch(IOException e) {
       throw new BugError("IO exception while reading string.");
@@ -190,11 +244,10 @@ public final class DocumentBuilderImpl implements DocumentBuilder
    * @throws IOException input source reading fails.
    * @throws SAXException input source content is not a valid XML document.
    */
-  private static Document loadXML(InputSource source, boolean useNamespace) throws IOException, SAXException
+  private Document loadXML(InputSource source, boolean useNamespace) throws IOException, SAXException
   {
     try {
-      org.w3c.dom.Document doc = getDocumentBuilder(null, useNamespace).parse(source);
-      return new DocumentImpl(doc);
+      return new DocumentImpl(profile.parseXML(source, useNamespace));
     }
     finally {
       close(source);
@@ -240,6 +293,247 @@ public final class DocumentBuilderImpl implements DocumentBuilder
     }
   }
 
+  // ----------------------------------------------------
+  // load XML document with parse time filter
+
+  /**
+   * Load XML document from input stream applying parse time elements filter. Elements rejected by filter are never
+   * materialized, see {@link ElementFilter}.
+   * 
+   * @param stream source XML stream,
+   * @param filter elements filter.
+   * @return newly created XML document.
+   * @throws IOException if input stream reading fails.
+   * @throws SAXException if input stream content is not a valid XML document.
+   */
+  public Document loadXML(InputStream stream, ElementFilter filter) throws IOException, SAXException
+  {
+    notNull(stream, "Input stream");
+    notNull(filter, "Element filter");
+    return loadXML(new InputSource(stream), false, filter);
+  }
+
+  /**
+   * Name space aware variant of {@link #loadXML(InputStream, ElementFilter)}.
+   * 
+   * @param stream source XML stream,
+   * @param filter elements filter.
+   * @return newly created XML document.
+   * @throws IOException if input stream reading fails.
+   * @throws SAXException if input stream content is not a valid XML document.
+   */
+  public Document loadXMLNS(InputStream stream, ElementFilter filter) throws IOException, SAXException
+  {
+    notNull(stream, "Input stream");
+    notNull(filter, "Element filter");
+    return loadXML(new InputSource(stream), true, filter);
+  }
+
+  /**
+   * Helper method to load XML document from input source applying elements filter.
+   * 
+   * @param source input source,
+   * @param useNamespace flag to control name space awareness,
+   * @param filter elements filter.
+   * @return newly created XML document.
+   * @throws IOException input source reading fails.
+   * @throws SAXException input source content is not a valid XML document.
+   */
+  private Document loadXML(InputSource source, boolean useNamespace, ElementFilter filter) throws IOException, SAXException
+  {
+    try {
+      org.apache.xerces.parsers.DOMParser parser = profile.createXMLParser(useNamespace, profile.isDeferNodeExpansion(), new ElementFilterComponent(filter));
+      profile.parse(parser, source);
+      return new DocumentImpl(parser.getDocument());
+    }
+    finally {
+      close(source);
+    }
+  }
+
+  // ----------------------------------------------------
+  // partial loading
+
+  /**
+   * Load XML document from input stream till stop condition fires. When condition fires parsing is stopped, input
+   * stream is closed and document built so far is returned; returned document is fully functional. If condition never
+   * fires entire document is loaded.
+   * 
+   * @param stream source XML stream,
+   * @param condition stop condition.
+   * @return partial document and loading statistics.
+   * @throws IOException if input stream reading fails.
+   * @throws SAXException if parsed content is not valid XML.
+   */
+  public PartialDocument loadPartialXML(InputStream stream, StopCondition condition) throws IOException, SAXException
+  {
+    notNull(stream, "Input stream");
+    notNull(condition, "Stop condition");
+    CountingInputStream countingStream = new CountingInputStream(stream);
+    // deferred DOM is completed on document end; force eager nodes creation since parsing can be aborted
+    org.apache.xerces.parsers.DOMParser parser = profile.createXMLParser(false, false, new StopConditionComponent(condition));
+    return loadPartial(parser, new InputSource(countingStream), countingStream);
+  }
+
+  /**
+   * Load HTML document from input stream till stop condition fires. See {@link #loadPartialXML(InputStream, StopCondition)}
+   * for partial loading description.
+   * 
+   * @param stream source HTML stream,
+   * @param encoding characters encoding,
+   * @param condition stop condition.
+   * @return partial document and loading statistics.
+   * @throws IOException if input stream reading fails.
+   * @throws SAXException if parsing fails.
+   */
+  public PartialDocument loadPartialHTML(InputStream stream, String encoding, StopCondition condition) throws IOException, SAXException
+  {
+    notNull(stream, "Source stream");
+    notNullOrEmpty(encoding, "Characters encoding");
+    notNull(condition, "Stop condition");
+    CountingInputStream countingStream = new CountingInputStream(stream);
+    InputSource source = new InputSource(countingStream);
+    source.setEncoding(encoding);
+    // deferred DOM is never used for partial loading, see loadPartialXML
+    return loadPartial(profile.createHTMLParser(false, false, new StopConditionComponent(condition)), source, countingStream);
+  }
+
+  /**
+   * Load HTML document from URL till stop condition fires, e.g. <code>StopCondition.afterEndTag("head")</code> for
+   * metadata extraction. Connection input stream is closed as soon as condition fires so that the rest of the document
+   * is not downloaded. See {@link #loadPartialXML(InputStream, StopCondition)} for partial loading description.
+   * 
+   * @param url HTML document URL,
+   * @param encoding characters encoding,
+   * @param condition stop condition.
+   * @return partial document and loading statistics.
+   * @throws IOException if URL reading fails.
+   * @throws SAXException if parsing fails.
+   */
+  public PartialDocument loadPartialHTML(URL url, String encoding, StopCondition condition) throws IOException, SAXException
+  {
+    notNull(url, "Source URL");
+    return loadPartialHTML(url.openConnection().getInputStream(), encoding, condition);
+  }
+
+  /**
+   * Parse input source with given parser, handling stop condition exception, then close the input source.
+   * 
+   * @param parser DOM parser with stop condition component installed,
+   * @param source input source,
+   * @param countingStream source byte stream, used to retrieve bytes read count.
+   * @return partial document.
+   * @throws IOException if input source reading fails.
+   * @throws SAXException if parsed content is not valid.
+   */
+  private PartialDocument loadPartial(org.apache.xerces.parsers.DOMParser parser, InputSource source, CountingInputStream countingStream) throws IOException, SAXException
+  {
+    boolean stopped = false;
+    try {
+      profile.parse(parser, source);
+    }
+    catch(StopConditionComponent.StopException e) {
+      stopped = true;
+    }
+    finally {
+      close(source);
+    }
+    return new PartialDocument(new DocumentImpl(parser.getDocument()), stopped, countingStream.getCount());
+  }
+
+  // ----------------------------------------------------
+  // stream XML records
+
+  /**
+   * Create streaming reader for XML records matching given path. Source XML is scanned with a pull parser and only
+   * elements matching record path are materialized, each one as a small self contained document; memory is bounded by
+   * the largest record. Returned reader should be closed after use, see {@link RecordReader}.
+   * 
+   * @param stream source XML stream,
+   * @param recordPath absolute path of the record element, e.g. <code>/feed/item</code>.
+   * @return record reader.
+   * @throws SAXException if parser creation fails.
+   */
+  public RecordReader readXMLRecords(InputStream stream, String recordPath) throws SAXException
+  {
+    notNull(stream, "Input stream");
+    return new RecordReader(stream, recordPath, false);
+  }
+
+  /**
+   * Name space aware variant of {@link #readXMLRecords(InputStream, String)}.
+   * 
+   * @param stream source XML stream,
+   * @param recordPath absolute path of the record element, with prefixed names if records use name spaces.
+   * @return record reader.
+   * @throws SAXException if parser creation fails.
+   */
+  public RecordReader readXMLRecordsNS(InputStream stream, String recordPath) throws SAXException
+  {
+    notNull(stream, "Input stream");
+    return new RecordReader(stream, recordPath, true);
+  }
+
+  /**
+   * Create streaming reader for XML records from characters stream. See {@link #readXMLRecords(InputStream, String)}.
+   * 
+   * @param reader source XML reader,
+   * @param recordPath absolute path of the record element.
+   * @return record reader.
+   * @throws SAXException if parser creation fails.
+   */
+  public RecordReader readXMLRecords(Reader reader, String recordPath) throws SAXException
+  {
+    notNull(reader, "Source reader");
+    return new RecordReader(reader, recordPath, false);
+  }
+
+  /**
+   * Name space aware variant of {@link #readXMLRecords(Reader, String)}.
+   * 
+   * @param reader source XML reader,
+   * @param recordPath absolute path of the record element, with prefixed names if records use name spaces.
+   * @return record reader.
+   * @throws SAXException if parser creation fails.
+   */
+  public RecordReader readXMLRecordsNS(Reader reader, String recordPath) throws SAXException
+  {
+    notNull(reader, "Source reader");
+    return new RecordReader(reader, recordPath, true);
+  }
+
+  /**
+   * Create streaming reader for XML records from file. See {@link #readXMLRecords(InputStream, String)}.
+   * 
+   * @param file source XML file,
+   * @param recordPath absolute path of the record element.
+   * @return record reader.
+   * @throws IOException if file opening fails.
+   * @throws SAXException if parser creation fails.
+   */
+  public RecordReader readXMLRecords(File file, String recordPath) throws IOException, SAXException
+  {
+    notNull(file, "Source file");
+    isFalse(file.isDirectory(), "Source file parameter |%s| is a directory.", file);
+    return readXMLRecords(new FileInputStream(file), recordPath);
+  }
+
+  /**
+   * Name space aware variant of {@link #readXMLRecords(File, String)}.
+   * 
+   * @param file source XML file,
+   * @param recordPath absolute path of the record element, with prefixed names if records use name spaces.
+   * @return record reader.
+   * @throws IOException if file opening fails.
+   * @throws SAXException if parser creation fails.
+   */
+  public RecordReader readXMLRecordsNS(File file, String recordPath) throws IOException, SAXException
+  {
+    notNull(file, "Source file");
+    isFalse(file.isDirectory(), "Source file parameter |%s| is a directory.", file);
+    return readXMLRecordsNS(new FileInputStream(file), recordPath);
+  }
+
   // ----------------------------------------------------
   // create empty HTML document
 
@@ -255,21 +549,48 @@ public final class DocumentBuilderImpl implements DocumentBuilder
   @Override
   public Document parseHTML(String string) throws SAXException
   {
-    notNullOrEmpty(string, "Source string");
+    return parseHTML((CharSequence)string);
+  }
+
+  @Override
+  public Document parseHTMLNS(String string) throws SAXException
+  {
+    return parseHTMLNS((CharSequence)string);
+  }
+
+  /**
+   * Parse HTML document from characters sequence. Characters are fed to parser directly, via a character stream input
+   * source, so there is no dependency on platform default charset and no intermediate bytes encoding.
+   * 
+   * @param string source characters sequence.
+   * @return newly created HTML document.
+   * @throws SAXException if source is not valid HTML.
+   */
+  public Document parseHTML(CharSequence string) throws SAXException
+  {
+    notNull(string, "Source string");
+    isFalse(string.length() == 0, "Source string is empty.");
     try {
-      return loadHTML(new ByteArrayInputStream(string.getBytes()));
+      return loadHTML(new InputSource(new CharSequenceReader(string)), "UTF-8");
     }
     catch(IOException e) {
       throw new SAXException(e.getMessage());
     }
   }
 
-  @Override
-  public Document parseHTMLNS(String string) throws SAXException
+  /**
+   * Name space aware variant of {@link #parseHTML(CharSequence)}.
+   * 
+   * @param string source characters sequence.
+   * @return newly created HTML document.
+   * @throws SAXException if source is not valid HTML.
+   */
+  public Document parseHTMLNS(CharSequence string) throws SAXException
   {
-    notNullOrEmpty(string, "Source string");
+    notNull(string, "Source string");
+    isFalse(string.length() == 0, "Source string is empty.");
     try {
-      return loadHTMLNS(new ByteArrayInputStream(string.getBytes()));
+      return loadHTMLNS(new InputSource(new CharSequenceReader(string)), "UTF-8");
     }
     catch(IOException e) {
       throw new SAXException(e.getMessage());
@@ -382,7 +703,7 @@ public final class DocumentBuilderImpl implements DocumentBuilder
   // ----------------------------------------------------
   // load HTML document from input source
 
-  private static Document loadHTML(InputSource source, String encoding) throws IOException, SAXException
+  private Document loadHTML(InputSource source, String encoding) throws IOException, SAXException
   {
     notNull(source, "Source");
     notNullOrEmpty(encoding, "Characters encoding");
@@ -395,7 +716,7 @@ public final class DocumentBuilderImpl implements DocumentBuilder
     }
   }
 
-  private static Document loadHTMLNS(InputSource source, String encoding) throws IOException, SAXException
+  private Document loadHTMLNS(InputSource source, String encoding) throws IOException, SAXException
   {
     notNull(source, "Source");
     notNullOrEmpty(encoding, "Characters encoding");
@@ -417,14 +738,98 @@ public final class DocumentBuilderImpl implements DocumentBuilder
    * @throws IOException if reading from input stream fails.
    * @throws SAXException if input source is not valid HTML.
    */
-  private static Document loadHTML(InputSource source, boolean useNamespace) throws IOException, SAXException
+  private Document loadHTML(InputSource source, boolean useNamespace) throws IOException, SAXException
   {
     notNull(source, "Source");
-    DOMParser parser = new DOMParser();
-    // source http://nekohtml.sourceforge.net/faq.html#hierarchy
-    parser.setFeature(FEAT_NAMESPACES, useNamespace);
-    parser.parse(source);
-    return new DocumentImpl(parser.getDocument());
+    return new DocumentImpl(profile.parseHTML(source, useNamespace), false);
+  }
+
+  // ----------------------------------------------------
+  // load HTML document with parse time filter
+
+  /**
+   * Load HTML document from input stream applying parse time elements filter. Elements rejected by filter are never
+   * materialized, see {@link ElementFilter}.
+   * 
+   * @param stream source HTML stream,
+   * @param encoding characters encoding,
+   * @param filter elements filter.
+   * @return newly created HTML document.
+   * @throws IOException if input stream reading fails.
+   * @throws SAXException if input stream content is not valid HTML.
+   */
+  public Document loadHTML(InputStream stream, String encoding, ElementFilter filter) throws IOException, SAXException
+  {
+    notNull(stream, "Source stream");
+    notNullOrEmpty(encoding, "Characters encoding");
+    notNull(filter, "Element filter");
+    InputSource source = new InputSource(stream);
+    source.setEncoding(encoding);
+    try {
+      return loadHTML(source, false, filter);
+    }
+    finally {
+      close(source);
+    }
+  }
+
+  /**
+   * Name space aware variant of {@link #loadHTML(InputStream, String, ElementFilter)}.
+   * 
+   * @param stream source HTML stream,
+   * @param encoding characters encoding,
+   * @param filter elements filter.
+   * @return newly created HTML document.
+   * @throws IOException if input stream reading fails.
+   * @throws SAXException if input stream content is not valid HTML.
+   */
+  public Document loadHTMLNS(InputStream stream, String encoding, ElementFilter filter) throws IOException, SAXException
+  {
+    notNull(stream, "Source stream");
+    notNullOrEmpty(encoding, "Characters encoding");
+    notNull(filter, "Element filter");
+    InputSource source = new InputSource(stream);
+    source.setEncoding(encoding);
+    try {
+      return loadHTML(source, true, filter);
+    }
+    finally {
+      close(source);
+    }
+  }
+
+  /**
+   * Load HTML document from URL applying parse time elements filter. See
+   * {@link #loadHTML(InputStream, String, ElementFilter)}.
+   * 
+   * @param url HTML document URL,
+   * @param encoding characters encoding,
+   * @param filter elements filter.
+   * @return newly created HTML document.
+   * @throws IOException if URL reading fails.
+   * @throws SAXException if source content is not valid HTML.
+   */
+  public Document loadHTML(URL url, String encoding, ElementFilter filter) throws IOException, SAXException
+  {
+    notNull(url, "Source URL");
+    return loadHTML(url.openConnection().getInputStream(), encoding, filter);
+  }
+
+  /**
+   * Utility method for loading HTML document from input source applying elements filter.
+   * 
+   * @param source input source,
+   * @param useNamespace flag set to true if document should be name space aware,
+   * @param filter elements filter.
+   * @return newly created HTML document.
+   * @throws IOException if reading from input stream fails.
+   * @throws SAXException if input source is not valid HTML.
+   */
+  private Document loadHTML(InputSource source, boolean useNamespace, ElementFilter filter) throws IOException, SAXException
+  {
+    DOMParser parser = profile.createHTMLParser(useNamespace, profile.isDeferHTMLNodeExpansion(), new ElementFilterComponent(filter));
+    profile.parse(parser, source);
+    return new DocumentImpl(parser.getDocument(), false);
   }
 
   // ----------------------------------------------------
@@ -469,7 +874,7 @@ public final class DocumentBuilderImpl implements DocumentBuilder
    * @throws IOException
    * @throws SAXException
    */
-  private static Document loadHTML(URL url, String encoding, boolean useNamespace) throws IOException, SAXException
+  private Document loadHTML(URL url, String encoding, boolean useNamespace) throws IOException, SAXException
   {
     InputStream stream = null;
     try {
@@ -483,6 +888,76 @@ public final class DocumentBuilderImpl implements DocumentBuilder
     }
   }
 
+  // ----------------------------------------------------
+  // load trusted HTML template
+
+  /**
+   * Parse trusted HTML template from characters sequence using built-in template parser. Template parser is much
+   * faster than NekoHTML but does not recover from markup errors and creates a core DOM document with lower case
+   * element names, see {@link TemplateParser}. Parse profile HTML comments and white space text options are honored.
+   *
+   * @param string template source.
+   * @return newly created HTML document.
+   * @throws SAXException if template has content outside root element or ends inside a tag.
+   */
+  public Document parseTemplate(CharSequence string) throws SAXException
+  {
+    notNull(string, "Source string");
+    isFalse(string.length() == 0, "Source string is empty.");
+    char[] chars = string.toString().toCharArray();
+    return new DocumentImpl(new TemplateParser(profile).parse(chars, chars.length), false);
+  }
+
+  /**
+   * Load trusted HTML template from characters stream. See {@link #parseTemplate(CharSequence)}.
+   *
+   * @param reader template reader, closed after parsing.
+   * @return newly created HTML document.
+   * @throws IOException if reader fails.
+   * @throws SAXException if template has content outside root element or ends inside a tag.
+   */
+  public Document loadTemplate(Reader reader) throws IOException, SAXException
+  {
+    notNull(reader, "Source reader");
+    try {
+      return new DocumentImpl(new TemplateParser(profile).parse(reader), false);
+    }
+    finally {
+      close(reader);
+    }
+  }
+
+  /**
+   * Load trusted HTML template from bytes stream. See {@link #parseTemplate(CharSequence)}.
+   *
+   * @param stream template stream, closed after parsing,
+   * @param encoding characters encoding.
+   * @return newly created HTML document.
+   * @throws IOException if stream reading fails.
+   * @throws SAXException if template has content outside root element or ends inside a tag.
+   */
+  public Document loadTemplate(InputStream stream, String encoding) throws IOException, SAXException
+  {
+    notNull(stream, "Source stream");
+    notNullOrEmpty(encoding, "Characters encoding");
+    return loadTemplate(new InputStreamReader(stream, encoding));
+  }
+
+  /**
+   * Load trusted HTML template from UTF-8 file. See {@link #parseTemplate(CharSequence)}.
+   *
+   * @param file template file.
+   * @return newly created HTML document.
+   * @throws IOException if file reading fails.
+   * @throws SAXException if template has content outside root element or ends inside a tag.
+   */
+  public Document loadTemplate(File file) throws IOException, SAXException
+  {
+    notNull(file, "Source file");
+    isFalse(file.isDirectory(), "Source file parameter |%s| is a directory.", file);
+    return loadTemplate(new FileInputStream(file), "UTF-8");
+  }
+
   // ----------------------------------------------------
 
   /**
@@ -555,7 +1030,7 @@ public final class DocumentBuilderImpl implements DocumentBuilder
    * @param useNamespace flag to use name space.
    * @return XML document builder.
    */
-  private static javax.xml.parsers.DocumentBuilder getDocumentBuilder(Schema schema, boolean useNamespace)
+  static javax.xml.parsers.DocumentBuilder getDocumentBuilder(Schema schema, boolean useNamespace)
   {
     DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
     dbf.setIgnoringComments(true);
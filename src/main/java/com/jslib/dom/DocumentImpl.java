@@ -3,6 +3,9 @@ package com.jslib.dom;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.xpath.XPathExpressionException;
 
@@ -30,21 +33,39 @@ public final class DocumentImpl implements Document
 
   /** Wrapped W3C DOM document object. */
   private final org.w3c.dom.Document doc;
+  /** Flag true if this document is XML, false for HTML. */
+  private final boolean xml;
+  /** Optional document order index, null if not created, see {@link #indexDocumentOrder()}. */
+  private DocumentOrder documentOrder;
 
   /**
-   * Construct document object wrapping native W3C DOM document.
+   * Construct document object wrapping native W3C DOM document. Document is considered HTML only if wrapped document is
+   * an HTML DOM document.
    * 
    * @param doc native DOM document.
    */
   public DocumentImpl(org.w3c.dom.Document doc)
+  {
+    this(doc, !(doc instanceof HTMLDocumentImpl));
+  }
+
+  /**
+   * Construct document object wrapping native W3C DOM document with explicit document type. Used for HTML documents
+   * loaded into a core DOM document, e.g. deferred DOM HTML documents.
+   * 
+   * @param doc native DOM document,
+   * @param xml flag true for XML document, false for HTML.
+   */
+  DocumentImpl(org.w3c.dom.Document doc, boolean xml)
   {
     this.doc = doc;
+    this.xml = xml;
   }
 
   @Override
   public boolean isXML()
   {
-    return !(doc instanceof HTMLDocumentImpl);
+    return xml;
   }
 
   /**
@@ -148,6 +169,111 @@ public final class DocumentImpl implements Document
     return getElement(doc.importNode(((ElementImpl)el).getNode(), true));
   }
 
+  /**
+   * Move element from another document into this one, without copying its subtree. Unlike
+   * {@link #importElement(Element)}, element is removed from source document and given element instance, and the ones
+   * already created for its descendants, are moved to this document and remain valid. Returned element has no parent
+   * and can be inserted into this document tree.
+   * <p>
+   * If source document implementation does not support adoption, element is copied, as by
+   * {@link #importElement(Element)}, and a new element instance is returned.
+   * 
+   * @param el element from another document.
+   * @return adopted element, usually the same instance as given element.
+   * @throws IllegalArgumentException if element is null or already belongs to this document.
+   */
+  public Element adoptElement(Element el)
+  {
+    Params.notNull(el, "Element");
+    Params.isTrue(el.getDocument() != this, "Element already belongs to this document.");
+    return getElement(transfer(el, Transfer.MOVE));
+  }
+
+  /**
+   * Transfer W3C DOM node to this document, accordingly given transfer mode. Returns given node if it already belongs to
+   * this document. On move, element instances cached on adopted subtree nodes are updated to reference this document.
+   * 
+   * @param node node to transfer,
+   * @param transfer transfer mode.
+   * @return node belonging to this document.
+   */
+  Node transfer(Node node, Transfer transfer)
+  {
+    if(node.getOwnerDocument() == doc) {
+      return node;
+    }
+    if(transfer == Transfer.MOVE) {
+      // element instances are collected before adoption since adopted descendants lose their user data
+      List<ElementImpl> elements = new ArrayList<>();
+      for(Node child = node; child != null; child = next(node, child)) {
+        Object element = child.getUserData(BACK_REF);
+        if(element instanceof ElementImpl) {
+          elements.add((ElementImpl)element);
+        }
+      }
+      Node adoptedNode = doc.adoptNode(node);
+      if(adoptedNode != null) {
+        for(ElementImpl element : elements) {
+          element.setOwnerDocument(this);
+          element.getNode().setUserData(BACK_REF, element, null);
+        }
+        return adoptedNode;
+      }
+    }
+    return doc.importNode(node, true);
+  }
+
+  /**
+   * Transfer element node to this document, see {@link #transfer(Node, Transfer)}. If element node is adopted, given
+   * element instance is moved to this document too, even if it is not cached on node.
+   * 
+   * @param el element to transfer,
+   * @param transfer transfer mode.
+   * @return element node belonging to this document.
+   */
+  Node transfer(Element el, Transfer transfer)
+  {
+    ElementImpl element = (ElementImpl)el;
+    Node node = transfer(element.getNode(), transfer);
+    if(node == element.getNode()) {
+      element.setOwnerDocument(this);
+    }
+    return node;
+  }
+
+  /**
+   * Get next node in document order, in pre-order, from root subtree.
+   * 
+   * @param root subtree root,
+   * @param node current node.
+   * @return next node or null if subtree walk is complete.
+   */
+  private static Node next(Node root, Node node)
+  {
+    if(node.getFirstChild() != null) {
+      return node.getFirstChild();
+    }
+    while(node != root && node.getNextSibling() == null) {
+      node = node.getParentNode();
+    }
+    return node != root ? node.getNextSibling() : null;
+  }
+
+  /**
+   * Walk this document elements, in document order, starting with root element. See {@link ElementVisitor} for
+   * callbacks description. Walk is iterative and does not create children lists.
+   * 
+   * @param visitor elements visitor.
+   * @return true if walk completed or false if stopped by visitor.
+   * @throws IllegalArgumentException if visitor is null.
+   */
+  public boolean walk(ElementVisitor visitor)
+  {
+    Params.notNull(visitor, "Visitor");
+    Node root = doc.getDocumentElement();
+    return root == null || TreeWalker.walk(this, root, visitor);
+  }
+
   @Override
   public Element getRoot()
   {
@@ -161,6 +287,87 @@ public final class DocumentImpl implements Document
     return getElement(doc.getElementById(id));
   }
 
+  /**
+   * Get element by trace, as returned by {@link ElementImpl#trace()}. Trace is resolved by direct children navigation,
+   * from document root element, without XPath evaluation. Element names are compared ignoring case, since trace uses
+   * lower case names; a name without index selects the first element of its kind.
+   * 
+   * @param trace element trace, e.g. <code>/html/body/div[1]/p</code>.
+   * @return element designated by trace or null if there is no such element.
+   * @throws IllegalArgumentException if trace is null, empty or not well formed.
+   */
+  public Element getByTrace(String trace)
+  {
+    Params.notNullOrEmpty(trace, "Trace");
+    Params.isTrue(trace.charAt(0) == '/', "Trace |%s| is not absolute.", trace);
+    Node node = doc;
+    int start = 1;
+    while(start <= trace.length()) {
+      int end = trace.indexOf('/', start);
+      if(end == -1) {
+        end = trace.length();
+      }
+      String name;
+      int index = 0;
+      int bracket = trace.lastIndexOf('[', end - 1);
+      if(bracket >= start) {
+        Params.isTrue(trace.charAt(end - 1) == ']', "Not closed index in trace |%s|.", trace);
+        name = trace.substring(start, bracket);
+        try {
+          index = Integer.parseInt(trace.substring(bracket + 1, end - 1));
+        }
+        catch(NumberFormatException e) {
+          index = -1;
+        }
+        Params.isTrue(index >= 0, "Invalid index in trace |%s|.", trace);
+      }
+      else {
+        name = trace.substring(start, end);
+      }
+      Params.isTrue(!name.isEmpty(), "Missing element name in trace |%s|.", trace);
+
+      node = child(node, name, index);
+      if(node == null) {
+        return null;
+      }
+      start = end + 1;
+    }
+    return getElement(node);
+  }
+
+  /**
+   * Get child element by name and index among children with the same name. Name is compared ignoring case; the first
+   * matching child fixes the node name used to count twins, as counted by {@link ElementImpl#trace()}.
+   * 
+   * @param parent parent node,
+   * @param name element name, case insensitive,
+   * @param index child index among children with the same name.
+   * @return child element node or null if not found.
+   */
+  private static Node child(Node parent, String name, int index)
+  {
+    String nodeName = null;
+    int count = 0;
+    for(Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if(child.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      if(nodeName == null) {
+        if(!child.getNodeName().equalsIgnoreCase(name)) {
+          continue;
+        }
+        nodeName = child.getNodeName();
+      }
+      else if(!child.getNodeName().equals(nodeName)) {
+        continue;
+      }
+      if(count++ == index) {
+        return child;
+      }
+    }
+    return null;
+  }
+
   @Override
   public Element getByTag(String tagName)
   {
@@ -186,7 +393,7 @@ public final class DocumentImpl implements Document
       return createEList(new NodeListImpl());
     }
     try {
-      return findByXPath(XPATH.getElementsByClassName(cssClass));
+      return findByXPath(XPATH.getElementsByClassName(), XPATH.value(cssClass));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -218,6 +425,45 @@ public final class DocumentImpl implements Document
     return createEList(XPATH.evaluateXPathNodeList(doc, xpath, args));
   }
 
+  /**
+   * Cancellable variant of {@link #findByXPath(String, Object...)}. Common location paths are evaluated natively and
+   * cancellation token is checked while evaluation progresses; other expressions are evaluated by JDK XPath engine and
+   * token is checked only before and after evaluation, see {@link NativeXPath} for supported expressions.
+   * 
+   * @param cancellation cancellation token,
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return list of result elements, possible empty.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public EList findByXPath(Cancellation cancellation, String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNull(cancellation, "Cancellation");
+    Params.notNullOrEmpty(xpath, "XPath");
+    return createEList(XPATH.evaluateXPathNodeList(doc, cancellation, xpath, args));
+  }
+
+  /**
+   * Variant of {@link #findByXPath(String, Object...)} with variables bound at evaluation instead of formatted into expression.
+   * Variables are referenced from expression as <code>$name</code>, e.g. <code>//a[@href=$url]</code>. Values need no
+   * escaping and may contain both apostrophe and quotation mark. Since expression text does not depend on values it is
+   * compiled once per thread and reused for all values. Numbers are converted to double, all other values should be
+   * strings or booleans.
+   * 
+   * @param xpath XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return list of result elements, possible empty.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   * @throws IllegalArgumentException if XPath expression references a variable not in map.
+   */
+  public EList findByXPath(String xpath, Map<String, ?> variables) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    Params.notNull(variables, "Variables");
+    return createEList(XPATH.evaluateXPathNodeList(doc, xpath, variables));
+  }
+
   @Override
   public EList findByXPathNS(NamespaceContext namespaceContext, String xpath, Object... args) throws XPathExpressionException
   {
@@ -247,7 +493,7 @@ public final class DocumentImpl implements Document
   {
     Params.notNullOrEmpty(cssClass, "CSS class");
     try {
-      return getByXPath(XPATH.getElementsByClassName(cssClass));
+      return getByXPath(XPATH.getElementsByClassName(), XPATH.value(cssClass));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -262,6 +508,44 @@ public final class DocumentImpl implements Document
     return getElement(XPATH.evaluateXPathNode(doc, xpath, args));
   }
 
+  /**
+   * Cancellable variant of {@link #getByXPath(String, Object...)}. See {@link #findByXPath(Cancellation, String, Object...)}
+   * for cancellation description.
+   * 
+   * @param cancellation cancellation token,
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return first result element or null.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public Element getByXPath(Cancellation cancellation, String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNull(cancellation, "Cancellation");
+    Params.notNullOrEmpty(xpath, "XPath");
+    return getElement(XPATH.evaluateXPathNode(doc, cancellation, xpath, args));
+  }
+
+  /**
+   * Variant of {@link #getByXPath(String, Object...)} with variables bound at evaluation instead of formatted into expression.
+   * Variables are referenced from expression as <code>$name</code>, e.g. <code>//a[@href=$url]</code>. Values need no
+   * escaping and may contain both apostrophe and quotation mark. Since expression text does not depend on values it is
+   * compiled once per thread and reused for all values. Numbers are converted to double, all other values should be
+   * strings or booleans.
+   * 
+   * @param xpath XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return first result element or null.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   * @throws IllegalArgumentException if XPath expression references a variable not in map.
+   */
+  public Element getByXPath(String xpath, Map<String, ?> variables) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    Params.notNull(variables, "Variables");
+    return getElement(XPATH.evaluateXPathNode(doc, xpath, variables));
+  }
+
   @Override
   public Element getByXPathNS(NamespaceContext namespaceContext, String xpath, Object... args) throws XPathExpressionException
   {
@@ -291,7 +575,7 @@ public final class DocumentImpl implements Document
   {
     Params.notNullOrEmpty(name, "Attribute name");
     try {
-      return getByXPath(XPATH.getElementsByAttrNameValue(name, value));
+      return getByXPath(XPATH.getElementsByAttrNameValue(name, value), XPATH.value(value));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -309,14 +593,14 @@ public final class DocumentImpl implements Document
 
     String namespacePrefix = "ns";
     try {
-      return getByXPathNS(new NamespaceContext()
+      return getElement(XPATH.evaluateXPathNodeNS(doc, new NamespaceContext()
       {
         @Override
         public String getNamespaceURI(String prefix)
         {
           return prefix.equals(namespacePrefix) ? namespaceURI : null;
         }
-      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value));
+      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value), XPATH.value(value)));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -329,7 +613,7 @@ public final class DocumentImpl implements Document
   {
     Params.notNullOrEmpty(name, "Attribute name");
     try {
-      return findByXPath(XPATH.getElementsByAttrNameValue(name, value));
+      return findByXPath(XPATH.getElementsByAttrNameValue(name, value), XPATH.value(value));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -347,14 +631,14 @@ public final class DocumentImpl implements Document
 
     String namespacePrefix = "ns";
     try {
-      return findByXPathNS(new NamespaceContext()
+      return createEList(XPATH.evaluateXPathNodeListNS(doc, new NamespaceContext()
       {
         @Override
         public String getNamespaceURI(String prefix)
         {
           return prefix.equals(namespacePrefix) ? namespaceURI : null;
         }
-      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value));
+      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value), XPATH.value(value)));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -362,6 +646,158 @@ public final class DocumentImpl implements Document
     }
   }
 
+  /**
+   * Evaluate a batch of queries in a single document traversal. Every element is visited once, in document order, and
+   * tested against all queries so that evaluation cost is linear with document size, regardless the number of queries.
+   * Returns a list of results, in the order of queries; a query with no match has an empty elements list. Use
+   * {@link EList#item(int)} with index zero for queries expecting a single element.
+   * <p>
+   * Results are the same as returned by related <code>findBy</code> method, see {@link Query}.
+   * 
+   * @param queries queries to evaluate.
+   * @return results list, one elements list per query, in queries order.
+   * @throws IllegalArgumentException if queries list is empty or contains null.
+   */
+  public List<EList> findAll(Query... queries)
+  {
+    Params.notNullOrEmpty(queries, "Queries");
+    NodeListImpl[] results = new NodeListImpl[queries.length];
+    for(int i = 0; i < queries.length; ++i) {
+      Params.notNull(queries[i], "Query");
+      results[i] = new NodeListImpl();
+    }
+
+    Node root = doc.getDocumentElement();
+    Node node = root;
+    while(node != null) {
+      if(node.getNodeType() == Node.ELEMENT_NODE) {
+        org.w3c.dom.Element element = (org.w3c.dom.Element)node;
+        for(int i = 0; i < queries.length; ++i) {
+          if(queries[i].matches(element, xml)) {
+            results[i].add(element);
+          }
+        }
+        if(node.getFirstChild() != null) {
+          node = node.getFirstChild();
+          continue;
+        }
+      }
+      while(node != root && node.getNextSibling() == null) {
+        node = node.getParentNode();
+      }
+      node = node != root ? node.getNextSibling() : null;
+    }
+
+    List<EList> elists = new ArrayList<>(queries.length);
+    for(NodeListImpl result : results) {
+      elists.add(createEList(result));
+    }
+    return elists;
+  }
+
+  /**
+   * Create document order index for this document elements, replacing existing one, if any. Index is opt-in, meant for
+   * documents not changed while index is in use; it is invalidated on first element insertion or removal. See
+   * {@link DocumentOrder} for supported operations.
+   * <p>
+   * While this document has a valid index, set operations on elements lists, e.g.
+   * {@link EListImpl#union(EList)}, use it for document order sorting.
+   * <p>
+   * Index is not free while valid: it registers DOM mutation events listeners on document and Xerces counts listeners
+   * per event type in global counters, so that every node insertion or removal, on any document from JVM, pays mutation
+   * event dispatch. Listeners are removed when index is invalidated by an element change or when it is dropped with
+   * {@link #dropDocumentOrder()}; an index no longer needed should be dropped.
+   * 
+   * @return document order index.
+   */
+  public DocumentOrder indexDocumentOrder()
+  {
+    if(documentOrder != null) {
+      documentOrder.invalidate();
+    }
+    documentOrder = new DocumentOrder(this);
+    return documentOrder;
+  }
+
+  /**
+   * Drop document order index created by {@link #indexDocumentOrder()} and remove its DOM mutation events listeners.
+   * Dropped index is not valid. This method does nothing if there is no index.
+   */
+  public void dropDocumentOrder()
+  {
+    if(documentOrder != null) {
+      documentOrder.invalidate();
+      documentOrder = null;
+    }
+  }
+
+  /**
+   * Get document order index created by {@link #indexDocumentOrder()}, if still valid.
+   * 
+   * @return document order index or null if index was not created or was invalidated by document changes.
+   */
+  public DocumentOrder getDocumentOrder()
+  {
+    return documentOrder != null && documentOrder.isValid() ? documentOrder : null;
+  }
+
+  /**
+   * Test if there is at least one element matching given query. Search stops on first matching element and no elements
+   * list or element wrapper is created. Search scope is the entire document, document root included.
+   * 
+   * @param query element query.
+   * @return true if at least one element matches the query.
+   * @throws IllegalArgumentException if query is null.
+   */
+  public boolean exists(Query query)
+  {
+    Params.notNull(query, "Query");
+    return query.count(doc.getDocumentElement(), false, xml, 1) == 1;
+  }
+
+  /**
+   * Count elements matching given query without creating elements list or element wrappers. See {@link #exists(Query)}
+   * for search scope.
+   * 
+   * @param query element query.
+   * @return matching elements count.
+   * @throws IllegalArgumentException if query is null.
+   */
+  public int count(Query query)
+  {
+    Params.notNull(query, "Query");
+    return query.count(doc.getDocumentElement(), false, xml, 0);
+  }
+
+  /**
+   * Test if XPath expression yields at least one node. XPath engine stops on first node and result nodes set is not
+   * materialized.
+   * 
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return true if expression yields at least one node.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public boolean existsXPath(String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    return XPATH.evaluateXPathExists(doc, xpath, args);
+  }
+
+  /**
+   * Count nodes yielded by XPath expression, without creating nodes list or element wrappers.
+   * 
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return result nodes count.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public int countXPath(String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    return XPATH.evaluateXPathCount(doc, xpath, args);
+  }
+
   @Override
   public void dump()
   {
@@ -405,34 +841,31 @@ public final class DocumentImpl implements Document
   }
 
   /**
-   * Recursively search for namespace declaration on requested URI and remove it. Iterate all element attributes for one
-   * with name beginning with <code>xmlns:</code> and value equal to requested namespace URI. If found remove the
-   * attribute and break iteration loop since an element can have a single namespace declaration for a given URI.
-   * <p>
-   * After processing current element attributes continue recursively with child elements.
+   * Search for namespace declaration on requested URI and remove it, on all elements from given element subtree.
+   * Iterate all element attributes for one with name beginning with <code>xmlns:</code> and value equal to requested
+   * namespace URI. If found remove the attribute and break iteration loop since an element can have a single namespace
+   * declaration for a given URI.
    * 
-   * @param element current element.
+   * @param element root element.
    * @param namespaceURI namespace URI used by namespace declaration.
    */
   private static void removeNamespaceDeclarations(org.w3c.dom.Element element, String namespaceURI)
   {
-    NamedNodeMap attributes = element.getAttributes();
-    for(int i = 0; i < attributes.getLength(); ++i) {
-      final Node attribute = attributes.item(i);
-      final String name = attribute.getNodeName();
-      if(name != null && namespaceURI.equals(attribute.getNodeValue()) && name.startsWith("xmlns:")) {
-        // an element can have only one declaration for specific namespace URI
-        element.removeAttribute(name);
-        break;
+    TreeWalker.walk(element, node -> {
+      if(node.getNodeType() != Node.ELEMENT_NODE) {
+        return ElementVisitor.Action.SKIP_SUBTREE;
       }
-    }
-
-    NodeList children = element.getChildNodes();
-    for(int i = 0; i < children.getLength(); ++i) {
-      final Node child = children.item(i);
-      if(child instanceof org.w3c.dom.Element) {
-        removeNamespaceDeclarations((org.w3c.dom.Element)child, namespaceURI);
+      NamedNodeMap attributes = node.getAttributes();
+      for(int i = 0; i < attributes.getLength(); ++i) {
+        final Node attribute = attributes.item(i);
+        final String name = attribute.getNodeName();
+        if(name != null && namespaceURI.equals(attribute.getNodeValue()) && name.startsWith("xmlns:")) {
+          // an element can have only one declaration for specific namespace URI
+          ((org.w3c.dom.Element)node).removeAttribute(name);
+          break;
+        }
       }
-    }
+      return ElementVisitor.Action.CONTINUE;
+    });
   }
 }
@@ -0,0 +1,288 @@
+package com.jslib.dom;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+
+import com.jslib.api.dom.Element;
+import com.jslib.util.Params;
+
+/**
+ * Document order index, created on demand by {@link DocumentImpl#indexDocumentOrder()}. Index numbers document
+ * elements in pre-order, starting with zero for root element, and records for every element the number of its last
+ * descendant; element number and last descendant number are the bounds of the interval labeling element subtree. With
+ * these labels document order comparison, ancestor test and lookup by number are all constant time, whereas W3C DOM
+ * <code>compareDocumentPosition</code> walks ancestors chains.
+ * <p>
+ * Index is a snapshot of document structure. It is invalidated on the first element insertion or removal, detected
+ * with DOM mutation events; after that all index operations throw illegal state exception and a new index should be
+ * created. Mutation events listener is removed on invalidation or when index is dropped, see
+ * {@link DocumentImpl#dropDocumentOrder()}. Text and attribute changes do not affect document
+ * order and do not invalidate index. If document does not support DOM events index is not invalidated and document
+ * should not be changed while index is in use.
+ * <p>
+ * This class implements element comparator so that it can be used directly to sort elements in document order.
+ *
+ * @author Iulian Rotaru
+ */
+public final class DocumentOrder implements Comparator<Element>
+{
+  /** Mutation event fired on inserted node. */
+  private static final String NODE_INSERTED = "DOMNodeInserted";
+  /** Mutation event fired on removed node. */
+  private static final String NODE_REMOVED = "DOMNodeRemoved";
+
+  /** Owner document. */
+  private final DocumentImpl ownerDoc;
+  /** Element nodes in document order, indexed by element number. */
+  private Node[] nodes;
+  /** Number of last descendant for every element, indexed by element number. */
+  private int[] ends;
+  /** The number of indexed elements. */
+  private int size;
+  /** Element numbers mapped to element nodes. */
+  private final Map<Node, Integer> numbers;
+  /** Mutation events listener, null if document does not support DOM events. */
+  private final EventListener listener;
+  /** Flag true while document structure is not changed. */
+  private boolean valid;
+
+  /**
+   * Create index for given document elements.
+   *
+   * @param ownerDoc owner document.
+   */
+  DocumentOrder(DocumentImpl ownerDoc)
+  {
+    this.ownerDoc = ownerDoc;
+    this.nodes = new Node[64];
+    this.ends = new int[64];
+    this.numbers = new IdentityHashMap<>();
+    this.valid = true;
+
+    Node root = ownerDoc.getDocument().getDocumentElement();
+    // numbers of elements entered but not yet left, that is, ancestors of current node
+    int[] stack = new int[16];
+    int depth = 0;
+    Node node = root;
+    while(node != null) {
+      int number = add(node);
+      Node child = element(node.getFirstChild());
+      if(child != null) {
+        if(depth == stack.length) {
+          int[] newStack = new int[depth << 1];
+          System.arraycopy(stack, 0, newStack, 0, depth);
+          stack = newStack;
+        }
+        stack[depth++] = number;
+        node = child;
+        continue;
+      }
+
+      // node is a leaf; leave it together with ancestors that have no next element
+      ends[number] = number;
+      while(node != root) {
+        Node sibling = element(node.getNextSibling());
+        if(sibling != null) {
+          node = sibling;
+          break;
+        }
+        node = node.getParentNode();
+        ends[stack[--depth]] = size - 1;
+      }
+      if(node == root) {
+        node = null;
+      }
+    }
+
+    if(ownerDoc.getDocument() instanceof EventTarget) {
+      listener = this::handleEvent;
+      EventTarget target = (EventTarget)ownerDoc.getDocument();
+      target.addEventListener(NODE_INSERTED, listener, true);
+      target.addEventListener(NODE_REMOVED, listener, true);
+    }
+    else {
+      listener = null;
+    }
+  }
+
+  /**
+   * Test if this index reflects current document structure.
+   *
+   * @return true if no element was inserted or removed since this index creation.
+   */
+  public boolean isValid()
+  {
+    return valid;
+  }
+
+  /**
+   * Get the number of indexed elements.
+   *
+   * @return indexed elements count.
+   * @throws IllegalStateException if this index is not valid.
+   */
+  public int size()
+  {
+    checkValid();
+    return size;
+  }
+
+  /**
+   * Get element number, that is, element position in document order, zero based. Returns -1 if element is not part of
+   * indexed document tree, e.g. it was created but not yet inserted.
+   *
+   * @param element document element.
+   * @return element number or -1.
+   * @throws IllegalArgumentException if element is null.
+   * @throws IllegalStateException if this index is not valid.
+   */
+  public int getNumber(Element element)
+  {
+    Params.notNull(element, "Element");
+    checkValid();
+    return number(((ElementImpl)element).getNode());
+  }
+
+  /**
+   * Get the number of element last descendant or element own number if it has no descendants. All element descendants
+   * have numbers in interval <code>(getNumber(element), getEnd(element)]</code>.
+   *
+   * @param element document element.
+   * @return the number of element last descendant.
+   * @throws IllegalArgumentException if element is null or is not indexed.
+   * @throws IllegalStateException if this index is not valid.
+   */
+  public int getEnd(Element element)
+  {
+    return ends[indexedNumber(element)];
+  }
+
+  /**
+   * Get element by its number.
+   *
+   * @param number element number.
+   * @return element with given number.
+   * @throws IllegalArgumentException if number is out of range.
+   * @throws IllegalStateException if this index is not valid.
+   */
+  public Element getElement(int number)
+  {
+    checkValid();
+    Params.isTrue(number >= 0 && number < size, "Element number |%d| out of range.", number);
+    return ownerDoc.getElement(nodes[number]);
+  }
+
+  /**
+   * Compare elements in document order.
+   *
+   * @param element1 first element,
+   * @param element2 second element.
+   * @return negative value if first element is before second, zero if elements are the same and positive value if
+   *         first element is after second.
+   * @throws IllegalArgumentException if an element is null or is not indexed.
+   * @throws IllegalStateException if this index is not valid.
+   */
+  @Override
+  public int compare(Element element1, Element element2)
+  {
+    return Integer.compare(indexedNumber(element1), indexedNumber(element2));
+  }
+
+  /**
+   * Test if an element is ancestor of another. An element is not its own ancestor.
+   *
+   * @param ancestor ancestor element,
+   * @param element descendant element.
+   * @return true if first element is ancestor of the second.
+   * @throws IllegalArgumentException if an element is null or is not indexed.
+   * @throws IllegalStateException if this index is not valid.
+   */
+  public boolean isAncestor(Element ancestor, Element element)
+  {
+    int ancestorNumber = indexedNumber(ancestor);
+    int number = indexedNumber(element);
+    return ancestorNumber < number && number <= ends[ancestorNumber];
+  }
+
+  /**
+   * Get element node number, -1 if node is not indexed. This method does not check index validity.
+   *
+   * @param node element node.
+   * @return node number or -1.
+   */
+  int number(Node node)
+  {
+    Integer number = numbers.get(node);
+    return number != null ? number : -1;
+  }
+
+  /** Invalidate this index and remove mutation events listener. */
+  void invalidate()
+  {
+    if(!valid) {
+      return;
+    }
+    valid = false;
+    if(listener != null) {
+      EventTarget target = (EventTarget)ownerDoc.getDocument();
+      target.removeEventListener(NODE_INSERTED, listener, true);
+      target.removeEventListener(NODE_REMOVED, listener, true);
+    }
+  }
+
+  private void handleEvent(Event event)
+  {
+    if(((Node)event.getTarget()).getNodeType() == Node.ELEMENT_NODE) {
+      invalidate();
+    }
+  }
+
+  private int add(Node node)
+  {
+    if(size == nodes.length) {
+      Node[] newNodes = new Node[size << 1];
+      System.arraycopy(nodes, 0, newNodes, 0, size);
+      nodes = newNodes;
+      int[] newEnds = new int[size << 1];
+      System.arraycopy(ends, 0, newEnds, 0, size);
+      ends = newEnds;
+    }
+    nodes[size] = node;
+    numbers.put(node, size);
+    return size++;
+  }
+
+  private int indexedNumber(Element element)
+  {
+    int number = getNumber(element);
+    Params.isTrue(number != -1, "Element |%s| is not indexed.", element);
+    return number;
+  }
+
+  private void checkValid()
+  {
+    if(!valid) {
+      throw new IllegalStateException("Document order index is not valid.");
+    }
+  }
+
+  /**
+   * Get the first element node from given node, inclusive, following next siblings.
+   *
+   * @param node start node, possible null.
+   * @return element node or null.
+   */
+  private static Node element(Node node)
+  {
+    while(node != null && node.getNodeType() != Node.ELEMENT_NODE) {
+      node = node.getNextSibling();
+    }
+    return node;
+  }
+}
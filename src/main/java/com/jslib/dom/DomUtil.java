@@ -1,19 +1,14 @@
 package com.jslib.dom;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.function.BiConsumer;
 
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import com.jslib.api.dom.Document;
 import com.jslib.api.dom.EList;
+import com.jslib.api.dom.Element;
 import com.jslib.lang.BugError;
+import com.jslib.util.Params;
 
 /**
  * DOM utility class.
@@ -21,45 +16,169 @@ import com.jslib.lang.BugError;
  * @author Iulian Rotaru
  */
 public final class DomUtil {
+	/**
+	 * White space handling rules for text extraction. White space characters are those defined by XML: space, tab,
+	 * carriage return and line feed.
+	 * 
+	 * @author Iulian Rotaru
+	 */
+	public enum WhiteSpace {
+		/** Text is reported as it is into document. */
+		PRESERVE,
+		/** Leading and trailing white spaces are removed. */
+		TRIM,
+		/** Leading and trailing white spaces are removed and inner white space sequences are replaced by a single space. */
+		NORMALIZE
+	}
+
+	/**
+	 * Find elements with a single child that is a not blank text node. Returned elements are in document order. Document
+	 * tree is scanned in a single iterative walk, see {@link #extractText(Document, WhiteSpace, BiConsumer)}.
+	 * 
+	 * @param doc source document.
+	 * @return elements list, possible empty.
+	 */
 	public static EList findByNonEmptyText(Document doc) {
-		// I did not find a XPath expression to return text nodes only
-		// the only option I have is brute force: get elements and text and remove nodes with child elements
-
-		String expression = "//*[child::text()[normalize-space()][string-length()>0]]";
-		XPath xpath = XPathFactory.newInstance().newXPath();
-		List<Node> textNodes = new ArrayList<Node>();
-		try {
-			NodeList nodes = (NodeList) xpath.evaluate(expression, ((DocumentImpl)doc).getDocument(), XPathConstants.NODESET);
-			for (int i = 0; i < nodes.getLength(); i++) {
-				Node node = nodes.item(i);
-				NodeList children = node.getChildNodes();
-				if (children.getLength() == 1 && children.item(0).getNodeType() == Node.TEXT_NODE) {
-					// accept only nodes with a single child of type text node
+		NodeListImpl textNodes = new NodeListImpl();
+		Node root = ((DocumentImpl) doc).getDocument().getDocumentElement();
+		Node node = root;
+		while (node != null) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				Node child = node.getFirstChild();
+				// accept only nodes with a single child of type text node
+				if (child != null && child == node.getLastChild() && child.getNodeType() == Node.TEXT_NODE && !isBlank(child.getNodeValue())) {
 					textNodes.add(node);
 				}
 			}
-		} catch (XPathExpressionException e) {
-			throw new BugError("Invalid XPath expression |%s|.", expression);
+			node = next(root, node);
+		}
+		return new EListImpl(doc, textNodes);
+	}
+
+	/**
+	 * Stream elements text to consumer, in a single iterative walk of document tree. Element text is the concatenation
+	 * of its direct text and CDATA children; descendants text is not included, being reported with descendant element.
+	 * Elements with blank text are not reported. Given white space rule is applied to text before reporting.
+	 * <p>
+	 * Elements are reported in document order; consumer should not modify document tree.
+	 * 
+	 * @param doc source document,
+	 * @param whiteSpace white space rule,
+	 * @param consumer consumer for element and its text.
+	 * @throws IllegalArgumentException if any argument is null.
+	 */
+	public static void extractText(Document doc, WhiteSpace whiteSpace, BiConsumer<Element, String> consumer) {
+		Params.notNull(doc, "Document");
+		Params.notNull(whiteSpace, "White space rule");
+		Params.notNull(consumer, "Text consumer");
+
+		DocumentImpl docImpl = (DocumentImpl) doc;
+		Node root = docImpl.getDocument().getDocumentElement();
+		Node node = root;
+		while (node != null) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				String text = text(node);
+				if (text != null && !isBlank(text)) {
+					consumer.accept(docImpl.getElement(node), whiteSpace(text, whiteSpace));
+				}
+			}
+			node = next(root, node);
+		}
+	}
+
+	/**
+	 * Get next node in document order, in pre-order, from root subtree.
+	 * 
+	 * @param root subtree root,
+	 * @param node current node.
+	 * @return next node or null if subtree walk is complete.
+	 */
+	private static Node next(Node root, Node node) {
+		if (node.getFirstChild() != null) {
+			return node.getFirstChild();
+		}
+		while (node != root && node.getNextSibling() == null) {
+			node = node.getParentNode();
+		}
+		return node != root ? node.getNextSibling() : null;
+	}
+
+	/**
+	 * Get element text from its direct text and CDATA children. Returns null if element has no text child. Avoid string
+	 * concatenation for the common case of a single text child.
+	 * 
+	 * @param element W3C DOM element.
+	 * @return element text, possible null.
+	 */
+	private static String text(Node element) {
+		String text = null;
+		StringBuilder builder = null;
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			short type = child.getNodeType();
+			if (type != Node.TEXT_NODE && type != Node.CDATA_SECTION_NODE) {
+				continue;
+			}
+			if (text == null) {
+				text = child.getNodeValue();
+				continue;
+			}
+			if (builder == null) {
+				builder = new StringBuilder(text);
+			}
+			builder.append(child.getNodeValue());
 		}
+		return builder != null ? builder.toString() : text;
+	}
 
-		class TextNodeList implements NodeList {
-			List<Node> textNodes;
+	private static String whiteSpace(String text, WhiteSpace whiteSpace) {
+		switch (whiteSpace) {
+		case PRESERVE:
+			return text;
 
-			TextNodeList(List<Node> textNodes) {
-				this.textNodes = textNodes;
+		case TRIM:
+			int start = 0;
+			int end = text.length();
+			while (start < end && isSpace(text.charAt(start))) {
+				++start;
+			}
+			while (end > start && isSpace(text.charAt(end - 1))) {
+				--end;
 			}
+			return text.substring(start, end);
 
-			@Override
-			public Node item(int index) {
-				return this.textNodes.get(index);
+		case NORMALIZE:
+			StringBuilder builder = new StringBuilder(text.length());
+			boolean space = false;
+			for (int i = 0; i < text.length(); ++i) {
+				char c = text.charAt(i);
+				if (isSpace(c)) {
+					space = builder.length() > 0;
+					continue;
+				}
+				if (space) {
+					builder.append(' ');
+					space = false;
+				}
+				builder.append(c);
 			}
+			return builder.toString();
 
-			@Override
-			public int getLength() {
-				return this.textNodes.size();
+		default:
+			throw new BugError("Not handled white space rule |%s|.", whiteSpace);
+		}
+	}
+
+	private static boolean isBlank(String text) {
+		for (int i = 0; i < text.length(); ++i) {
+			if (!isSpace(text.charAt(i))) {
+				return false;
 			}
 		}
-		return new EListImpl(doc, new TextNodeList(textNodes));
+		return true;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
 	}
 
 	private DomUtil() {
@@ -1,6 +1,19 @@
 package com.jslib.dom;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -9,15 +22,16 @@ import com.jslib.api.dom.Document;
 import com.jslib.api.dom.EList;
 import com.jslib.api.dom.Element;
 import com.jslib.lang.BugError;
-import com.jslib.util.Classes;
 import com.jslib.util.Params;
 
 /**
- * List of elements implementation.
+ * List of elements implementation. Besides {@link EList} interface, this class exposes typed bulk operations that work
+ * directly on wrapped nodes, without creating element instances; cast elements lists returned by this library to access
+ * them.
  * 
  * @author Iulian Rotaru
  */
-final class EListImpl implements EList {
+public final class EListImpl implements EList {
 	/** Owner document. */
 	private Document ownerDoc;
 	/** Wrapped W3C DOM NodeList interface. */
@@ -37,12 +51,35 @@ final class EListImpl implements EList {
 		this.nodeList = nodeList;
 	}
 
+	/** Element methods resolved by {@link #call(String, Object...)}, keyed by method name and arguments classes. */
+	private static final Map<List<Object>, MethodHandle> METHODS = new ConcurrentHashMap<>();
+
+	/**
+	 * Invoke named element method on every element from this list. Target method is resolved once per method name and
+	 * arguments classes and cached as a method handle, so there is no reflective lookup per element or per call. Runtime
+	 * exceptions thrown by element method are propagated as they are.
+	 * 
+	 * @param elementMethodName element method name,
+	 * @param args optional method arguments.
+	 * @return this elements list.
+	 * @throws BugError if element method is not found or throws checked exception.
+	 */
 	@Override
 	public EList call(String elementMethodName, Object... args) {
-		for (int i = 0; i < size(); ++i) {
-			Element element = item(i);
+		MethodHandle method = method(elementMethodName, args);
+		for (int i = 0; i < nodeList.getLength(); ++i) {
+			Object element = ((DocumentImpl) ownerDoc).getElement(nodeList.item(i));
 			try {
-				Classes.invoke(element, elementMethodName, args);
+				if (method.isVarargsCollector()) {
+					Object[] arguments = new Object[args.length + 1];
+					arguments[0] = element;
+					System.arraycopy(args, 0, arguments, 1, args.length);
+					method.invokeWithArguments(arguments);
+				} else {
+					method.invokeExact(element, args);
+				}
+			} catch (RuntimeException | Error e) {
+				throw e;
 			} catch (Throwable e) {
 				throw new BugError(e);
 			}
@@ -50,6 +87,304 @@ final class EListImpl implements EList {
 		return this;
 	}
 
+	/**
+	 * Get cached method handle for element method with given name and arguments or resolve and cache it. Non variable
+	 * arguments methods are adapted to receive arguments as array and to discard returned value.
+	 * 
+	 * @param name element method name,
+	 * @param args method arguments.
+	 * @return method handle.
+	 * @throws BugError if element method is not found.
+	 */
+	private static MethodHandle method(String name, Object[] args) {
+		Object[] key = new Object[args.length + 1];
+		key[0] = name;
+		for (int i = 0; i < args.length; ++i) {
+			key[i + 1] = args[i] != null ? args[i].getClass() : null;
+		}
+		return METHODS.computeIfAbsent(Arrays.asList(key), k -> resolve(name, args));
+	}
+
+	/**
+	 * Resolve element method applicable to given arguments. As with Java overload resolution, fixed arity methods are
+	 * preferred over variable arity ones and, if many methods are applicable, the most specific one is selected.
+	 * 
+	 * @param name element method name,
+	 * @param args method arguments.
+	 * @return method handle.
+	 * @throws BugError if element method is not found or is ambiguous.
+	 */
+	private static MethodHandle resolve(String name, Object[] args) {
+		List<Method> fixedArityMethods = new ArrayList<>();
+		List<Method> varargsMethods = new ArrayList<>();
+		for (Method method : ElementImpl.class.getMethods()) {
+			if (!method.getName().equals(name) || method.isBridge()) {
+				continue;
+			}
+			Class<?>[] parameters = method.getParameterTypes();
+			if (parameters.length == args.length && isAssignable(parameters, args, parameters.length)) {
+				fixedArityMethods.add(method);
+			}
+			if (method.isVarArgs() && args.length >= parameters.length - 1 && isAssignable(parameters, args, parameters.length - 1)) {
+				Class<?> componentType = parameters[parameters.length - 1].getComponentType();
+				boolean assignable = true;
+				for (int i = parameters.length - 1; i < args.length; ++i) {
+					assignable &= isAssignable(componentType, args[i]);
+				}
+				if (assignable) {
+					varargsMethods.add(method);
+				}
+			}
+		}
+
+		try {
+			if (!fixedArityMethods.isEmpty()) {
+				MethodHandle handle = MethodHandles.publicLookup().unreflect(mostSpecific(name, args, fixedArityMethods)).asFixedArity();
+				MethodType type = MethodType.genericMethodType(args.length + 1).changeReturnType(void.class);
+				return handle.asType(type).asSpreader(Object[].class, args.length);
+			}
+			if (!varargsMethods.isEmpty()) {
+				return MethodHandles.publicLookup().unreflect(mostSpecific(name, args, varargsMethods));
+			}
+		} catch (IllegalAccessException e) {
+			throw new BugError(e);
+		}
+		throw new BugError("Missing element method |%s| for arguments |%s|.", name, Arrays.toString(args));
+	}
+
+	/**
+	 * Select the most specific method, that is, the method with parameter types assignable to parameter types of all
+	 * other methods. Selection does not depend on methods order, that is not specified by reflection.
+	 * 
+	 * @param name element method name,
+	 * @param args method arguments,
+	 * @param methods methods applicable to arguments, not empty.
+	 * @return most specific method.
+	 * @throws BugError if there is no most specific method.
+	 */
+	private static Method mostSpecific(String name, Object[] args, List<Method> methods) {
+		for (Method candidate : methods) {
+			boolean mostSpecific = true;
+			for (Method method : methods) {
+				mostSpecific &= candidate == method || isMoreSpecific(candidate, method);
+			}
+			if (mostSpecific) {
+				return candidate;
+			}
+		}
+		throw new BugError("Ambiguous element method |%s| for arguments |%s|.", name, Arrays.toString(args));
+	}
+
+	private static boolean isMoreSpecific(Method method, Method other) {
+		Class<?>[] parameters = method.getParameterTypes();
+		Class<?>[] otherParameters = other.getParameterTypes();
+		if (parameters.length != otherParameters.length) {
+			return false;
+		}
+		for (int i = 0; i < parameters.length; ++i) {
+			if (!wrap(otherParameters[i]).isAssignableFrom(wrap(parameters[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAssignable(Class<?>[] parameters, Object[] args, int count) {
+		for (int i = 0; i < count; ++i) {
+			if (!isAssignable(parameters[i], args[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAssignable(Class<?> parameter, Object arg) {
+		if (arg == null) {
+			return !parameter.isPrimitive();
+		}
+		return wrap(parameter).isInstance(arg);
+	}
+
+	private static Class<?> wrap(Class<?> type) {
+		return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+	}
+
+	/**
+	 * Set attribute value on every element from this list, see {@link Element#setAttr(String, String)}.
+	 * 
+	 * @param name attribute name,
+	 * @param value attribute value.
+	 * @return this elements list.
+	 * @throws IllegalArgumentException if attribute name is null or empty or value is null.
+	 */
+	public EListImpl setAttr(String name, String value) {
+		Params.notNullOrEmpty(name, "Attribute name");
+		Params.notNull(value, "Attribute value");
+		for (int i = 0; i < nodeList.getLength(); ++i) {
+			((org.w3c.dom.Element) nodeList.item(i)).setAttribute(name, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Remove named attribute from every element from this list, see {@link Element#removeAttr(String)}.
+	 * 
+	 * @param name attribute name.
+	 * @return this elements list.
+	 * @throws IllegalArgumentException if attribute name is null or empty.
+	 */
+	public EListImpl removeAttr(String name) {
+		Params.notNullOrEmpty(name, "Attribute name");
+		for (int i = 0; i < nodeList.getLength(); ++i) {
+			((org.w3c.dom.Element) nodeList.item(i)).removeAttribute(name);
+		}
+		return this;
+	}
+
+	/**
+	 * Add CSS classes to every element from this list, with a single class attribute write per element, see
+	 * {@link ClassList#add(String...)}.
+	 * 
+	 * @param cssClasses CSS classes to add.
+	 * @return this elements list.
+	 * @throws IllegalArgumentException if a CSS class is empty or contains white space.
+	 */
+	public EListImpl addCssClass(String... cssClasses) {
+		for (int i = 0; i < nodeList.getLength(); ++i) {
+			new ClassList((org.w3c.dom.Element) nodeList.item(i)).add(cssClasses);
+		}
+		return this;
+	}
+
+	/**
+	 * Remove CSS classes from every element from this list, with at most one class attribute write per element, see
+	 * {@link ClassList#remove(String...)}.
+	 * 
+	 * @param cssClasses CSS classes to remove.
+	 * @return this elements list.
+	 * @throws IllegalArgumentException if a CSS class is empty or contains white space.
+	 */
+	public EListImpl removeCssClass(String... cssClasses) {
+		for (int i = 0; i < nodeList.getLength(); ++i) {
+			new ClassList((org.w3c.dom.Element) nodeList.item(i)).remove(cssClasses);
+		}
+		return this;
+	}
+
+	/**
+	 * Set text content of every element from this list, replacing existing children, see {@link Element#setText(String)}.
+	 * 
+	 * @param text text content.
+	 * @return this elements list.
+	 */
+	public EListImpl setText(String text) {
+		for (int i = 0; i < nodeList.getLength(); ++i) {
+			nodeList.item(i).setTextContent(text);
+		}
+		return this;
+	}
+
+	/**
+	 * Get elements present in this list or in other list, or in both, without duplicates. Result is in document order,
+	 * see {@link #sort(Set)}.
+	 * 
+	 * @param other other elements list, from the same document.
+	 * @return union elements list.
+	 * @throws IllegalArgumentException if other list is null or has elements from other document.
+	 */
+	public EListImpl union(EList other) {
+		Set<Node> nodes = nodes(this);
+		nodes.addAll(nodes(other));
+		return sort(nodes);
+	}
+
+	/**
+	 * Get elements present in both this list and other list. Result is in document order, see {@link #sort(Set)}.
+	 * 
+	 * @param other other elements list, from the same document.
+	 * @return intersection elements list.
+	 * @throws IllegalArgumentException if other list is null or has elements from other document.
+	 */
+	public EListImpl intersection(EList other) {
+		Set<Node> nodes = nodes(this);
+		nodes.retainAll(nodes(other));
+		return sort(nodes);
+	}
+
+	/**
+	 * Get elements from this list that are not present in other list. Result is in document order, see
+	 * {@link #sort(Set)}.
+	 * 
+	 * @param other other elements list, from the same document.
+	 * @return difference elements list.
+	 * @throws IllegalArgumentException if other list is null or has elements from other document.
+	 */
+	public EListImpl difference(EList other) {
+		Set<Node> nodes = nodes(this);
+		nodes.removeAll(nodes(other));
+		return sort(nodes);
+	}
+
+	/**
+	 * Collect elements list nodes into a set using node identity.
+	 * 
+	 * @param elist elements list.
+	 * @return nodes set.
+	 * @throws IllegalArgumentException if elements list is null or has elements from other document.
+	 */
+	private Set<Node> nodes(EList elist) {
+		Params.notNull(elist, "Elements list");
+		org.w3c.dom.Document doc = ((DocumentImpl) ownerDoc).getDocument();
+		Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (elist instanceof EListImpl) {
+			NodeList nodeList = ((EListImpl) elist).nodeList;
+			for (int i = 0; i < nodeList.getLength(); ++i) {
+				nodes.add(nodeList.item(i));
+			}
+		} else {
+			for (Element element : elist) {
+				nodes.add(((ElementImpl) element).getNode());
+			}
+		}
+		for (Node node : nodes) {
+			Params.isTrue(node.getOwnerDocument() == doc, "Element |%s| from other document.", node);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Create elements list with given nodes sorted in document order. If owner document has a valid document order index,
+	 * see {@link DocumentImpl#indexDocumentOrder()}, and all nodes are indexed, nodes are compared by their numbers in
+	 * constant time; otherwise uses W3C DOM {@link Node#compareDocumentPosition(Node)}.
+	 * 
+	 * @param nodes nodes set.
+	 * @return elements list.
+	 */
+	private EListImpl sort(Set<Node> nodes) {
+		Node[] array = nodes.toArray(new Node[nodes.size()]);
+		DocumentOrder order = ((DocumentImpl) ownerDoc).getDocumentOrder();
+		if (order != null && isIndexed(order, array)) {
+			Arrays.sort(array, Comparator.comparingInt(order::number));
+		} else {
+			Arrays.sort(array, (node1, node2) -> node1 == node2 ? 0 : (node1.compareDocumentPosition(node2) & Node.DOCUMENT_POSITION_FOLLOWING) != 0 ? -1 : 1);
+		}
+
+		NodeListImpl nodeList = new NodeListImpl();
+		for (Node node : array) {
+			nodeList.add(node);
+		}
+		return new EListImpl(ownerDoc, nodeList);
+	}
+
+	private static boolean isIndexed(DocumentOrder order, Node[] nodes) {
+		for (Node node : nodes) {
+			if (order.number(node) == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return nodeList.getLength() == 0;
@@ -60,10 +395,20 @@ final class EListImpl implements EList {
 		return new ElementImpl(ownerDoc, nodeList.item(index));
 	}
 
+	/**
+	 * Remove all elements of this list from document tree. Nodes are collected before removal so that this method works
+	 * on both live nodes lists, that shrink on removal, and static ones.
+	 */
 	@Override
 	public void remove() {
-		while (nodeList.getLength() > 0) {
-			nodeList.item(0).getParentNode().removeChild(nodeList.item(0));
+		Node[] nodes = new Node[nodeList.getLength()];
+		for (int i = 0; i < nodes.length; ++i) {
+			nodes[i] = nodeList.item(i);
+		}
+		for (Node node : nodes) {
+			if (node.getParentNode() != null) {
+				node.getParentNode().removeChild(node);
+			}
 		}
 	}
 
@@ -0,0 +1,44 @@
+package com.jslib.dom;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Parse time elements filter, in the spirit of W3C DOM {@link org.w3c.dom.ls.LSParserFilter}. Filter is consulted by
+ * parser for every start tag, before element node creation, and decides if element is kept into document tree. Content
+ * of a rejected element is never materialized so that memory and processing time scale with retained part of the
+ * document.
+ * <p>
+ * For HTML documents element names are reported as normalized by NekoHTML parser, that is, upper case; filter
+ * implementation should compare names ignoring case.
+ *
+ * @author Iulian Rotaru
+ */
+public interface ElementFilter
+{
+  /**
+   * Filter decision for a given element.
+   *
+   * @author Iulian Rotaru
+   */
+  enum Action
+  {
+    /** Keep element into document tree. */
+    ACCEPT,
+    /** Remove element but keep its children; children are attached to element parent. */
+    SKIP,
+    /** Remove element and its entire subtree; subtree nodes are not created at all. */
+    REJECT
+  }
+
+  /**
+   * Decide if element should be kept into document tree. Element depth is relative to source document, that is,
+   * elements removed by filter are still counted. Document root, with depth zero, is always accepted and this method is
+   * not invoked for it.
+   *
+   * @param name element qualified name,
+   * @param attributes element attributes,
+   * @param depth element depth into source document.
+   * @return filter action, never null.
+   */
+  Action startElement(String name, Attributes attributes, int depth);
+}
@@ -0,0 +1,207 @@
+package com.jslib.dom;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.cyberneko.html.filters.DefaultFilter;
+
+import com.jslib.dom.ElementFilter.Action;
+
+/**
+ * Parser pipeline component that applies an {@link ElementFilter} to XNI events, before they reach DOM builder. While
+ * inside a rejected element all events are dropped so that no node is created for rejected subtree; for skipped
+ * elements only start and end tags are dropped. Document root is always accepted and filter is not consulted for it.
+ * <p>
+ * With NekoHTML tag balancer disabled end tags may not match start tags. Component keeps open elements names and drops
+ * end tags that do not match any open element; an end tag matching an outer element closes inner elements too.
+ *
+ * @author Iulian Rotaru
+ */
+final class ElementFilterComponent extends DefaultFilter
+{
+  /** User defined elements filter. */
+  private final ElementFilter filter;
+  /** Reusable attributes view passed to user defined filter. */
+  private final XNIAttributes attributesView = new XNIAttributes();
+
+  /** Current element depth into source document. */
+  private int depth;
+  /** Depth of the rejected element currently in progress or -1 if not inside a rejected element. */
+  private int rejectDepth = -1;
+  /** Skipped elements flags indexed by element depth. */
+  private boolean[] skipped = new boolean[32];
+  /** Open elements names indexed by element depth, including elements inside rejected element. */
+  private String[] openElements = new String[32];
+
+  /**
+   * Create pipeline component for given user defined filter.
+   *
+   * @param filter elements filter.
+   */
+  public ElementFilterComponent(ElementFilter filter)
+  {
+    this.filter = filter;
+  }
+
+  @Override
+  public void startElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth != -1) {
+      open(element, false);
+      return;
+    }
+
+    // document root is always accepted since a document cannot have multiple roots
+    Action action = depth == 0 ? Action.ACCEPT : filter.startElement(element.rawname, attributesView.wrap(attributes), depth);
+    if(action == Action.REJECT) {
+      rejectDepth = depth;
+      open(element, false);
+      return;
+    }
+
+    open(element, action == Action.SKIP);
+    if(action == Action.ACCEPT) {
+      super.startElement(element, attributes, augs);
+    }
+  }
+
+  @Override
+  public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth != -1) {
+      return;
+    }
+    // empty element has no children so there is no difference between skip and reject
+    if(depth == 0 || filter.startElement(element.rawname, attributesView.wrap(attributes), depth) == Action.ACCEPT) {
+      super.emptyElement(element, attributes, augs);
+    }
+  }
+
+  @Override
+  public void endElement(QName element, Augmentations augs) throws XNIException
+  {
+    int level = depth - 1;
+    while(level >= 0 && !openElements[level].equals(element.rawname)) {
+      --level;
+    }
+    if(level == -1) {
+      // end tag without start; there is no open element to close
+      return;
+    }
+    // end tag closes also inner elements left open by source
+    while(depth > level + 1) {
+      String name = openElements[depth - 1];
+      close(new QName(null, name, name, null), augs);
+    }
+    close(element, augs);
+  }
+
+  /**
+   * Record open element at current depth and increment depth.
+   *
+   * @param element open element,
+   * @param skip flag true if element start and end tags are skipped.
+   */
+  private void open(QName element, boolean skip)
+  {
+    if(depth == skipped.length) {
+      boolean[] newSkipped = new boolean[depth << 1];
+      System.arraycopy(skipped, 0, newSkipped, 0, depth);
+      skipped = newSkipped;
+      String[] newOpenElements = new String[depth << 1];
+      System.arraycopy(openElements, 0, newOpenElements, 0, depth);
+      openElements = newOpenElements;
+    }
+    openElements[depth] = element.rawname;
+    skipped[depth++] = skip;
+  }
+
+  /**
+   * Close element on top of open elements and decrement depth. End element event is passed to next pipeline component
+   * only if element is neither rejected nor skipped.
+   *
+   * @param element closed element,
+   * @param augs augmentations of the source end tag.
+   * @throws XNIException if next pipeline component fails.
+   */
+  private void close(QName element, Augmentations augs) throws XNIException
+  {
+    openElements[--depth] = null;
+    if(rejectDepth != -1) {
+      if(depth == rejectDepth) {
+        rejectDepth = -1;
+      }
+      return;
+    }
+    if(!skipped[depth]) {
+      super.endElement(element, augs);
+    }
+  }
+
+  @Override
+  public void characters(XMLString text, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.characters(text, augs);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(XMLString text, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.ignorableWhitespace(text, augs);
+    }
+  }
+
+  @Override
+  public void comment(XMLString text, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.comment(text, augs);
+    }
+  }
+
+  @Override
+  public void processingInstruction(String target, XMLString data, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.processingInstruction(target, data, augs);
+    }
+  }
+
+  @Override
+  public void startCDATA(Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.startCDATA(augs);
+    }
+  }
+
+  @Override
+  public void endCDATA(Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.endCDATA(augs);
+    }
+  }
+
+  @Override
+  public void startGeneralEntity(String name, XMLResourceIdentifier id, String encoding, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.startGeneralEntity(name, id, encoding, augs);
+    }
+  }
+
+  @Override
+  public void endGeneralEntity(String name, Augmentations augs) throws XNIException
+  {
+    if(rejectDepth == -1) {
+      super.endGeneralEntity(name, augs);
+    }
+  }
+}
@@ -1,23 +1,21 @@
 package com.jslib.dom;
 
-import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
 
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import com.jslib.api.dom.Attr;
@@ -28,14 +26,14 @@ import com.jslib.api.dom.Element;
 import com.jslib.api.dom.NamespaceContext;
 import com.jslib.lang.BugError;
 import com.jslib.util.Params;
-import com.jslib.util.Strings;
 
 /**
- * Document element implementation.
+ * Document element implementation. Besides {@link Element} interface, this class exposes extensions not part of the
+ * API, e.g. {@link #getClassList()}; cast elements returned by this library to access them.
  * 
  * @author Iulian Rotaru
  */
-final class ElementImpl implements Element
+public final class ElementImpl implements Element
 {
   /** Owner document. */
   private DocumentImpl ownerDoc;
@@ -64,51 +62,168 @@ final class ElementImpl implements Element
     return node;
   }
 
+  /**
+   * Set owner document, used when this element node is adopted by another document.
+   * 
+   * @param ownerDoc owner document.
+   */
+  void setOwnerDocument(DocumentImpl ownerDoc)
+  {
+    this.ownerDoc = ownerDoc;
+  }
+
   @Override
   public Element addChild(Element... child)
   {
-    for(Element el : child) {
-      Params.notNull(el, "Element");
-      if(el.getDocument() != ownerDoc) {
-        el = ownerDoc.importElement(el);
-      }
-      node.appendChild(node(el));
+    return addChild(Transfer.COPY, child);
+  }
+
+  /**
+   * Variant of {@link #addChild(Element...)} with explicit transfer mode for elements from another document. Use
+   * {@link Transfer#MOVE} to adopt elements instead of copying them, when source document is not needed anymore.
+   * 
+   * @param transfer transfer mode for elements from another document,
+   * @param child one or more child elements.
+   * @return this element.
+   * @throws IllegalArgumentException if transfer mode is null or a child element is null.
+   */
+  public Element addChild(Transfer transfer, Element... child)
+  {
+    if(child.length == 1) {
+      Params.notNull(transfer, "Transfer mode");
+      Params.notNull(child[0], "Element");
+      node.appendChild(ownerDoc.transfer(child[0], transfer));
+      return this;
+    }
+    return appendChildren(Arrays.asList(child), transfer);
+  }
+
+  /**
+   * Append children elements, in a single tree update. Children are collected into a document fragment that is attached
+   * to this element in one operation. Elements from another document are transferred accordingly given mode.
+   * 
+   * @param children children elements,
+   * @param transfer transfer mode for elements from another document.
+   * @return this element.
+   * @throws IllegalArgumentException if any argument is null or children contains null.
+   */
+  public Element appendChildren(Iterable<? extends Element> children, Transfer transfer)
+  {
+    node.appendChild(fragment(children, transfer));
+    return this;
+  }
+
+  /**
+   * Insert children elements before this element first child element, in a single tree update; append them if this
+   * element has no child elements. Text and other non element nodes preceding first child element are kept before
+   * inserted elements. See {@link #appendChildren(Iterable, Transfer)}.
+   * 
+   * @param children children elements,
+   * @param transfer transfer mode for elements from another document.
+   * @return this element.
+   * @throws IllegalArgumentException if any argument is null or children contains null.
+   */
+  public Element insertChildren(Iterable<? extends Element> children, Transfer transfer)
+  {
+    DocumentFragment fragment = fragment(children, transfer);
+    // first child element is searched after fragment creation since it can be one of the inserted children
+    Node firstChild = node.getFirstChild();
+    while(firstChild != null && firstChild.getNodeType() != Node.ELEMENT_NODE) {
+      firstChild = firstChild.getNextSibling();
     }
+    node.insertBefore(fragment, firstChild);
+    return this;
+  }
+
+  /**
+   * Replace all this element children with given elements, attached in a single tree update. Given elements can be
+   * current children of this element. See {@link #appendChildren(Iterable, Transfer)}.
+   * 
+   * @param children children elements,
+   * @param transfer transfer mode for elements from another document.
+   * @return this element.
+   * @throws IllegalArgumentException if any argument is null or children contains null.
+   */
+  public Element replaceChildren(Iterable<? extends Element> children, Transfer transfer)
+  {
+    DocumentFragment fragment = fragment(children, transfer);
+    removeChildren();
+    node.appendChild(fragment);
     return this;
   }
 
+  /**
+   * Collect elements into a document fragment owned by this element document. Elements are collected before moving
+   * their nodes into fragment since moving nodes alters live nodes lists, possible the one children are iterated from.
+   * 
+   * @param children children elements,
+   * @param transfer transfer mode for elements from another document.
+   * @return document fragment.
+   */
+  private DocumentFragment fragment(Iterable<? extends Element> children, Transfer transfer)
+  {
+    Params.notNull(children, "Child elements");
+    Params.notNull(transfer, "Transfer mode");
+    List<Element> elements = new ArrayList<>();
+    for(Element child : children) {
+      Params.notNull(child, "Child element");
+      elements.add(child);
+    }
+    DocumentFragment fragment = ownerDoc.getDocument().createDocumentFragment();
+    for(Element child : elements) {
+      fragment.appendChild(ownerDoc.transfer(child, transfer));
+    }
+    return fragment;
+  }
+
   /** Attribute name for CSS class. */
   private static final String ATTR_CLASS = "class";
 
+  /**
+   * Add CSS class if not already present, see {@link ClassList#add(String...)}. Leading and trailing white space is
+   * ignored. Note that CSS class should be a single class name: empty class and class with inner white space, e.g.
+   * <code>"a b"</code>, are rejected with illegal argument exception.
+   * 
+   * @param cssClass CSS class.
+   * @return this element.
+   * @throws IllegalArgumentException if CSS class is null, empty or contains inner white space.
+   */
   @Override
   public Element addCssClass(String cssClass)
   {
-    cssClass = cssClass.trim();
-    if(!hasCssClass(cssClass)) {
-      String existingCssClass = node.getAttribute(ATTR_CLASS);
-      if(!existingCssClass.isEmpty()) {
-        StringBuilder sb = new StringBuilder(existingCssClass);
-        sb.append(' ');
-        sb.append(cssClass);
-        cssClass = sb.toString();
-      }
-      node.setAttribute(ATTR_CLASS, cssClass);
-    }
+    Params.notNull(cssClass, "CSS class");
+    getClassList().add(cssClass.trim());
     return this;
   }
 
+  /**
+   * Remove CSS class if present, otherwise add it, see {@link ClassList#toggle(String)}. If CSS class is present all its
+   * occurrences are removed. Leading and trailing white space is ignored; empty class and class with inner white space
+   * are rejected.
+   * 
+   * @param cssClass CSS class.
+   * @return this element.
+   * @throws IllegalArgumentException if CSS class is null, empty or contains inner white space.
+   */
   @Override
   public Element toggleCssClass(String cssClass)
   {
-    if(hasCssClass(cssClass)) {
-      removeCssClass(cssClass);
-    }
-    else {
-      addCssClass(cssClass);
-    }
+    Params.notNull(cssClass, "CSS class");
+    getClassList().toggle(cssClass.trim());
     return this;
   }
 
+  /**
+   * Get live view on this element CSS classes. Returned view supports W3C DOM <code>classList</code> like operations,
+   * including adding and removing multiple classes with a single class attribute write.
+   * 
+   * @return CSS classes view.
+   */
+  public ClassList getClassList()
+  {
+    return new ClassList(node);
+  }
+
   @Override
   public Element clone(boolean deep)
   {
@@ -120,7 +235,7 @@ final class ElementImpl implements Element
   {
     Params.notNullOrEmpty(cssClass, "CSS class");
     try {
-      return findByXPath(XPATH.getElementsByClassName(cssClass));
+      return findByXPath(XPATH.getElementsByClassName(), XPATH.value(cssClass));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -153,6 +268,45 @@ final class ElementImpl implements Element
     return ownerDoc.createEList(XPATH.evaluateXPathNodeList(node, xpath, args));
   }
 
+  /**
+   * Cancellable variant of {@link #findByXPath(String, Object...)}. Common location paths are evaluated natively and
+   * cancellation token is checked while evaluation progresses; other expressions are evaluated by JDK XPath engine and
+   * token is checked only before and after evaluation, see {@link NativeXPath} for supported expressions.
+   * 
+   * @param cancellation cancellation token,
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return list of result elements, possible empty.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public EList findByXPath(Cancellation cancellation, String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNull(cancellation, "Cancellation");
+    Params.notNullOrEmpty(xpath, "XPath");
+    return ownerDoc.createEList(XPATH.evaluateXPathNodeList(node, cancellation, xpath, args));
+  }
+
+  /**
+   * Variant of {@link #findByXPath(String, Object...)} with variables bound at evaluation instead of formatted into expression.
+   * Variables are referenced from expression as <code>$name</code>, e.g. <code>//a[@href=$url]</code>. Values need no
+   * escaping and may contain both apostrophe and quotation mark. Since expression text does not depend on values it is
+   * compiled once per thread and reused for all values. Numbers are converted to double, all other values should be
+   * strings or booleans.
+   * 
+   * @param xpath XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return list of result elements, possible empty.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   * @throws IllegalArgumentException if XPath expression references a variable not in map.
+   */
+  public EList findByXPath(String xpath, Map<String, ?> variables) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    Params.notNull(variables, "Variables");
+    return ownerDoc.createEList(XPATH.evaluateXPathNodeList(node, xpath, variables));
+  }
+
   @Override
   public EList findByXPathNS(NamespaceContext namespaceContext, String xpath, Object... args) throws XPathExpressionException
   {
@@ -181,7 +335,7 @@ final class ElementImpl implements Element
   public Element getByAttr(String name, String... value)
   {
     try {
-      return getByXPath(XPATH.getElementsByAttrNameValue(name, value));
+      return getByXPath(XPATH.getElementsByAttrNameValue(name, value), XPATH.value(value));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -198,14 +352,14 @@ final class ElementImpl implements Element
 
     String namespacePrefix = "ns";
     try {
-      return getByXPathNS(new NamespaceContext()
+      return ownerDoc.getElement(XPATH.evaluateXPathNodeNS(node, new NamespaceContext()
       {
         @Override
         public String getNamespaceURI(String prefix)
         {
           return prefix.equals(namespacePrefix) ? namespaceURI : null;
         }
-      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value));
+      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value), XPATH.value(value)));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -217,7 +371,7 @@ final class ElementImpl implements Element
   public EList findByAttr(String name, String... value)
   {
     try {
-      return findByXPath(XPATH.getElementsByAttrNameValue(name, value));
+      return findByXPath(XPATH.getElementsByAttrNameValue(name, value), XPATH.value(value));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -234,14 +388,14 @@ final class ElementImpl implements Element
 
     String namespacePrefix = "ns";
     try {
-      return findByXPathNS(new NamespaceContext()
+      return ownerDoc.createEList(XPATH.evaluateXPathNodeListNS(node, new NamespaceContext()
       {
         @Override
         public String getNamespaceURI(String prefix)
         {
           return prefix.equals(namespacePrefix) ? namespaceURI : null;
         }
-      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value));
+      }, XPATH.getElementsByAttrNameValueNS(namespacePrefix, name, value), XPATH.value(value)));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -285,7 +439,7 @@ final class ElementImpl implements Element
   {
     Params.notNullOrEmpty(cssClass, "CSS class");
     try {
-      return ownerDoc.getElement(XPATH.evaluateXPathNode(node, XPATH.getElementsByClassName(cssClass)));
+      return ownerDoc.getElement(XPATH.evaluateXPathNode(node, XPATH.getElementsByClassName(), XPATH.value(cssClass)));
     }
     catch(XPathExpressionException e) {
       // XPath expression is build internally and cannot fail
@@ -293,6 +447,64 @@ final class ElementImpl implements Element
     }
   }
 
+  /**
+   * Test if there is at least one element matching given query. Search stops on first matching element and no elements
+   * list or element wrapper is created. Search scope is this element subtree; this element itself is tested only if
+   * query has no tag name condition, mirroring {@link #findByTag(String)} versus {@link #findByAttr(String, String...)}.
+   * 
+   * @param query element query.
+   * @return true if at least one element matches the query.
+   * @throws IllegalArgumentException if query is null.
+   */
+  public boolean exists(Query query)
+  {
+    Params.notNull(query, "Query");
+    return query.count(node, true, ownerDoc.isXML(), 1) == 1;
+  }
+
+  /**
+   * Count elements matching given query without creating elements list or element wrappers. See {@link #exists(Query)}
+   * for search scope.
+   * 
+   * @param query element query.
+   * @return matching elements count.
+   * @throws IllegalArgumentException if query is null.
+   */
+  public int count(Query query)
+  {
+    Params.notNull(query, "Query");
+    return query.count(node, true, ownerDoc.isXML(), 0);
+  }
+
+  /**
+   * Test if XPath expression yields at least one node. XPath engine stops on first node and result nodes set is not
+   * materialized.
+   * 
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return true if expression yields at least one node.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public boolean existsXPath(String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    return XPATH.evaluateXPathExists(node, xpath, args);
+  }
+
+  /**
+   * Count nodes yielded by XPath expression, without creating nodes list or element wrappers.
+   * 
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return result nodes count.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public int countXPath(String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    return XPATH.evaluateXPathCount(node, xpath, args);
+  }
+
   @Override
   public Element getByTag(String tagName)
   {
@@ -317,6 +529,44 @@ final class ElementImpl implements Element
     return ownerDoc.getElement(XPATH.evaluateXPathNode(node, xpath, args));
   }
 
+  /**
+   * Cancellable variant of {@link #getByXPath(String, Object...)}. See {@link #findByXPath(Cancellation, String, Object...)}
+   * for cancellation description.
+   * 
+   * @param cancellation cancellation token,
+   * @param xpath XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return first result element or null.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   */
+  public Element getByXPath(Cancellation cancellation, String xpath, Object... args) throws XPathExpressionException
+  {
+    Params.notNull(cancellation, "Cancellation");
+    Params.notNullOrEmpty(xpath, "XPath");
+    return ownerDoc.getElement(XPATH.evaluateXPathNode(node, cancellation, xpath, args));
+  }
+
+  /**
+   * Variant of {@link #getByXPath(String, Object...)} with variables bound at evaluation instead of formatted into expression.
+   * Variables are referenced from expression as <code>$name</code>, e.g. <code>//a[@href=$url]</code>. Values need no
+   * escaping and may contain both apostrophe and quotation mark. Since expression text does not depend on values it is
+   * compiled once per thread and reused for all values. Numbers are converted to double, all other values should be
+   * strings or booleans.
+   * 
+   * @param xpath XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return first result element or null.
+   * @throws XPathExpressionException if XPath expression is not valid.
+   * @throws IllegalArgumentException if XPath expression references a variable not in map.
+   */
+  public Element getByXPath(String xpath, Map<String, ?> variables) throws XPathExpressionException
+  {
+    Params.notNullOrEmpty(xpath, "XPath");
+    Params.notNull(variables, "Variables");
+    return ownerDoc.getElement(XPATH.evaluateXPathNode(node, xpath, variables));
+  }
+
   @Override
   public Element getByXPathNS(NamespaceContext namespaceContext, String xpath, Object... args) throws XPathExpressionException
   {
@@ -355,6 +605,13 @@ final class ElementImpl implements Element
     return new EListImpl(ownerDoc, nodeList);
   }
 
+  /**
+   * Get child elements and text nodes. Returned child nodes are a snapshot collected in advance so that children can be
+   * freely removed or moved while iterating; see {@link #getLazyChildNodes()} for a variant that does not pay for
+   * collecting all children.
+   * 
+   * @return child elements and text nodes.
+   */
   @Override
   public Iterable<ChildNode> getChildNodes()
   {
@@ -371,6 +628,71 @@ final class ElementImpl implements Element
     return childNodes;
   }
 
+  /**
+   * Lazy variant of {@link #getChildNodes()}. Child nodes are not collected in advance but visited on demand, following
+   * next sibling references, and a child node instance is created only when iterator reaches it.
+   * <p>
+   * Returned iterable is a live view, not a snapshot. Iterator looks ahead for the next child before returning current
+   * one so that current child can be removed or moved while iterating. Children inserted after current child are
+   * visited and removed ones are not; if the child iterator already looked ahead to is removed or moved, iterator
+   * throws concurrent modification exception.
+   * 
+   * @return child elements and text nodes.
+   */
+  public Iterable<ChildNode> getLazyChildNodes()
+  {
+    return () -> new ChildrenIterator<>(node, true, n -> new ChildNodeImpl(ownerDoc, n));
+  }
+
+  /**
+   * Lazy variant of {@link #getChildren()}. Child elements are visited on demand, without creating nodes list and
+   * elements list, so that iteration stopped after the first few elements does not pay for the rest of children. As
+   * for {@link #getLazyChildNodes()}, returned iterable is a live view: current child element can be removed or moved
+   * while iterating but changes to other children affect iteration.
+   * 
+   * @return child elements.
+   */
+  public Iterable<Element> getChildElements()
+  {
+    return () -> new ChildrenIterator<>(node, false, ownerDoc::getElement);
+  }
+
+  /**
+   * Get the number of child elements. Children are counted following next sibling references, with no memory
+   * allocation.
+   * 
+   * @return child elements count.
+   */
+  public int getChildrenCount()
+  {
+    int count = 0;
+    for(Node n = node.getFirstChild(); n != null; n = n.getNextSibling()) {
+      if(n.getNodeType() == Node.ELEMENT_NODE) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Get child element by index, counting only element children. Child is found following next sibling references,
+   * without creating children list.
+   * 
+   * @param index child element index, zero based.
+   * @return child element or null if index is not less than children count.
+   * @throws IllegalArgumentException if index is negative.
+   */
+  public Element getChild(int index)
+  {
+    Params.isTrue(index >= 0, "Negative child index |%d|.", index);
+    for(Node n = node.getFirstChild(); n != null; n = n.getNextSibling()) {
+      if(n.getNodeType() == Node.ELEMENT_NODE && index-- == 0) {
+        return ownerDoc.getElement(n);
+      }
+    }
+    return null;
+  }
+
   @Override
   public Document getDocument()
   {
@@ -507,9 +829,8 @@ final class ElementImpl implements Element
   @Override
   public boolean hasChildren()
   {
-    NodeList nodes = node.getChildNodes();
-    for(int i = 0; i < nodes.getLength(); i++) {
-      if(nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+    for(Node n = node.getFirstChild(); n != null; n = n.getNextSibling()) {
+      if(n.getNodeType() == Node.ELEMENT_NODE) {
         return true;
       }
     }
@@ -522,33 +843,26 @@ final class ElementImpl implements Element
     return node.getChildNodes().getLength() == 0;
   }
 
-  /** Regular expression for leading white spaces. */
-  private static final String LEADING_SPACE_REX = "(?:^|\\s+)";
-  /** Regular expression for trailing white spaces. */
-  private static final String TRAILING_SPACE_REX = "(?:\\s+|$)";
-
   @Override
   public boolean hasCssClass(String classToMatch)
   {
-    String classes = node.getAttribute(ATTR_CLASS);
-    if(classes.isEmpty()) {
-      return false;
-    }
-    Pattern pattern = Pattern.compile(Strings.concat(LEADING_SPACE_REX, Strings.escapeRegExp(classToMatch), TRAILING_SPACE_REX));
-    Matcher matcher = pattern.matcher(classes);
-    return matcher.find();
+    return ClassList.indexOf(node.getAttribute(ATTR_CLASS), classToMatch, 0) != -1;
   }
 
+  /**
+   * Remove CSS class, see {@link ClassList#remove(String...)}. Note that all occurrences of CSS class are removed, not
+   * only the first one, and remaining classes are separated by single space. Leading and trailing white space is
+   * ignored; empty class and class with inner white space are rejected.
+   * 
+   * @param classToRemove CSS class to remove.
+   * @return this element.
+   * @throws IllegalArgumentException if CSS class is null, empty or contains inner white space.
+   */
   @Override
   public Element removeCssClass(String classToRemove)
   {
-    String classes = node.getAttribute(ATTR_CLASS);
-    if(classes.isEmpty()) {
-      return this;
-    }
-    Pattern pattern = Pattern.compile(Strings.concat(LEADING_SPACE_REX, Strings.escapeRegExp(classToRemove), TRAILING_SPACE_REX));
-    Matcher matcher = pattern.matcher(classes);
-    node.setAttribute(ATTR_CLASS, matcher.replaceFirst(" ").trim());
+    Params.notNull(classToRemove, "CSS class");
+    getClassList().remove(classToRemove.trim());
     return this;
   }
 
@@ -569,33 +883,33 @@ final class ElementImpl implements Element
   @Override
   public Element insertChildren(EList children)
   {
-    Params.notNull(children, "Child elements");
-    Element firstChild = getFirstChild();
-    if(firstChild != null) {
-      for(Element child : children) {
-        firstChild.insertBefore(child);
-      }
-    }
-    else {
-      for(Element child : children) {
-        addChild(child);
-      }
-    }
-    return this;
+    return insertChildren(children, Transfer.COPY);
   }
 
   @Override
   public Element insertBefore(Element sibling)
+  {
+    return insertBefore(sibling, Transfer.COPY);
+  }
+
+  /**
+   * Variant of {@link #insertBefore(Element)} with explicit transfer mode for sibling from another document.
+   * 
+   * @param sibling sibling element to insert,
+   * @param transfer transfer mode for sibling from another document.
+   * @return this element.
+   * @throws IllegalArgumentException if any argument is null.
+   * @throws IllegalStateException if this element has no parent.
+   */
+  public Element insertBefore(Element sibling, Transfer transfer)
   {
     Params.notNull(sibling, "Sibling element");
-    if(sibling.getDocument() != ownerDoc) {
-      sibling = ownerDoc.importElement(sibling);
-    }
+    Params.notNull(transfer, "Transfer mode");
     Node parent = node.getParentNode();
     if(parent == null) {
       throw new IllegalStateException("Missing parent node.");
     }
-    parent.insertBefore(node(sibling), node);
+    parent.insertBefore(ownerDoc.transfer(sibling, transfer), node);
     return this;
   }
 
@@ -653,24 +967,48 @@ final class ElementImpl implements Element
 
   @Override
   public void replace(Element replacement)
+  {
+    replace(replacement, Transfer.COPY);
+  }
+
+  /**
+   * Variant of {@link #replace(Element)} with explicit transfer mode for replacement from another document.
+   * 
+   * @param replacement replacement element,
+   * @param transfer transfer mode for replacement from another document.
+   * @throws IllegalArgumentException if any argument is null.
+   */
+  public void replace(Element replacement, Transfer transfer)
   {
     Params.notNull(replacement, "Replacement element");
-    if(replacement.getDocument() != ownerDoc) {
-      replacement = ownerDoc.importElement(replacement);
-    }
-    node.getParentNode().replaceChild(node(replacement), node);
-    node = (org.w3c.dom.Element)node(replacement);
+    Params.notNull(transfer, "Transfer mode");
+    Node replacementNode = ownerDoc.transfer(replacement, transfer);
+    node.getParentNode().replaceChild(replacementNode, node);
+    node = (org.w3c.dom.Element)replacementNode;
   }
 
   @Override
   public Element replaceChild(Element replacement, Element existing)
+  {
+    return replaceChild(replacement, existing, Transfer.COPY);
+  }
+
+  /**
+   * Variant of {@link #replaceChild(Element, Element)} with explicit transfer mode for replacement from another
+   * document.
+   * 
+   * @param replacement replacement element,
+   * @param existing existing child element,
+   * @param transfer transfer mode for replacement from another document.
+   * @return this element.
+   * @throws IllegalArgumentException if any argument is null.
+   */
+  public Element replaceChild(Element replacement, Element existing, Transfer transfer)
   {
     Params.notNull(replacement, "Replacement element");
     Params.notNull(existing, "Exiting element");
-    if(replacement.getDocument() != ownerDoc) {
-      replacement = ownerDoc.importElement(replacement);
-    }
-    node.replaceChild(node(replacement), node(existing));
+    Params.notNull(transfer, "Transfer mode");
+    node.replaceChild(ownerDoc.transfer(replacement, transfer), node(existing));
     return this;
   }
 
@@ -748,129 +1086,146 @@ final class ElementImpl implements Element
     return this;
   }
 
-  /** XML document prolog. */
-  private static final String XML_DECL = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
-  /** XML DOCTYPE for rich text entities. */
-  private static final String XML_DOCTYPE = "<!DOCTYPE fragment [" + //
-      "<!ENTITY nbsp \"&#160;\">" + //
-      "<!ENTITY copy \"&#169;\">" + //
-      "<!ENTITY reg \"&#174;\">" + //
-      "]>";
-  /** Start tag for rich text fragment. */
-  private static final String XML_ROOT_START = "<fragment>";
-  /** End tag for rich text fragment. */
-  private static final String XML_ROOT_END = "</fragment>";
-
   @Override
   public Element setRichText(String richText) throws SAXException
   {
-    try {
-      DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-      DocumentBuilder db = dbf.newDocumentBuilder();
-      db.setEntityResolver(new EntityResolverImpl());
-      org.w3c.dom.Document doc = db.parse(new InputSource(new StringReader(Strings.concat(XML_DECL, XML_DOCTYPE, XML_ROOT_START, richText, XML_ROOT_END))));
-      Node richTextNode = ownerDoc.getDocument().importNode(doc.getDocumentElement(), true);
-      DocumentFragment richTextFragment = ownerDoc.getDocument().createDocumentFragment();
-      while(richTextNode.hasChildNodes()) {
-        richTextFragment.appendChild(richTextNode.removeChild(richTextNode.getFirstChild()));
-      }
-      removeChildren();
-      node.appendChild(richTextFragment);
-    }
-    catch(ParserConfigurationException e) {
-      throw new SAXException(e.getMessage());
-    }
-    catch(IOException e) {
-      throw new BugError("IO exception on string reader.");
-    }
+    return setRichText(richText, false);
+  }
+
+  /**
+   * Set this element rich text content, optionally caching parsed rich text. Rich text is parsed directly into a
+   * document fragment owned by this element document, see {@link RichTextParser}. Use cache for rich text snippets that
+   * are set repeatedly, possible on different documents; it is pointless for unique content.
+   * 
+   * @param richText rich text content,
+   * @param cache flag true to reuse parsed rich text from a shared cache keyed by content.
+   * @return this object.
+   * @throws SAXException if rich text is not well formed.
+   * @see #setRichText(String)
+   */
+  public Element setRichText(String richText, boolean cache) throws SAXException
+  {
+    DocumentFragment richTextFragment = RichTextParser.parse(ownerDoc.getDocument(), richText, cache);
+    removeChildren();
+    node.appendChild(richTextFragment);
     return this;
   }
 
+  /**
+   * Get rich text content of this element. It is not expected that rich text HTML formatting tags to have attributes and
+   * this getter just ignore them. Also ignores all other node types beside text and elements.
+   */
   @Override
   public String getRichText()
   {
-    StringBuilder sb = new StringBuilder();
-    getRichText(node, sb);
-    return sb.toString();
+    StringBuilder builder = new StringBuilder();
+    TreeWalker.walk(node, new TreeWalker.NodeVisitor()
+    {
+      @Override
+      public ElementVisitor.Action enter(Node n)
+      {
+        if(n.getNodeType() == Node.TEXT_NODE) {
+          builder.append(n.getNodeValue());
+        }
+        else if(n.getNodeType() != Node.ELEMENT_NODE) {
+          return ElementVisitor.Action.SKIP_SUBTREE;
+        }
+        else if(n != node) {
+          builder.append('<');
+          builder.append(n.getNodeName());
+          builder.append('>');
+        }
+        return ElementVisitor.Action.CONTINUE;
+      }
+
+      @Override
+      public ElementVisitor.Action exit(Node n)
+      {
+        if(n.getNodeType() == Node.ELEMENT_NODE && n != node) {
+          builder.append('<');
+          builder.append('/');
+          builder.append(n.getNodeName());
+          builder.append('>');
+        }
+        return ElementVisitor.Action.CONTINUE;
+      }
+    });
+    return builder.toString();
   }
 
   /**
-   * Extract rich text content from given node. It is not expected that rich text HTML formatting tags to have
-   * attributes and this builder just ignore them. Also ignores all other node types beside text and elements.
+   * Walk this element subtree, this element included, in document order. See {@link ElementVisitor} for callbacks
+   * description. Walk is iterative and does not create children lists.
    * 
-   * @param node source node,
-   * @param builder rich text target builder.
+   * @param visitor elements visitor.
+   * @return true if walk completed or false if stopped by visitor.
+   * @throws IllegalArgumentException if visitor is null.
    */
-  private static void getRichText(Node node, StringBuilder builder)
+  public boolean walk(ElementVisitor visitor)
   {
-    Node n = node.getFirstChild();
-    while(n != null) {
-      if(n.getNodeType() == Node.TEXT_NODE) {
-        builder.append(n.getNodeValue());
-      }
-      else if(n.getNodeType() == Node.ELEMENT_NODE) {
-        builder.append('<');
-        builder.append(n.getNodeName());
-        builder.append('>');
-        getRichText(n, builder);
-        builder.append('<');
-        builder.append('/');
-        builder.append(n.getNodeName());
-        builder.append('>');
-      }
-      n = n.getNextSibling();
-    }
+    Params.notNull(visitor, "Visitor");
+    return TreeWalker.walk(ownerDoc, node, visitor);
   }
 
+  /**
+   * Get this element trace, that is, the absolute path of element names, from root element. If an element has siblings
+   * with the same name, its index among them is appended to name, e.g. <code>/html/body/div[1]/p</code>. Trace is a
+   * stable element address as long as document structure is not changed and can be resolved back to element with
+   * {@link DocumentImpl#getByTrace(String)}.
+   * <p>
+   * Ancestors are collected walking up from this element, without creating element instances, and path is built in
+   * document order. Element index is found scanning only preceding siblings; following siblings are scanned only for
+   * the first element of its kind and only till the first twin is found.
+   * 
+   * @return this element trace.
+   */
   @Override
   public String trace()
   {
-    StringBuilder sb = new StringBuilder();
-    Element el = this;
-    while(el != null) {
-      int index = ((ElementImpl)el).index();
+    List<Node> ancestors = new ArrayList<>();
+    for(Node n = node; n != null && n.getNodeType() == Node.ELEMENT_NODE; n = n.getParentNode()) {
+      ancestors.add(n);
+    }
+    StringBuilder sb = new StringBuilder(16 * ancestors.size());
+    for(int i = ancestors.size() - 1; i >= 0; --i) {
+      Node n = ancestors.get(i);
+      sb.append('/');
+      sb.append(n.getNodeName().toLowerCase());
+      int index = index(n);
       if(index != -1) {
-        sb.insert(0, ']');
-        sb.insert(0, index);
-        sb.insert(0, '[');
+        sb.append('[');
+        sb.append(index);
+        sb.append(']');
       }
-      sb.insert(0, el.getTag());
-      sb.insert(0, '/');
-      el = el.getParent();
     }
     return sb.toString();
   }
 
   /**
-   * Return the index this element has in its parent children list. When determine the index only elements of the same
-   * kind are counted; returns -1 if this element is the only child of its kind. This helper method is used by
-   * {@link #trace()}.
+   * Return the index given node has in its parent children list. When determine the index only elements of the same
+   * kind are counted; returns -1 if node is the only child of its kind. This helper method is used by {@link #trace()}.
    * 
-   * @return this element index or -1 if only of its kind.
+   * @param node element node.
+   * @return node index or -1 if only of its kind.
    */
-  private int index()
+  private static int index(Node node)
   {
-    ElementImpl parent = (ElementImpl)getParent();
-    if(parent == null) {
-      return -1;
-    }
-    Node n = parent.node.getFirstChild();
+    String name = node.getNodeName();
     int index = 0;
-    int twinsCount = 0;
-    boolean indexFound = false;
-    while(n != null) {
-      if(n == node) {
-        indexFound = true;
+    for(Node n = node.getPreviousSibling(); n != null; n = n.getPreviousSibling()) {
+      if(n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals(name)) {
+        ++index;
       }
-      if(n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals(node.getNodeName())) {
-        ++twinsCount;
-        if(!indexFound) {
-          ++index;
-        }
+    }
+    if(index > 0) {
+      return index;
+    }
+    for(Node n = node.getNextSibling(); n != null; n = n.getNextSibling()) {
+      if(n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equals(name)) {
+        return 0;
       }
-      n = n.getNextSibling();
     }
-    return twinsCount > 1 ? index : -1;
+    return -1;
   }
 
   /**
@@ -897,4 +1252,66 @@ final class ElementImpl implements Element
   {
     return ((ElementImpl)el).node;
   }
+
+  /**
+   * Lazy iterator over parent child elements and, optionally, text nodes. Iterator keeps only the next child node; it
+   * is found when current child is returned so that current child can be removed from parent. If next child is no
+   * longer a parent child when its turn comes, iterator position is lost and iteration fails.
+   * 
+   * @param <T> iterated items type.
+   * @author Iulian Rotaru
+   */
+  private static final class ChildrenIterator<T> implements Iterator<T>
+  {
+    /** Parent node. */
+    private final Node parent;
+    /** Flag true to include text nodes, beside elements. */
+    private final boolean includeText;
+    /** Factory for iterated items. */
+    private final Function<Node, T> factory;
+    /** The next child node to return, null if iteration is complete. */
+    private Node next;
+
+    public ChildrenIterator(Node parent, boolean includeText, Function<Node, T> factory)
+    {
+      this.parent = parent;
+      this.includeText = includeText;
+      this.factory = factory;
+      this.next = child(parent.getFirstChild());
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return next != null;
+    }
+
+    @Override
+    public T next()
+    {
+      if(next == null) {
+        throw new NoSuchElementException();
+      }
+      if(next.getParentNode() != parent) {
+        throw new ConcurrentModificationException();
+      }
+      Node current = next;
+      next = child(current.getNextSibling());
+      return factory.apply(current);
+    }
+
+    /**
+     * Get the first accepted child node starting with given one, inclusive.
+     * 
+     * @param n start node, possible null.
+     * @return accepted child node or null.
+     */
+    private Node child(Node n)
+    {
+      while(n != null && n.getNodeType() != Node.ELEMENT_NODE && (!includeText || n.getNodeType() != Node.TEXT_NODE)) {
+        n = n.getNextSibling();
+      }
+      return n;
+    }
+  }
 }
@@ -0,0 +1,54 @@
+package com.jslib.dom;
+
+import com.jslib.api.dom.Element;
+
+/**
+ * Callbacks for iterative elements tree walk, see {@link DocumentImpl#walk(ElementVisitor)} and
+ * {@link ElementImpl#walk(ElementVisitor)}. Walk visits elements in document order and invokes {@link #enter(Element)}
+ * before element descendants and {@link #exit(Element)} after them. Walk is iterative and does not create children
+ * lists so that tree depth is limited only by memory.
+ * <p>
+ * Visitor may change visited elements attributes and text but should not insert, remove or move nodes while walk is in
+ * progress. Both callbacks have default implementations that continue the walk; implement only the one needed.
+ *
+ * @author Iulian Rotaru
+ */
+public interface ElementVisitor
+{
+  /**
+   * Visitor decision for walk continuation.
+   *
+   * @author Iulian Rotaru
+   */
+  enum Action
+  {
+    /** Continue walk with element descendants, if returned by {@link #enter(Element)}, or with next element. */
+    CONTINUE,
+    /** Do not visit element descendants; element exit callback is still invoked. Meaningful only on enter. */
+    SKIP_SUBTREE,
+    /** Stop walk immediately; no further callbacks are invoked, not even exit callbacks for entered elements. */
+    STOP
+  }
+
+  /**
+   * Invoked when walk enters an element, before element descendants.
+   *
+   * @param element visited element.
+   * @return walk action, never null.
+   */
+  default Action enter(Element element)
+  {
+    return Action.CONTINUE;
+  }
+
+  /**
+   * Invoked when walk exits an element, after element descendants or after enter if subtree is skipped.
+   *
+   * @param element visited element.
+   * @return walk action, never null; skip subtree is the same as continue.
+   */
+  default Action exit(Element element)
+  {
+    return Action.CONTINUE;
+  }
+}
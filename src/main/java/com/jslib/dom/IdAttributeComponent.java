@@ -0,0 +1,57 @@
+package com.jslib.dom;
+
+import org.apache.xerces.impl.Constants;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XNIException;
+import org.cyberneko.html.filters.DefaultFilter;
+
+/**
+ * Parser pipeline component that declares HTML <code>id</code> attributes of type ID. HTML DOM document finds elements
+ * by <code>id</code> attribute value but Xerces core document, used by deferred HTML documents, finds only attributes
+ * declared of type ID and there is no DTD to declare them. Xerces DOM builder registers attributes marked by this
+ * component as ID attributes, for both deferred and eager nodes creation.
+ *
+ * @author Iulian Rotaru
+ */
+final class IdAttributeComponent extends DefaultFilter
+{
+  /** HTML identifier attribute name. */
+  private static final String ID_ATTR = "id";
+  /** Attribute type for identifiers. */
+  private static final String ID_TYPE = "ID";
+
+  @Override
+  public void startElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    declareId(attributes);
+    super.startElement(element, attributes, augs);
+  }
+
+  @Override
+  public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    declareId(attributes);
+    super.emptyElement(element, attributes, augs);
+  }
+
+  /**
+   * Mark <code>id</code> attribute, if present, as declared attribute of type ID.
+   *
+   * @param attributes element attributes.
+   */
+  private static void declareId(XMLAttributes attributes)
+  {
+    for(int i = 0; i < attributes.getLength(); ++i) {
+      if(ID_ATTR.equalsIgnoreCase(attributes.getQName(i))) {
+        attributes.setType(i, ID_TYPE);
+        Augmentations attributeAugs = attributes.getAugmentations(i);
+        if(attributeAugs != null) {
+          attributeAugs.putItem(Constants.ATTRIBUTE_DECLARED, Boolean.TRUE);
+        }
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.jslib.dom;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.cyberneko.html.filters.DefaultFilter;
+
+/**
+ * Parser pipeline component that enforces {@link ParseLimits}: elements depth, nodes count, attributes per element,
+ * entity expansions and parsing time. Component is installed first in pipeline so that it sees source content before
+ * any other filter. When a limit is exceeded parsing is aborted by throwing {@link ParseLimitException} wrapped into an
+ * XNI exception; Xerces and NekoHTML parsers unwrap and rethrow it as it is.
+ * <p>
+ * Source size is not enforced here but by the source stream, see {@link BoundedInputStream}. Component is reusable;
+ * its state is reset on every parsing.
+ *
+ * @author Iulian Rotaru
+ */
+final class LimitsFilterComponent extends DefaultFilter
+{
+  /** Parser events count between two consecutive clock readings, minus one; it should be a power of two minus one. */
+  private static final int CLOCK_CHECK_MASK = 0xFF;
+
+  /** Enforced limits. */
+  private final ParseLimits limits;
+
+  /** Current element depth. */
+  private int depth;
+  /** Number of nodes created so far. */
+  private long nodes;
+  /** Number of entity expansions so far. */
+  private int entityExpansions;
+  /** Number of parser events so far, used to throttle clock readings. */
+  private int events;
+  /** Parsing deadline, as returned by {@link System#nanoTime()}, meaningful only if timeout limit is set. */
+  private long deadline;
+  /** Flag true while inside a text run, that is, characters events with no markup between them. */
+  private boolean text;
+
+  /**
+   * Create pipeline component for given limits.
+   *
+   * @param limits enforced limits.
+   */
+  public LimitsFilterComponent(ParseLimits limits)
+  {
+    this.limits = limits;
+  }
+
+  @Override
+  public void startDocument(XMLLocator locator, String encoding, NamespaceContext context, Augmentations augs) throws XNIException
+  {
+    depth = 0;
+    nodes = 0;
+    entityExpansions = 0;
+    events = 0;
+    deadline = System.nanoTime() + limits.getTimeout() * 1000000L;
+    text = false;
+    super.startDocument(locator, encoding, context, augs);
+  }
+
+  @Override
+  public void startElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    startElement(attributes);
+    ++depth;
+    super.startElement(element, attributes, augs);
+  }
+
+  @Override
+  public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    startElement(attributes);
+    super.emptyElement(element, attributes, augs);
+  }
+
+  @Override
+  public void endElement(QName element, Augmentations augs) throws XNIException
+  {
+    text = false;
+    --depth;
+    super.endElement(element, augs);
+  }
+
+  @Override
+  public void characters(XMLString content, Augmentations augs) throws XNIException
+  {
+    if(!text) {
+      // text is reported in chunks; count a node only for the first chunk of a run
+      text = true;
+      node();
+    }
+    else {
+      checkClock();
+    }
+    super.characters(content, augs);
+  }
+
+  @Override
+  public void comment(XMLString content, Augmentations augs) throws XNIException
+  {
+    text = false;
+    node();
+    super.comment(content, augs);
+  }
+
+  @Override
+  public void processingInstruction(String target, XMLString data, Augmentations augs) throws XNIException
+  {
+    text = false;
+    node();
+    super.processingInstruction(target, data, augs);
+  }
+
+  @Override
+  public void startGeneralEntity(String name, XMLResourceIdentifier id, String encoding, Augmentations augs) throws XNIException
+  {
+    if(limits.getMaxEntityExpansions() > 0 && ++entityExpansions > limits.getMaxEntityExpansions()) {
+      abort(ParseLimitException.Limit.ENTITY_EXPANSIONS, limits.getMaxEntityExpansions());
+    }
+    super.startGeneralEntity(name, id, encoding, augs);
+  }
+
+  /**
+   * Check limits on element start: depth, attributes count and nodes count.
+   *
+   * @param attributes element attributes.
+   */
+  private void startElement(XMLAttributes attributes)
+  {
+    text = false;
+    if(limits.getMaxDepth() > 0 && depth >= limits.getMaxDepth()) {
+      abort(ParseLimitException.Limit.DEPTH, limits.getMaxDepth());
+    }
+    if(limits.getMaxAttributes() > 0 && attributes.getLength() > limits.getMaxAttributes()) {
+      abort(ParseLimitException.Limit.ATTRIBUTES, limits.getMaxAttributes());
+    }
+    node();
+  }
+
+  /**
+   * Count a new node and check nodes count limit and parsing time.
+   */
+  private void node()
+  {
+    if(limits.getMaxNodes() > 0 && ++nodes > limits.getMaxNodes()) {
+      abort(ParseLimitException.Limit.NODES, limits.getMaxNodes());
+    }
+    checkClock();
+  }
+
+  /**
+   * Check parsing time, reading the clock only once every few events.
+   */
+  private void checkClock()
+  {
+    if(limits.getTimeout() > 0 && (++events & CLOCK_CHECK_MASK) == 0 && System.nanoTime() - deadline > 0) {
+      abort(ParseLimitException.Limit.TIMEOUT, limits.getTimeout());
+    }
+  }
+
+  /**
+   * Abort parsing with exceeded limit.
+   *
+   * @param limit exceeded limit,
+   * @param value configured limit value.
+   */
+  private static void abort(ParseLimitException.Limit limit, long value)
+  {
+    throw new XNIException(new ParseLimitException(limit, value));
+  }
+}
@@ -0,0 +1,929 @@
+package com.jslib.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Native evaluator for a subset of XPath 1.0 location paths, used for cancellable queries. Evaluator walks W3C DOM
+ * directly and checks cancellation token every few visited nodes, including nodes visited for string values, so that a
+ * runaway query releases the processor as soon as token is cancelled. JDK XPath engine has no such hook.
+ * <p>
+ * Supported expressions are relative or absolute location paths with <code>/</code> and <code>//</code> separators,
+ * abbreviated steps <code>.</code> and <code>..</code>, axes <code>child</code>, <code>descendant</code>,
+ * <code>descendant-or-self</code>, <code>self</code> and <code>parent</code>, and node tests for element name,
+ * <code>*</code> and <code>node()</code>. Predicates support position, <code>last()</code>, <code>@attr</code>,
+ * <code>.</code> and <code>text()</code> existence and string comparison with <code>=</code> and <code>!=</code>,
+ * <code>contains</code>, <code>starts-with</code>, <code>not</code>, <code>and</code>, <code>or</code> and
+ * parenthesis. Names are matched exactly, without name space, as XPath does for unprefixed names. Any other construct
+ * makes {@link #compile(String)} return null and caller should fall back to JDK XPath engine.
+ * <p>
+ * Compiled expression is immutable and thread safe.
+ *
+ * @author Iulian Rotaru
+ */
+final class NativeXPath
+{
+  /** Visited nodes count between two consecutive cancellation checks, minus one; should be a power of two minus one. */
+  private static final int CHECK_MASK = 0x3FF;
+
+  /** Source XPath expression. */
+  private final String expression;
+  /** Flag true if location path is absolute, that is, evaluation starts from document root. */
+  private final boolean absolute;
+  /** Location path steps. */
+  private final Step[] steps;
+
+  private NativeXPath(String expression, boolean absolute, Step[] steps)
+  {
+    this.expression = expression;
+    this.absolute = absolute;
+    this.steps = steps;
+  }
+
+  /**
+   * Compile XPath expression or return null if expression is not supported by native evaluator.
+   *
+   * @param expression XPath expression.
+   * @return compiled expression or null.
+   */
+  static NativeXPath compile(String expression)
+  {
+    try {
+      return new Parser(expression).parse();
+    }
+    catch(UnsupportedException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Evaluate this expression on given context node. Returned nodes are in document order and have no duplicates.
+   *
+   * @param contextNode evaluation context node,
+   * @param cancellation cancellation token.
+   * @return result nodes, possible empty.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   */
+  NodeList evaluate(Node contextNode, Cancellation cancellation) throws XPathCancelledException
+  {
+    Evaluation evaluation = new Evaluation(cancellation);
+    evaluation.check();
+
+    List<Node> nodes = new ArrayList<>();
+    nodes.add(absolute ? root(contextNode) : contextNode);
+    for(Step step : steps) {
+      nodes = step.evaluate(nodes, evaluation);
+      if(nodes.isEmpty()) {
+        break;
+      }
+    }
+
+    NodeListImpl nodeList = new NodeListImpl();
+    for(Node node : nodes) {
+      nodeList.add(node);
+    }
+    return nodeList;
+  }
+
+  // ----------------------------------------------------
+  // tree helpers
+
+  /**
+   * Get the root of the tree containing given node, that is, the owner document for attached nodes.
+   *
+   * @param node tree node.
+   * @return tree root.
+   */
+  private static Node root(Node node)
+  {
+    while(node.getParentNode() != null) {
+      node = node.getParentNode();
+    }
+    return node;
+  }
+
+  /**
+   * Get the node following given one in pre-order traversal of the subtree rooted at <code>root</code>.
+   *
+   * @param node current node,
+   * @param root subtree root.
+   * @return next node or null if traversal is complete.
+   */
+  private static Node next(Node node, Node root)
+  {
+    Node child = node.getFirstChild();
+    if(child != null) {
+      return child;
+    }
+    while(node != root) {
+      Node sibling = node.getNextSibling();
+      if(sibling != null) {
+        return sibling;
+      }
+      node = node.getParentNode();
+    }
+    return null;
+  }
+
+  /**
+   * Test if node is a strict descendant of given ancestor.
+   *
+   * @param node node to test,
+   * @param ancestor ancestor node.
+   * @return true if node is descendant of ancestor.
+   */
+  private static boolean isDescendant(Node node, Node ancestor)
+  {
+    for(Node parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+      if(parent == ancestor) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isText(Node node)
+  {
+    return node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE;
+  }
+
+  /**
+   * Get node local name, without name space prefix. For DOM level 1 nodes local name is null and is extracted from node
+   * name.
+   *
+   * @param node element or attribute node.
+   * @return node local name.
+   */
+  private static String localName(Node node)
+  {
+    String localName = node.getLocalName();
+    if(localName != null) {
+      return localName;
+    }
+    String nodeName = node.getNodeName();
+    int colon = nodeName.indexOf(':');
+    return colon == -1 ? nodeName : nodeName.substring(colon + 1);
+  }
+
+  // ----------------------------------------------------
+  // evaluation
+
+  /**
+   * Evaluation state: cancellation token and visited nodes counter. Document order index is created on demand.
+   *
+   * @author Iulian Rotaru
+   */
+  private final class Evaluation
+  {
+    private final Cancellation cancellation;
+    private int visits;
+    private Map<Node, Integer> order;
+
+    Evaluation(Cancellation cancellation)
+    {
+      this.cancellation = cancellation;
+    }
+
+    void check() throws XPathCancelledException
+    {
+      if(cancellation.isCancelled()) {
+        throw new XPathCancelledException(expression);
+      }
+    }
+
+    void visit() throws XPathCancelledException
+    {
+      if((++visits & CHECK_MASK) == 0) {
+        check();
+      }
+    }
+
+    /**
+     * Remove duplicates from given nodes and sort them in document order.
+     *
+     * @param nodes nodes list.
+     * @return sorted nodes.
+     * @throws XPathCancelledException if evaluation is cancelled.
+     */
+    List<Node> sort(List<Node> nodes) throws XPathCancelledException
+    {
+      if(order == null) {
+        order = new IdentityHashMap<>();
+        Node root = root(nodes.get(0));
+        int index = 0;
+        for(Node node = root; node != null; node = next(node, root)) {
+          visit();
+          order.put(node, index++);
+        }
+      }
+      Map<Node, Boolean> unique = new IdentityHashMap<>();
+      List<Node> sorted = new ArrayList<>(nodes.size());
+      for(Node node : nodes) {
+        if(unique.put(node, Boolean.TRUE) == null) {
+          sorted.add(node);
+        }
+      }
+      sorted.sort(Comparator.comparingInt(order::get));
+      return sorted;
+    }
+
+    /**
+     * Get node string value, that is, the concatenation of all descendant text nodes.
+     *
+     * @param node element or document node.
+     * @return node string value.
+     * @throws XPathCancelledException if evaluation is cancelled.
+     */
+    String stringValue(Node node) throws XPathCancelledException
+    {
+      StringBuilder builder = new StringBuilder();
+      for(Node descendant = node; descendant != null; descendant = next(descendant, node)) {
+        visit();
+        if(isText(descendant)) {
+          builder.append(descendant.getNodeValue());
+        }
+      }
+      return builder.toString();
+    }
+  }
+
+  private enum Axis
+  {
+    CHILD, DESCENDANT, DESCENDANT_OR_SELF, SELF, PARENT
+  }
+
+  /**
+   * Location path step: axis, node test and predicates.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Step
+  {
+    private final Axis axis;
+    /** Element name for name test or null for <code>*</code> and <code>node()</code>. */
+    private final String name;
+    /** Flag true for <code>node()</code> test, that also matches document node. */
+    private final boolean anyNode;
+    private final Predicate[] predicates;
+    /** Flag true if a predicate depends on node position. */
+    private final boolean positional;
+
+    Step(Axis axis, String name, boolean anyNode, List<Predicate> predicates, boolean positional)
+    {
+      this.axis = axis;
+      this.name = name;
+      this.anyNode = anyNode;
+      this.predicates = predicates.toArray(new Predicate[predicates.size()]);
+      this.positional = positional;
+    }
+
+    /**
+     * Evaluate this step for every context node, in order, and merge results in document order.
+     *
+     * @param contexts context nodes, in document order,
+     * @param evaluation evaluation state.
+     * @return result nodes, in document order.
+     * @throws XPathCancelledException if evaluation is cancelled.
+     */
+    List<Node> evaluate(List<Node> contexts, Evaluation evaluation) throws XPathCancelledException
+    {
+      List<Node> result = new ArrayList<>();
+      boolean sort = contexts.size() > 1 && (axis == Axis.PARENT || positional);
+      Node previousContext = null;
+      for(Node context : contexts) {
+        if(previousContext != null && axis != Axis.SELF && axis != Axis.PARENT && isDescendant(context, previousContext)) {
+          if(!positional && axis != Axis.CHILD) {
+            // descendants of nested context are already collected from previous context
+            continue;
+          }
+          sort = true;
+        }
+        previousContext = context;
+
+        List<Node> nodes = new ArrayList<>();
+        collect(context, nodes, evaluation);
+        if(positional) {
+          for(Predicate predicate : predicates) {
+            nodes = filter(nodes, predicate, evaluation);
+          }
+        }
+        result.addAll(nodes);
+      }
+      return sort && result.size() > 1 ? evaluation.sort(result) : result;
+    }
+
+    /**
+     * Collect nodes selected by axis and node test, in axis order. If step has no positional predicates, predicates
+     * are also applied.
+     *
+     * @param context context node,
+     * @param nodes nodes list to collect into,
+     * @param evaluation evaluation state.
+     * @throws XPathCancelledException if evaluation is cancelled.
+     */
+    private void collect(Node context, List<Node> nodes, Evaluation evaluation) throws XPathCancelledException
+    {
+      switch(axis) {
+      case CHILD:
+        for(Node child = context.getFirstChild(); child != null; child = child.getNextSibling()) {
+          evaluation.visit();
+          add(child, nodes, evaluation);
+        }
+        break;
+
+      case DESCENDANT:
+      case DESCENDANT_OR_SELF:
+        Node node = axis == Axis.DESCENDANT ? next(context, context) : context;
+        for(; node != null; node = next(node, context)) {
+          evaluation.visit();
+          add(node, nodes, evaluation);
+        }
+        break;
+
+      case SELF:
+        add(context, nodes, evaluation);
+        break;
+
+      case PARENT:
+        Node parent = context.getParentNode();
+        if(parent != null) {
+          add(parent, nodes, evaluation);
+        }
+        break;
+      }
+    }
+
+    private void add(Node node, List<Node> nodes, Evaluation evaluation) throws XPathCancelledException
+    {
+      if(!test(node)) {
+        return;
+      }
+      if(!positional) {
+        for(Predicate predicate : predicates) {
+          if(!predicate.test(node, 0, 0, evaluation)) {
+            return;
+          }
+        }
+      }
+      nodes.add(node);
+    }
+
+    private boolean test(Node node)
+    {
+      if(node.getNodeType() == Node.ELEMENT_NODE) {
+        return name == null || (node.getNamespaceURI() == null && name.equals(localName(node)));
+      }
+      return anyNode && node.getNodeType() == Node.DOCUMENT_NODE;
+    }
+
+    private static List<Node> filter(List<Node> nodes, Predicate predicate, Evaluation evaluation) throws XPathCancelledException
+    {
+      List<Node> filtered = new ArrayList<>(nodes.size());
+      for(int i = 0, size = nodes.size(); i < size; ++i) {
+        if(predicate.test(nodes.get(i), i + 1, size, evaluation)) {
+          filtered.add(nodes.get(i));
+        }
+      }
+      return filtered;
+    }
+  }
+
+  /**
+   * Step predicate. Position and size are one based and meaningful only for positional predicates.
+   *
+   * @author Iulian Rotaru
+   */
+  private interface Predicate
+  {
+    boolean test(Node node, int position, int size, Evaluation evaluation) throws XPathCancelledException;
+  }
+
+  /**
+   * Value operand of a predicate: attribute, context node string value or context node text children.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Value
+  {
+    /** Attribute name, <code>*</code> for any attribute, or null for <code>.</code> and <code>text()</code>. */
+    private final String attribute;
+    /** Flag true for <code>text()</code>. */
+    private final boolean text;
+
+    Value(String attribute, boolean text)
+    {
+      this.attribute = attribute;
+      this.text = text;
+    }
+
+    /**
+     * Get value nodes string values: attribute value, node string value or text runs, possible empty.
+     *
+     * @param node context node,
+     * @param evaluation evaluation state.
+     * @return value strings, in document order.
+     * @throws XPathCancelledException if evaluation is cancelled.
+     */
+    List<String> strings(Node node, Evaluation evaluation) throws XPathCancelledException
+    {
+      List<String> strings = new ArrayList<>(1);
+      if(attribute != null) {
+        NamedNodeMap attributes = node.getAttributes();
+        if(attributes != null) {
+          for(int i = 0; i < attributes.getLength(); ++i) {
+            Node attr = attributes.item(i);
+            String name = attr.getNodeName();
+            if(name.equals("xmlns") || name.startsWith("xmlns:")) {
+              continue;
+            }
+            // wildcard matches all attributes, in any name space; a name matches a single attribute with no name space
+            if(attribute.equals("*")) {
+              strings.add(attr.getNodeValue());
+            }
+            else if(attr.getNamespaceURI() == null && attribute.equals(localName(attr))) {
+              strings.add(attr.getNodeValue());
+              break;
+            }
+          }
+        }
+      }
+      else if(text) {
+        // XPath data model has no adjacent text nodes; merge them
+        StringBuilder run = null;
+        for(Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+          evaluation.visit();
+          if(isText(child)) {
+            if(run == null) {
+              run = new StringBuilder();
+            }
+            run.append(child.getNodeValue());
+          }
+          else if(run != null) {
+            strings.add(run.toString());
+            run = null;
+          }
+        }
+        if(run != null) {
+          strings.add(run.toString());
+        }
+      }
+      else {
+        strings.add(evaluation.stringValue(node));
+      }
+      return strings;
+    }
+
+    /**
+     * Get string value as converted by XPath <code>string()</code> function, that is, the first string or empty.
+     *
+     * @param node context node,
+     * @param evaluation evaluation state.
+     * @return string value.
+     * @throws XPathCancelledException if evaluation is cancelled.
+     */
+    String string(Node node, Evaluation evaluation) throws XPathCancelledException
+    {
+      List<String> strings = strings(node, evaluation);
+      return strings.isEmpty() ? "" : strings.get(0);
+    }
+  }
+
+  // ----------------------------------------------------
+  // expression parser
+
+  /**
+   * Thrown by parser for expressions not supported by native evaluator.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class UnsupportedException extends Exception
+  {
+    private static final long serialVersionUID = 2918347591240816117L;
+
+    UnsupportedException()
+    {
+      // stack trace is not needed since exception is used only to signal fallback
+      super(null, null, false, false);
+    }
+  }
+
+  /**
+   * Recursive descent parser for supported XPath subset.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Parser
+  {
+    private final String expression;
+    private int pos;
+
+    Parser(String expression)
+    {
+      this.expression = expression;
+    }
+
+    NativeXPath parse() throws UnsupportedException
+    {
+      List<Step> steps = new ArrayList<>();
+      boolean absolute = false;
+      skipSpace();
+      if(peek("//")) {
+        pos += 2;
+        absolute = true;
+        steps.add(descendantOrSelfNode());
+      }
+      else if(peek("/")) {
+        ++pos;
+        absolute = true;
+      }
+      steps.add(step());
+      for(;;) {
+        skipSpace();
+        if(pos == expression.length()) {
+          break;
+        }
+        if(peek("//")) {
+          pos += 2;
+          steps.add(descendantOrSelfNode());
+        }
+        else if(peek("/")) {
+          ++pos;
+        }
+        else {
+          throw new UnsupportedException();
+        }
+        steps.add(step());
+      }
+      return new NativeXPath(expression, absolute, optimize(steps));
+    }
+
+    /**
+     * Merge <code>//</code> abbreviation with following child step into a single descendant step and validate
+     * <code>node()</code> steps. Native evaluator collects only elements and document nodes; a <code>node()</code> step
+     * is valid only if its missing text, comment and processing instruction nodes cannot change the result.
+     *
+     * @param steps parsed steps.
+     * @return optimized steps.
+     * @throws UnsupportedException if a <code>node()</code> step is not valid.
+     */
+    private static Step[] optimize(List<Step> steps) throws UnsupportedException
+    {
+      List<Step> optimized = new ArrayList<>(steps.size());
+      for(int i = 0; i < steps.size(); ++i) {
+        Step step = steps.get(i);
+        Step next = i + 1 < steps.size() ? steps.get(i + 1) : null;
+        if(step.axis == Axis.DESCENDANT_OR_SELF && step.anyNode && step.predicates.length == 0 && next != null && next.axis == Axis.CHILD && !next.positional) {
+          optimized.add(new Step(Axis.DESCENDANT, next.name, next.anyNode, Arrays.asList(next.predicates), false));
+          ++i;
+          continue;
+        }
+        optimized.add(step);
+      }
+
+      for(int i = 0; i < optimized.size(); ++i) {
+        Step step = optimized.get(i);
+        if(!step.anyNode || step.axis == Axis.SELF || step.axis == Axis.PARENT) {
+          continue;
+        }
+        if(step.positional) {
+          throw new UnsupportedException();
+        }
+        Step next = i + 1 < optimized.size() ? optimized.get(i + 1) : null;
+        if(next == null ? !requiresElement(step) : next.axis == Axis.SELF || next.axis == Axis.PARENT) {
+          throw new UnsupportedException();
+        }
+      }
+      return optimized.toArray(new Step[optimized.size()]);
+    }
+
+    private static boolean requiresElement(Step step)
+    {
+      for(Predicate predicate : step.predicates) {
+        if(predicate instanceof ElementPredicate) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static Step descendantOrSelfNode()
+    {
+      return new Step(Axis.DESCENDANT_OR_SELF, null, true, new ArrayList<>(), false);
+    }
+
+    private Step step() throws UnsupportedException
+    {
+      skipSpace();
+      if(peek("..")) {
+        pos += 2;
+        return new Step(Axis.PARENT, null, true, new ArrayList<>(), false);
+      }
+      if(peek(".")) {
+        ++pos;
+        return new Step(Axis.SELF, null, true, new ArrayList<>(), false);
+      }
+
+      Axis axis = Axis.CHILD;
+      String name = name();
+      if(peek("::")) {
+        pos += 2;
+        axis = axis(name);
+        skipSpace();
+        name = name();
+      }
+
+      boolean anyNode = false;
+      skipSpace();
+      if(peek("(")) {
+        if(!name.equals("node")) {
+          throw new UnsupportedException();
+        }
+        ++pos;
+        expect(")");
+        anyNode = true;
+        name = null;
+      }
+      else if(name.equals("*")) {
+        name = null;
+      }
+
+      List<Predicate> predicates = new ArrayList<>();
+      boolean[] positional = new boolean[1];
+      for(;;) {
+        skipSpace();
+        if(!peek("[")) {
+          break;
+        }
+        ++pos;
+        predicates.add(orExpression(positional));
+        expect("]");
+      }
+      return new Step(axis, name, anyNode, predicates, positional[0]);
+    }
+
+    private static Axis axis(String name) throws UnsupportedException
+    {
+      switch(name) {
+      case "child":
+        return Axis.CHILD;
+      case "descendant":
+        return Axis.DESCENDANT;
+      case "descendant-or-self":
+        return Axis.DESCENDANT_OR_SELF;
+      case "self":
+        return Axis.SELF;
+      case "parent":
+        return Axis.PARENT;
+      default:
+        throw new UnsupportedException();
+      }
+    }
+
+    private Predicate orExpression(boolean[] positional) throws UnsupportedException
+    {
+      Predicate left = andExpression(positional);
+      while(keyword("or")) {
+        Predicate first = left;
+        Predicate second = andExpression(positional);
+        left = (node, position, size, evaluation) -> first.test(node, position, size, evaluation) || second.test(node, position, size, evaluation);
+      }
+      return left;
+    }
+
+    private Predicate andExpression(boolean[] positional) throws UnsupportedException
+    {
+      Predicate left = primaryExpression(positional);
+      while(keyword("and")) {
+        Predicate first = left;
+        Predicate second = primaryExpression(positional);
+        Predicate and = (node, position, size, evaluation) -> first.test(node, position, size, evaluation) && second.test(node, position, size, evaluation);
+        left = first instanceof ElementPredicate || second instanceof ElementPredicate ? elementPredicate(and) : and;
+      }
+      return left;
+    }
+
+    private Predicate primaryExpression(boolean[] positional) throws UnsupportedException
+    {
+      skipSpace();
+      if(peek("(")) {
+        ++pos;
+        Predicate predicate = orExpression(positional);
+        expect(")");
+        return predicate;
+      }
+
+      if(pos < expression.length() && Character.isDigit(expression.charAt(pos))) {
+        int start = pos;
+        while(pos < expression.length() && Character.isDigit(expression.charAt(pos))) {
+          ++pos;
+        }
+        if(peek(".")) {
+          throw new UnsupportedException();
+        }
+        int index;
+        try {
+          index = Integer.parseInt(expression.substring(start, pos));
+        }
+        catch(NumberFormatException e) {
+          // position does not fit integer range
+          throw new UnsupportedException();
+        }
+        positional[0] = true;
+        return (node, position, size, evaluation) -> position == index;
+      }
+
+      Value value;
+      if(peek("@")) {
+        ++pos;
+        value = new Value(name(), false);
+      }
+      else if(peek(".") && !peek("..")) {
+        ++pos;
+        value = new Value(null, false);
+      }
+      else {
+        String function = name();
+        expect("(");
+        switch(function) {
+        case "text":
+          expect(")");
+          value = new Value(null, true);
+          break;
+
+        case "last":
+          expect(")");
+          positional[0] = true;
+          return (node, position, size, evaluation) -> position == size;
+
+        case "not":
+          Predicate predicate = orExpression(positional);
+          expect(")");
+          return (node, position, size, evaluation) -> !predicate.test(node, position, size, evaluation);
+
+        case "contains":
+        case "starts-with":
+          Value argument = value();
+          expect(",");
+          String literal = literal();
+          expect(")");
+          boolean contains = function.equals("contains");
+          Predicate stringPredicate = (node, position, size, evaluation) -> {
+            String string = argument.string(node, evaluation);
+            return contains ? string.contains(literal) : string.startsWith(literal);
+          };
+          return argument.attribute != null && !literal.isEmpty() ? elementPredicate(stringPredicate) : stringPredicate;
+
+        default:
+          throw new UnsupportedException();
+        }
+      }
+
+      skipSpace();
+      boolean equals = peek("=");
+      if(equals || peek("!=")) {
+        pos += equals ? 1 : 2;
+        String literal = literal();
+        Predicate comparison = (node, position, size, evaluation) -> {
+          for(String string : value.strings(node, evaluation)) {
+            if(string.equals(literal) == equals) {
+              return true;
+            }
+          }
+          return false;
+        };
+        return value.attribute != null ? elementPredicate(comparison) : comparison;
+      }
+      Predicate existence = (node, position, size, evaluation) -> !value.strings(node, evaluation).isEmpty();
+      return value.attribute != null ? elementPredicate(existence) : existence;
+    }
+
+    /**
+     * Parse value operand of a function: <code>@attr</code>, <code>.</code> or <code>text()</code>.
+     *
+     * @return value operand.
+     * @throws UnsupportedException if operand is not supported.
+     */
+    private Value value() throws UnsupportedException
+    {
+      skipSpace();
+      if(peek("@")) {
+        ++pos;
+        return new Value(name(), false);
+      }
+      if(peek(".") && !peek("..")) {
+        ++pos;
+        return new Value(null, false);
+      }
+      if(name().equals("text")) {
+        expect("(");
+        expect(")");
+        return new Value(null, true);
+      }
+      throw new UnsupportedException();
+    }
+
+    private String literal() throws UnsupportedException
+    {
+      skipSpace();
+      if(pos == expression.length()) {
+        throw new UnsupportedException();
+      }
+      char quote = expression.charAt(pos);
+      if(quote != '\'' && quote != '"') {
+        throw new UnsupportedException();
+      }
+      int end = expression.indexOf(quote, pos + 1);
+      if(end == -1) {
+        throw new UnsupportedException();
+      }
+      String literal = expression.substring(pos + 1, end);
+      pos = end + 1;
+      return literal;
+    }
+
+    /**
+     * Parse name without name space prefix or <code>*</code>.
+     *
+     * @return parsed name.
+     * @throws UnsupportedException if there is no name at current position or name is prefixed.
+     */
+    private String name() throws UnsupportedException
+    {
+      skipSpace();
+      if(peek("*")) {
+        ++pos;
+        return "*";
+      }
+      int start = pos;
+      while(pos < expression.length() && isNameChar(expression.charAt(pos), pos == start)) {
+        ++pos;
+      }
+      if(pos == start || (peek(":") && !peek("::"))) {
+        throw new UnsupportedException();
+      }
+      return expression.substring(start, pos);
+    }
+
+    private static boolean isNameChar(char c, boolean first)
+    {
+      if(Character.isLetter(c) || c == '_') {
+        return true;
+      }
+      return !first && (Character.isDigit(c) || c == '-' || c == '.');
+    }
+
+    private boolean keyword(String keyword)
+    {
+      skipSpace();
+      int end = pos + keyword.length();
+      if(!expression.startsWith(keyword, pos) || (end < expression.length() && isNameChar(expression.charAt(end), false))) {
+        return false;
+      }
+      pos = end;
+      return true;
+    }
+
+    private void expect(String token) throws UnsupportedException
+    {
+      skipSpace();
+      if(!peek(token)) {
+        throw new UnsupportedException();
+      }
+      pos += token.length();
+    }
+
+    private boolean peek(String token)
+    {
+      return expression.startsWith(token, pos);
+    }
+
+    private void skipSpace()
+    {
+      while(pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+        ++pos;
+      }
+    }
+  }
+
+  /**
+   * Predicate that is never true for nodes other than elements.
+   *
+   * @author Iulian Rotaru
+   */
+  private interface ElementPredicate extends Predicate
+  {
+  }
+
+  private static Predicate elementPredicate(Predicate predicate)
+  {
+    return (ElementPredicate)predicate::test;
+  }
+}
@@ -0,0 +1,52 @@
+package com.jslib.dom;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Parsing aborted because source exceeds a limit configured by {@link ParseLimits}. Document built so far is discarded.
+ *
+ * @author Iulian Rotaru
+ */
+public class ParseLimitException extends SAXException
+{
+  /** Java serialization version. */
+  private static final long serialVersionUID = 5873413627195203245L;
+
+  /**
+   * Limits enforced while parsing.
+   *
+   * @author Iulian Rotaru
+   */
+  public enum Limit
+  {
+    BYTES, DEPTH, NODES, ATTRIBUTES, ENTITY_EXPANSIONS, TIMEOUT
+  }
+
+  /** Exceeded limit. */
+  private final Limit limit;
+  /** Configured value of exceeded limit. */
+  private final long value;
+
+  /**
+   * Create exception for exceeded limit.
+   *
+   * @param limit exceeded limit,
+   * @param value configured limit value.
+   */
+  public ParseLimitException(Limit limit, long value)
+  {
+    super(String.format("Parse limit |%s| exceeded. Limit value is |%d|.", limit, value));
+    this.limit = limit;
+    this.value = value;
+  }
+
+  public Limit getLimit()
+  {
+    return limit;
+  }
+
+  public long getValue()
+  {
+    return value;
+  }
+}
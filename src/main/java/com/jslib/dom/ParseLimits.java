@@ -0,0 +1,203 @@
+package com.jslib.dom;
+
+import static com.jslib.util.Params.isTrue;
+
+/**
+ * Immutable resource limits enforced while parsing a document, so that a pathological source - deeply nested, with
+ * millions of nodes or attributes, or with recursive entities - is cut off early, before consuming the heap or a
+ * processor core. Limits are configured on parse profile, see {@link ParseProfile.Builder#limits(ParseLimits)}, and
+ * apply to all XML and HTML loaders using that profile; trusted templates parser is not limited.
+ * <p>
+ * When a limit is exceeded parsing is aborted with {@link ParseLimitException}. A limit value of zero means no limit;
+ * {@link #NONE}, that is, no limit at all, is the default.
+ *
+ * <pre>
+ * ParseLimits limits = ParseLimits.builder().maxBytes(1024 * 1024).maxDepth(256).timeout(2000).build();
+ * DocumentBuilder builder = new DocumentBuilderImpl(ParseProfile.builder().limits(limits).build());
+ * </pre>
+ *
+ * @author Iulian Rotaru
+ */
+public final class ParseLimits
+{
+  /** No limits. */
+  public static final ParseLimits NONE = builder().build();
+
+  /** Maximum number of bytes read from source stream or characters read from source reader. */
+  private final long maxBytes;
+  /** Maximum elements nesting depth. */
+  private final int maxDepth;
+  /** Maximum number of nodes: elements, text runs, comments and processing instructions. */
+  private final long maxNodes;
+  /** Maximum number of attributes on a single element. */
+  private final int maxAttributes;
+  /** Maximum number of entity references expanded, nested expansions included. */
+  private final int maxEntityExpansions;
+  /** Maximum parsing time, in milliseconds. */
+  private final long timeout;
+
+  /**
+   * Create limits from builder state.
+   *
+   * @param builder limits builder.
+   */
+  private ParseLimits(Builder builder)
+  {
+    this.maxBytes = builder.maxBytes;
+    this.maxDepth = builder.maxDepth;
+    this.maxNodes = builder.maxNodes;
+    this.maxAttributes = builder.maxAttributes;
+    this.maxEntityExpansions = builder.maxEntityExpansions;
+    this.timeout = builder.timeout;
+  }
+
+  public long getMaxBytes()
+  {
+    return maxBytes;
+  }
+
+  public int getMaxDepth()
+  {
+    return maxDepth;
+  }
+
+  public long getMaxNodes()
+  {
+    return maxNodes;
+  }
+
+  public int getMaxAttributes()
+  {
+    return maxAttributes;
+  }
+
+  public int getMaxEntityExpansions()
+  {
+    return maxEntityExpansions;
+  }
+
+  public long getTimeout()
+  {
+    return timeout;
+  }
+
+  /**
+   * Test if any limit enforced by parser pipeline is set, that is, all limits except source size.
+   *
+   * @return true if pipeline limits are set.
+   */
+  boolean hasPipelineLimits()
+  {
+    return maxDepth > 0 || maxNodes > 0 || maxAttributes > 0 || maxEntityExpansions > 0 || timeout > 0;
+  }
+
+  /**
+   * Create builder for new limits, with no limit set.
+   *
+   * @return limits builder.
+   */
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * Builder for immutable parse limits. All limits are initialized to zero, that is, no limit.
+   *
+   * @author Iulian Rotaru
+   */
+  public static final class Builder
+  {
+    private long maxBytes;
+    private int maxDepth;
+    private long maxNodes;
+    private int maxAttributes;
+    private int maxEntityExpansions;
+    private long timeout;
+
+    private Builder()
+    {
+    }
+
+    /**
+     * Set source size limit. For byte streams, files and URLs limit is in bytes; for readers and character sequences
+     * it is in characters.
+     *
+     * @param maxBytes maximum source size or zero for no limit.
+     * @return this builder.
+     */
+    public Builder maxBytes(long maxBytes)
+    {
+      isTrue(maxBytes >= 0, "Maximum bytes should be positive or zero.");
+      this.maxBytes = maxBytes;
+      return this;
+    }
+
+    public Builder maxDepth(int maxDepth)
+    {
+      isTrue(maxDepth >= 0, "Maximum depth should be positive or zero.");
+      this.maxDepth = maxDepth;
+      return this;
+    }
+
+    /**
+     * Set nodes count limit. Counted nodes are elements, text runs, comments and processing instructions; attributes
+     * are limited per element, see {@link #maxAttributes(int)}.
+     *
+     * @param maxNodes maximum nodes count or zero for no limit.
+     * @return this builder.
+     */
+    public Builder maxNodes(long maxNodes)
+    {
+      isTrue(maxNodes >= 0, "Maximum nodes should be positive or zero.");
+      this.maxNodes = maxNodes;
+      return this;
+    }
+
+    public Builder maxAttributes(int maxAttributes)
+    {
+      isTrue(maxAttributes >= 0, "Maximum attributes should be positive or zero.");
+      this.maxAttributes = maxAttributes;
+      return this;
+    }
+
+    /**
+     * Set limit for entity references expanded by XML parser, guarding against recursive entities, also known as
+     * <em>billion laughs</em>. Limit is not relevant for HTML documents since NekoHTML does not process DTD entities.
+     * Expansions inside attribute values are limited by Xerces security manager and are reported as a parse error.
+     *
+     * @param maxEntityExpansions maximum entity expansions or zero for no limit.
+     * @return this builder.
+     */
+    public Builder maxEntityExpansions(int maxEntityExpansions)
+    {
+      isTrue(maxEntityExpansions >= 0, "Maximum entity expansions should be positive or zero.");
+      this.maxEntityExpansions = maxEntityExpansions;
+      return this;
+    }
+
+    /**
+     * Set parsing time limit. Time is checked while parsing, between parser events, so a source read blocked on a slow
+     * connection is not interrupted; use connection read timeout for that.
+     *
+     * @param timeout parsing timeout, in milliseconds, or zero for no limit.
+     * @return this builder.
+     */
+    public Builder timeout(long timeout)
+    {
+      isTrue(timeout >= 0, "Timeout should be positive or zero.");
+      this.timeout = timeout;
+      return this;
+    }
+
+    /**
+     * Create immutable limits from this builder state.
+     *
+     * @return newly created limits.
+     */
+    public ParseLimits build()
+    {
+      return new ParseLimits(this);
+    }
+  }
+}
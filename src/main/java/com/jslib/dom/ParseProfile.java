@@ -0,0 +1,809 @@
+package com.jslib.dom;
+
+import static com.jslib.util.Params.notNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.xerces.util.SecurityManager;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLParserConfiguration;
+import org.cyberneko.html.parsers.DOMParser;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import com.jslib.lang.BugError;
+
+/**
+ * Immutable parser configuration used by {@link DocumentBuilderImpl}. A profile groups parser features that control
+ * the shape of resulting DOM tree: comments, CDATA sections, entity references, ignorable white space, deferred nodes
+ * expansion and, for HTML documents, white space only text, NekoHTML tag balancer and element names case. Profile also
+ * holds resource limits enforced while parsing, see {@link ParseLimits}. Default profile, see {@link #DEFAULT},
+ * reproduces document builder original behavior.
+ * <p>
+ * Every profile owns its own pools of configured parsers, one pool per document type and name space awareness, so
+ * that parsers are not created on every loading. Profile instance is thread safe and is meant to be created once and
+ * reused; hot paths can use a profile with the cheapest configuration that still produces the tree they need.
+ *
+ * <pre>
+ * ParseProfile profile = ParseProfile.builder().deferNodeExpansion(true).balanceTags(false).build();
+ * DocumentBuilder builder = new DocumentBuilderImpl(profile);
+ * </pre>
+ *
+ * @author Iulian Rotaru
+ */
+public final class ParseProfile
+{
+  /** XML parser feature for name space support. */
+  private static final String FEAT_NAMESPACES = "http://xml.org/sax/features/namespaces";
+  /** XML parser feature for DTD validation. */
+  private static final String FEAT_VALIDATION = "http://xml.org/sax/features/validation";
+  /** XML parser feature for schema validation. */
+  private static final String FEAT_SCHEMA_VALIDATION = "http://apache.org/xml/features/validation/schema";
+  /** XML parser feature for comment nodes creation. */
+  private static final String FEAT_INCLUDE_COMMENTS = "http://apache.org/xml/features/include-comments";
+  /** XML parser feature for CDATA nodes creation; if disabled CDATA sections are coalesced into text nodes. */
+  private static final String FEAT_CREATE_CDATA_NODES = "http://apache.org/xml/features/create-cdata-nodes";
+  /** XML parser feature for entity reference nodes creation; if disabled entity references are expanded. */
+  private static final String FEAT_CREATE_ENTITY_REF_NODES = "http://apache.org/xml/features/dom/create-entity-ref-nodes";
+  /** XML parser feature for ignorable white space text nodes creation. */
+  private static final String FEAT_INCLUDE_IGNORABLE_WHITESPACE = "http://apache.org/xml/features/dom/include-ignorable-whitespace";
+  /** XML parser feature for deferred DOM nodes expansion. */
+  private static final String FEAT_DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+  /** DOM parser property for document class name. */
+  private static final String PROP_DOCUMENT_CLASS_NAME = "http://apache.org/xml/properties/dom/document-class-name";
+  /** Xerces core document class; deferred DOM is supported only for this document class. */
+  private static final String CORE_DOCUMENT_CLASS_NAME = "org.apache.xerces.dom.DocumentImpl";
+  /** HTML DOM document class used by XHTML parser. */
+  private static final String HTML_DOCUMENT_CLASS_NAME = "org.apache.html.dom.HTMLDocumentImpl";
+  /** Xerces parser property for security manager, used to limit entity expansions. */
+  private static final String PROP_SECURITY_MANAGER = "http://apache.org/xml/properties/security-manager";
+  /** Xerces parser property for grammar pool. */
+  private static final String PROP_GRAMMAR_POOL = "http://apache.org/xml/properties/internal/grammar-pool";
+  /** NekoHTML parser feature for tag balancer. */
+  private static final String FEAT_BALANCE_TAGS = "http://cyberneko.org/html/features/balance-tags";
+  /** NekoHTML parser property for element names case. */
+  private static final String PROP_NAMES_ELEMS = "http://cyberneko.org/html/properties/names/elems";
+  /** NekoHTML parser property for pipeline filters. */
+  private static final String PROP_FILTERS = "http://cyberneko.org/html/properties/filters";
+
+  /** Number of characters inspected for XHTML detection. */
+  private static final int XHTML_PROLOG_LENGTH = 512;
+
+  /** Maximum number of idle parsers kept by every pool. */
+  private static final int MAX_IDLE_PARSERS = 2 * Runtime.getRuntime().availableProcessors();
+
+  /** Default profile reproducing document builder original behavior. */
+  public static final ParseProfile DEFAULT = builder().build();
+
+  /**
+   * Element names case for HTML documents.
+   *
+   * @author Iulian Rotaru
+   */
+  public enum ElementNameCase
+  {
+    /** Convert element names to upper case; this is NekoHTML default. */
+    UPPER,
+    /** Convert element names to lower case. */
+    LOWER,
+    /** Keep element names as in source document. */
+    MATCH
+  }
+
+  /**
+   * XHTML fast path usage. On fast path HTML source is parsed by Xerces XML parser, creating the same HTML DOM document
+   * as NekoHTML but skipping tag balancer. If source is not well formed XML, parser falls back to NekoHTML.
+   *
+   * @author Iulian Rotaru
+   */
+  public enum XHTMLMode
+  {
+    /** Always use NekoHTML parser. */
+    DISABLED,
+    /** Use XML parser if source declares XHTML document type, XHTML name space or XML declaration. */
+    AUTO,
+    /** Always try XML parser first. */
+    ALWAYS
+  }
+
+  /** Create comment nodes for XML documents; if false comments are discarded. */
+  private final boolean includeXMLComments;
+  /** Create comment nodes for HTML documents; if false comments are discarded. */
+  private final boolean includeHTMLComments;
+  /** Coalesce CDATA sections into adjacent text nodes. */
+  private final boolean coalescing;
+  /** Expand entity references; if false entity reference nodes are created. */
+  private final boolean expandEntityReferences;
+  /** Create text nodes for white space declared ignorable by DTD. */
+  private final boolean includeIgnorableWhitespace;
+  /** Use Xerces deferred DOM for XML documents, that builds a compact representation and creates nodes on access. */
+  private final boolean deferNodeExpansion;
+  /** Use Xerces deferred DOM for HTML documents; resulting document is a core DOM document, not an HTML one. */
+  private final boolean deferHTMLNodeExpansion;
+  /** Drop white space only text from HTML documents, except from elements with significant white space. */
+  private final boolean stripWhitespaceText;
+  /** Enable NekoHTML tag balancer. */
+  private final boolean balanceTags;
+  /** Element names case for HTML documents. */
+  private final ElementNameCase elementNameCase;
+  /** XHTML fast path usage. */
+  private final XHTMLMode xhtmlMode;
+  /** Resource limits enforced while parsing. */
+  private final ParseLimits limits;
+
+  /** Pool of XML parsers without name space support. */
+  private final ParserPool<org.apache.xerces.parsers.DOMParser> xmlParsers;
+  /** Pool of name space aware XML parsers. */
+  private final ParserPool<org.apache.xerces.parsers.DOMParser> xmlParsersNS;
+  /** Pool of HTML parsers without name space support. */
+  private final ParserPool<DOMParser> htmlParsers;
+  /** Pool of name space aware HTML parsers. */
+  private final ParserPool<DOMParser> htmlParsersNS;
+  /** Pool of XML parsers creating HTML documents, used by XHTML fast path. */
+  private final ParserPool<org.apache.xerces.parsers.DOMParser> xhtmlParsers;
+  /** Pool of name space aware XML parsers creating HTML documents. */
+  private final ParserPool<org.apache.xerces.parsers.DOMParser> xhtmlParsersNS;
+  /** XHTML DTD grammars cache shared by XHTML parsers. */
+  private final XMLGrammarPool grammarPool = new XMLGrammarPoolImpl();
+
+  /**
+   * Create profile from builder state.
+   *
+   * @param builder profile builder.
+   */
+  private ParseProfile(Builder builder)
+  {
+    this.includeXMLComments = builder.includeXMLComments;
+    this.includeHTMLComments = builder.includeHTMLComments;
+    this.coalescing = builder.coalescing;
+    this.expandEntityReferences = builder.expandEntityReferences;
+    this.includeIgnorableWhitespace = builder.includeIgnorableWhitespace;
+    this.deferNodeExpansion = builder.deferNodeExpansion;
+    this.deferHTMLNodeExpansion = builder.deferHTMLNodeExpansion;
+    this.stripWhitespaceText = builder.stripWhitespaceText;
+    this.balanceTags = builder.balanceTags;
+    // deferred HTML document is a core document with case sensitive tag lookups; lower case is HTML canonical case
+    this.elementNameCase = builder.deferHTMLNodeExpansion ? ElementNameCase.LOWER : builder.elementNameCase;
+    this.xhtmlMode = builder.xhtmlMode;
+    this.limits = builder.limits;
+
+    this.xmlParsers = new ParserPool<>(() -> createXMLParser(false, deferNodeExpansion), MAX_IDLE_PARSERS);
+    this.xmlParsersNS = new ParserPool<>(() -> createXMLParser(true, deferNodeExpansion), MAX_IDLE_PARSERS);
+    this.htmlParsers = new ParserPool<>(() -> createHTMLParser(false, deferHTMLNodeExpansion), MAX_IDLE_PARSERS);
+    this.htmlParsersNS = new ParserPool<>(() -> createHTMLParser(true, deferHTMLNodeExpansion), MAX_IDLE_PARSERS);
+    this.xhtmlParsers = new ParserPool<>(() -> createXHTMLParser(false), MAX_IDLE_PARSERS);
+    this.xhtmlParsersNS = new ParserPool<>(() -> createXHTMLParser(true), MAX_IDLE_PARSERS);
+  }
+
+  public boolean isIncludeXMLComments()
+  {
+    return includeXMLComments;
+  }
+
+  public boolean isIncludeHTMLComments()
+  {
+    return includeHTMLComments;
+  }
+
+  public boolean isCoalescing()
+  {
+    return coalescing;
+  }
+
+  public boolean isExpandEntityReferences()
+  {
+    return expandEntityReferences;
+  }
+
+  public boolean isIncludeIgnorableWhitespace()
+  {
+    return includeIgnorableWhitespace;
+  }
+
+  public boolean isDeferNodeExpansion()
+  {
+    return deferNodeExpansion;
+  }
+
+  public boolean isDeferHTMLNodeExpansion()
+  {
+    return deferHTMLNodeExpansion;
+  }
+
+  public boolean isStripWhitespaceText()
+  {
+    return stripWhitespaceText;
+  }
+
+  public boolean isBalanceTags()
+  {
+    return balanceTags;
+  }
+
+  public ElementNameCase getElementNameCase()
+  {
+    return elementNameCase;
+  }
+
+  public XHTMLMode getXHTMLMode()
+  {
+    return xhtmlMode;
+  }
+
+  public ParseLimits getLimits()
+  {
+    return limits;
+  }
+
+  // ----------------------------------------------------
+  // parsing using pooled parsers
+
+  /**
+   * Parse XML document from input source using a pooled parser. Input source is not closed by this method.
+   *
+   * @param source input source,
+   * @param useNamespace flag to control name space awareness.
+   * @return W3C DOM document.
+   * @throws IOException if input source reading fails.
+   * @throws SAXException if input source content is not a valid XML document.
+   */
+  org.w3c.dom.Document parseXML(InputSource source, boolean useNamespace) throws IOException, SAXException
+  {
+    ParserPool<org.apache.xerces.parsers.DOMParser> pool = useNamespace ? xmlParsersNS : xmlParsers;
+    org.apache.xerces.parsers.DOMParser parser = pool.borrow();
+    try {
+      parse(parser, source);
+      return parser.getDocument();
+    }
+    finally {
+      pool.release(parser);
+    }
+  }
+
+  /**
+   * Parse HTML document from input source using a pooled parser. Input source is not closed by this method.
+   * <p>
+   * If XHTML fast path is enabled, see {@link XHTMLMode}, source content is buffered in memory and parsed with XML
+   * parser; on the first well formedness error buffered content is parsed again with NekoHTML. Exceeded parse limits
+   * are not recovered by fallback.
+   *
+   * @param source input source,
+   * @param useNamespace flag to control name space awareness.
+   * @return W3C DOM document.
+   * @throws IOException if input source reading fails.
+   * @throws SAXException if input source content is not valid HTML.
+   */
+  org.w3c.dom.Document parseHTML(InputSource source, boolean useNamespace) throws IOException, SAXException
+  {
+    if(xhtmlMode != XHTMLMode.DISABLED && (source.getByteStream() != null || source.getCharacterStream() != null)) {
+      SourceBuffer buffer = buffer(source);
+      if(xhtmlMode == XHTMLMode.ALWAYS || isXHTML(buffer.getProlog(XHTML_PROLOG_LENGTH))) {
+        org.w3c.dom.Document doc = parseXHTML(buffer.getSource(), useNamespace);
+        if(doc != null) {
+          return doc;
+        }
+      }
+      source = buffer.getSource();
+    }
+
+    ParserPool<DOMParser> pool = useNamespace ? htmlParsersNS : htmlParsers;
+    DOMParser parser = pool.borrow();
+    try {
+      parse(parser, source);
+      return parser.getDocument();
+    }
+    finally {
+      pool.release(parser);
+    }
+  }
+
+  /**
+   * Parse XHTML document with pooled XML parser.
+   *
+   * @param source input source,
+   * @param useNamespace flag to control name space awareness.
+   * @return HTML DOM document or null if source is not well formed XML.
+   * @throws IOException if input source reading fails.
+   * @throws ParseLimitException if source exceeds parse limits.
+   */
+  private org.w3c.dom.Document parseXHTML(InputSource source, boolean useNamespace) throws IOException, ParseLimitException
+  {
+    ParserPool<org.apache.xerces.parsers.DOMParser> pool = useNamespace ? xhtmlParsersNS : xhtmlParsers;
+    org.apache.xerces.parsers.DOMParser parser = pool.borrow();
+    try {
+      parse(parser, source);
+      return parser.getDocument();
+    }
+    catch(ParseLimitException e) {
+      throw e;
+    }
+    catch(SAXException e) {
+      return null;
+    }
+    finally {
+      pool.release(parser);
+    }
+  }
+
+  /**
+   * Parse input source with given parser, enforcing source size limit. Limits enforced by parser pipeline are
+   * installed by parsers factory methods.
+   *
+   * @param parser DOM parser created by this profile,
+   * @param source input source.
+   * @throws IOException if input source reading fails.
+   * @throws ParseLimitException if source exceeds parse limits.
+   * @throws SAXException if input source content is not valid.
+   */
+  void parse(org.apache.xerces.parsers.DOMParser parser, InputSource source) throws IOException, SAXException
+  {
+    try {
+      parser.parse(bound(source));
+    }
+    catch(IOException e) {
+      ParseLimitException limitException = BoundedInputStream.unwrap(e);
+      if(limitException != null) {
+        throw limitException;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Buffer input source content in memory, enforcing source size limit.
+   *
+   * @param source input source.
+   * @return source buffer.
+   * @throws IOException if input source reading fails.
+   * @throws ParseLimitException if source exceeds size limit.
+   */
+  private SourceBuffer buffer(InputSource source) throws IOException, ParseLimitException
+  {
+    try {
+      return new SourceBuffer(bound(source));
+    }
+    catch(IOException e) {
+      ParseLimitException limitException = BoundedInputStream.unwrap(e);
+      if(limitException != null) {
+        throw limitException;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Wrap input source stream, or reader, into a bounded one if source size limit is set. Returns source unchanged if
+   * there is no size limit or source has no stream.
+   *
+   * @param source input source.
+   * @return bounded input source.
+   */
+  private InputSource bound(InputSource source)
+  {
+    if(limits.getMaxBytes() == 0) {
+      return source;
+    }
+    InputSource boundedSource;
+    if(source.getCharacterStream() != null) {
+      boundedSource = new InputSource(new BoundedReader(source.getCharacterStream(), limits.getMaxBytes()));
+    }
+    else if(source.getByteStream() != null) {
+      boundedSource = new InputSource(new BoundedInputStream(source.getByteStream(), limits.getMaxBytes()));
+    }
+    else {
+      return source;
+    }
+    boundedSource.setEncoding(source.getEncoding());
+    boundedSource.setPublicId(source.getPublicId());
+    boundedSource.setSystemId(source.getSystemId());
+    return boundedSource;
+  }
+
+  /**
+   * Test if content prolog declares an XHTML document: XML declaration, XHTML document type or XHTML name space.
+   *
+   * @param prolog content prolog.
+   * @return true if content is declared XHTML.
+   */
+  private static boolean isXHTML(String prolog)
+  {
+    int start = 0;
+    while(start < prolog.length() && (Character.isWhitespace(prolog.charAt(start)) || prolog.charAt(start) == '\uFEFF')) {
+      ++start;
+    }
+    return prolog.startsWith("<?xml", start) || prolog.contains("-//W3C//DTD XHTML") || prolog.contains("http://www.w3.org/1999/xhtml");
+  }
+
+  // ----------------------------------------------------
+  // parsers factory
+
+  /**
+   * Create Xerces XML DOM parser configured from this profile. Entity resolver and error handler are the same used by
+   * document builder. Optional pipeline filters are inserted, in given order, between parser configuration and DOM
+   * builder, after parse limits component, if any.
+   *
+   * @param useNamespace flag to use name space,
+   * @param deferNodeExpansion flag to use deferred DOM,
+   * @param filters optional pipeline filters.
+   * @return XML DOM parser.
+   */
+  org.apache.xerces.parsers.DOMParser createXMLParser(boolean useNamespace, boolean deferNodeExpansion, XMLDocumentFilter... filters)
+  {
+    org.apache.xerces.parsers.DOMParser parser = new org.apache.xerces.parsers.DOMParser();
+    try {
+      parser.setFeature(FEAT_NAMESPACES, useNamespace);
+      parser.setFeature(FEAT_VALIDATION, false);
+      parser.setFeature(FEAT_SCHEMA_VALIDATION, false);
+      parser.setFeature(FEAT_INCLUDE_COMMENTS, includeXMLComments);
+      parser.setFeature(FEAT_CREATE_CDATA_NODES, !coalescing);
+      parser.setFeature(FEAT_CREATE_ENTITY_REF_NODES, !expandEntityReferences);
+      parser.setFeature(FEAT_INCLUDE_IGNORABLE_WHITESPACE, includeIgnorableWhitespace);
+      parser.setFeature(FEAT_DEFER_NODE_EXPANSION, deferNodeExpansion);
+      if(limits.getMaxEntityExpansions() > 0) {
+        // pipeline component does not see entities expanded in attribute values; Xerces counts all expansions
+        SecurityManager securityManager = new SecurityManager();
+        securityManager.setEntityExpansionLimit(limits.getMaxEntityExpansions());
+        parser.setProperty(PROP_SECURITY_MANAGER, securityManager);
+      }
+    }
+    catch(SAXException e) {
+      // Xerces parser does not support features used by this method
+      throw new BugError(e);
+    }
+    parser.setEntityResolver(new EntityResolverImpl());
+    parser.setErrorHandler(new DocumentBuilderImpl.ErrorHandlerImpl());
+
+    filters = limitsFilters(filters);
+    if(filters.length > 0) {
+      // parser configuration sends events to its document handler, that is, the parser itself
+      // insert filters chain between configuration and parser
+      XMLParserConfiguration configuration = parser.getXMLParserConfiguration();
+      configuration.setDocumentHandler(filters[0]);
+      for(int i = 1; i < filters.length; ++i) {
+        filters[i - 1].setDocumentHandler(filters[i]);
+        filters[i].setDocumentSource(filters[i - 1]);
+      }
+      filters[filters.length - 1].setDocumentHandler(parser);
+      parser.setDocumentSource(filters[filters.length - 1]);
+    }
+    return parser;
+  }
+
+  /**
+   * Create NekoHTML DOM parser configured from this profile. Optional pipeline filters are inserted, in given order,
+   * after NekoHTML tag balancer and parse limits component, if any.
+   * <p>
+   * NekoHTML parser creates HTML DOM documents and Xerces does not support deferred nodes expansion for them. If
+   * deferred DOM is requested parser is configured to create a Xerces core document instead, see
+   * {@link Builder#deferHTMLNodeExpansion(boolean)}, and <code>id</code> attributes are declared of type ID by
+   * {@link IdAttributeComponent}, last in pipeline.
+   *
+   * @param useNamespace flag to use name space,
+   * @param deferNodeExpansion flag to use deferred DOM,
+   * @param filters optional pipeline filters.
+   * @return HTML DOM parser.
+   */
+  DOMParser createHTMLParser(boolean useNamespace, boolean deferNodeExpansion, XMLDocumentFilter... filters)
+  {
+    DOMParser parser = new DOMParser();
+    try {
+      if(deferNodeExpansion) {
+        parser.setProperty(PROP_DOCUMENT_CLASS_NAME, CORE_DOCUMENT_CLASS_NAME);
+        parser.setFeature(FEAT_DEFER_NODE_EXPANSION, true);
+      }
+      // source http://nekohtml.sourceforge.net/faq.html#hierarchy
+      parser.setFeature(FEAT_NAMESPACES, useNamespace);
+      parser.setFeature(FEAT_INCLUDE_COMMENTS, includeHTMLComments);
+      parser.setFeature(FEAT_BALANCE_TAGS, balanceTags);
+      parser.setProperty(PROP_NAMES_ELEMS, elementNameCase.name().toLowerCase());
+      filters = htmlFilters(limitsFilters(filters));
+      if(deferNodeExpansion) {
+        XMLDocumentFilter[] deferredFilters = new XMLDocumentFilter[filters.length + 1];
+        System.arraycopy(filters, 0, deferredFilters, 0, filters.length);
+        deferredFilters[filters.length] = new IdAttributeComponent();
+        filters = deferredFilters;
+      }
+      if(filters.length > 0) {
+        parser.setProperty(PROP_FILTERS, filters);
+      }
+    }
+    catch(SAXException e) {
+      // NekoHTML parser does not support features used by this method
+      throw new BugError(e);
+    }
+    return parser;
+  }
+
+  /**
+   * Create Xerces XML parser for XHTML fast path. Parser creates HTML DOM documents, as NekoHTML parser does, and caches
+   * XHTML DTD grammars. Well formedness errors are not logged since parser falls back to NekoHTML.
+   *
+   * @param useNamespace flag to use name space.
+   * @return XHTML DOM parser.
+   */
+  org.apache.xerces.parsers.DOMParser createXHTMLParser(boolean useNamespace)
+  {
+    org.apache.xerces.parsers.DOMParser parser = createXMLParser(useNamespace, false, htmlFilters());
+    try {
+      parser.setFeature(FEAT_INCLUDE_COMMENTS, includeHTMLComments);
+      parser.setProperty(PROP_DOCUMENT_CLASS_NAME, HTML_DOCUMENT_CLASS_NAME);
+      parser.setProperty(PROP_GRAMMAR_POOL, grammarPool);
+    }
+    catch(SAXException e) {
+      // Xerces parser does not support features used by this method
+      throw new BugError(e);
+    }
+    // external entities not bundled with this library are replaced with empty content, instead of being loaded from
+    // network; if source uses entities defined by them, parsing fails and falls back to NekoHTML
+    EntityResolverImpl entityResolver = new EntityResolverImpl();
+    parser.setEntityResolver((publicId, systemId) -> {
+      InputSource source = entityResolver.resolveEntity(publicId, systemId);
+      return source != null ? source : new InputSource(new StringReader(""));
+    });
+    parser.setErrorHandler(new XHTMLErrorHandler());
+    return parser;
+  }
+
+  /**
+   * Prepend parse limits component, if any pipeline limit is set, to given filters.
+   *
+   * @param filters pipeline filters, possible empty.
+   * @return pipeline filters.
+   */
+  private XMLDocumentFilter[] limitsFilters(XMLDocumentFilter... filters)
+  {
+    if(!limits.hasPipelineLimits()) {
+      return filters;
+    }
+    // limits component is the first one so that it sees source content before any other filter
+    XMLDocumentFilter[] limitsFilters = new XMLDocumentFilter[filters.length + 1];
+    limitsFilters[0] = new LimitsFilterComponent(limits);
+    System.arraycopy(filters, 0, limitsFilters, 1, filters.length);
+    return limitsFilters;
+  }
+
+  /**
+   * Append HTML specific pipeline components, if configured, to given filters.
+   *
+   * @param filters user pipeline filters, possible empty.
+   * @return pipeline filters.
+   */
+  private XMLDocumentFilter[] htmlFilters(XMLDocumentFilter... filters)
+  {
+    if(!stripWhitespaceText) {
+      return filters;
+    }
+    // white space filter is the last one so that it sees the events that reach DOM builder
+    XMLDocumentFilter[] htmlFilters = new XMLDocumentFilter[filters.length + 1];
+    System.arraycopy(filters, 0, htmlFilters, 0, filters.length);
+    htmlFilters[filters.length] = new WhitespaceFilterComponent();
+    return htmlFilters;
+  }
+
+  /**
+   * Error handler for XHTML fast path. Fatal errors abort parsing, with no logging, and all other errors are ignored.
+   *
+   * @author Iulian Rotaru
+   */
+  private static class XHTMLErrorHandler implements ErrorHandler
+  {
+    @Override
+    public void fatalError(SAXParseException exception) throws SAXException
+    {
+      throw exception;
+    }
+
+    @Override
+    public void error(SAXParseException exception) throws SAXException
+    {
+    }
+
+    @Override
+    public void warning(SAXParseException exception) throws SAXException
+    {
+    }
+  }
+
+  // ----------------------------------------------------
+
+  /**
+   * Create builder for a new profile, initialized with default values.
+   *
+   * @return profile builder.
+   */
+  public static Builder builder()
+  {
+    return new Builder();
+  }
+
+  /**
+   * Builder for immutable parse profile. Default values reproduce document builder original behavior: for XML
+   * documents comments are discarded, CDATA sections coalesced, entity references expanded, ignorable white space
+   * discarded and deferred DOM enabled; for HTML documents comments and white space text are kept, deferred DOM
+   * disabled, tag balancer enabled, element names are upper case and XHTML fast path is disabled. There are no parse
+   * limits.
+   *
+   * @author Iulian Rotaru
+   */
+  public static final class Builder
+  {
+    private boolean includeXMLComments = false;
+    private boolean includeHTMLComments = true;
+    private boolean coalescing = true;
+    private boolean expandEntityReferences = true;
+    private boolean includeIgnorableWhitespace = false;
+    private boolean deferNodeExpansion = true;
+    private boolean deferHTMLNodeExpansion = false;
+    private boolean stripWhitespaceText = false;
+    private boolean balanceTags = true;
+    private ElementNameCase elementNameCase = ElementNameCase.UPPER;
+    private XHTMLMode xhtmlMode = XHTMLMode.DISABLED;
+    private ParseLimits limits = ParseLimits.NONE;
+
+    private Builder()
+    {
+    }
+
+    /**
+     * Create comment nodes for both XML and HTML documents.
+     *
+     * @param includeComments flag true to keep comments.
+     * @return this builder.
+     */
+    public Builder includeComments(boolean includeComments)
+    {
+      this.includeXMLComments = includeComments;
+      this.includeHTMLComments = includeComments;
+      return this;
+    }
+
+    public Builder includeXMLComments(boolean includeXMLComments)
+    {
+      this.includeXMLComments = includeXMLComments;
+      return this;
+    }
+
+    public Builder includeHTMLComments(boolean includeHTMLComments)
+    {
+      this.includeHTMLComments = includeHTMLComments;
+      return this;
+    }
+
+    public Builder coalescing(boolean coalescing)
+    {
+      this.coalescing = coalescing;
+      return this;
+    }
+
+    public Builder expandEntityReferences(boolean expandEntityReferences)
+    {
+      this.expandEntityReferences = expandEntityReferences;
+      return this;
+    }
+
+    public Builder includeIgnorableWhitespace(boolean includeIgnorableWhitespace)
+    {
+      this.includeIgnorableWhitespace = includeIgnorableWhitespace;
+      return this;
+    }
+
+    /**
+     * Enable Xerces deferred DOM for XML documents. For HTML documents see {@link #deferHTMLNodeExpansion(boolean)}.
+     *
+     * @param deferNodeExpansion flag true to enable deferred DOM.
+     * @return this builder.
+     */
+    public Builder deferNodeExpansion(boolean deferNodeExpansion)
+    {
+      this.deferNodeExpansion = deferNodeExpansion;
+      return this;
+    }
+
+    /**
+     * Enable Xerces deferred DOM for HTML documents. Deferred DOM is cheap to build and nodes are created on access, so
+     * it pays off when only a few elements are read from a large document; if entire tree is traversed, e.g. for
+     * serialization, it is slower than eager nodes creation.
+     * <p>
+     * Xerces supports deferred DOM only for core documents so loaded document is not an HTML DOM document and tag lookups
+     * are case sensitive. This option forces {@link ElementNameCase#LOWER} element names, overriding
+     * {@link #elementNameCase(ElementNameCase)}, so that tags should be looked up lower case. Element <code>id</code>
+     * attributes are registered as identifiers so that get by ID works as on HTML DOM document.
+     *
+     * @param deferHTMLNodeExpansion flag true to enable deferred DOM for HTML documents.
+     * @return this builder.
+     */
+    public Builder deferHTMLNodeExpansion(boolean deferHTMLNodeExpansion)
+    {
+      this.deferHTMLNodeExpansion = deferHTMLNodeExpansion;
+      return this;
+    }
+
+    /**
+     * Drop white space only text from HTML documents while building the tree, reducing nodes count, memory and
+     * traversal time. Content of <code>pre</code>, <code>textarea</code> and {@link HTML#RAW_TAGS} elements is
+     * preserved. Dropped text is only indentation that {@link Serializer} already trims away; anyway, white space between
+     * inline elements is lost too.
+     *
+     * @param stripWhitespaceText flag true to drop white space only text.
+     * @return this builder.
+     */
+    public Builder stripWhitespaceText(boolean stripWhitespaceText)
+    {
+      this.stripWhitespaceText = stripWhitespaceText;
+      return this;
+    }
+
+    /**
+     * Enable NekoHTML tag balancer. Disable it only for well formed HTML sources since, without balancer, unclosed
+     * tags and missing <code>html</code>, <code>head</code> or <code>body</code> elements are not fixed.
+     *
+     * @param balanceTags flag true to enable tag balancer.
+     * @return this builder.
+     */
+    public Builder balanceTags(boolean balanceTags)
+    {
+      this.balanceTags = balanceTags;
+      return this;
+    }
+
+    /**
+     * Set element names case reported by NekoHTML scanner to parser pipeline, that is, to {@link ElementFilter} and
+     * {@link StopCondition}. Note that HTML DOM document always stores element names upper case. Ignored if
+     * {@link #deferHTMLNodeExpansion(boolean)} is enabled, that always uses lower case.
+     *
+     * @param elementNameCase element names case.
+     * @return this builder.
+     */
+    public Builder elementNameCase(ElementNameCase elementNameCase)
+    {
+      notNull(elementNameCase, "Element name case");
+      this.elementNameCase = elementNameCase;
+      return this;
+    }
+
+    /**
+     * Set XHTML fast path usage. Fast path skips NekoHTML tag balancer and is meant for trusted, well formed XHTML
+     * sources, like templates. It applies only to HTML loaders without parse time filters; source content is buffered
+     * in memory to allow fallback to NekoHTML. Documents loaded on fast path are always HTML DOM documents, even if
+     * {@link #deferHTMLNodeExpansion(boolean)} is enabled, and, since XHTML DTD is processed, may contain default
+     * attributes, see {@link HTML#DEFAULT_ATTRS}.
+     *
+     * @param xhtmlMode XHTML fast path usage.
+     * @return this builder.
+     */
+    public Builder xhtmlMode(XHTMLMode xhtmlMode)
+    {
+      notNull(xhtmlMode, "XHTML mode");
+      this.xhtmlMode = xhtmlMode;
+      return this;
+    }
+
+    /**
+     * Set resource limits enforced while parsing, for both XML and HTML documents.
+     *
+     * @param limits parse limits.
+     * @return this builder.
+     */
+    public Builder limits(ParseLimits limits)
+    {
+      notNull(limits, "Parse limits");
+      this.limits = limits;
+      return this;
+    }
+
+    /**
+     * Create immutable profile from this builder state.
+     *
+     * @return newly created profile.
+     */
+    public ParseProfile build()
+    {
+      return new ParseProfile(this);
+    }
+  }
+}
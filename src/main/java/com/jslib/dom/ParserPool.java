@@ -0,0 +1,70 @@
+package com.jslib.dom;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.xerces.parsers.AbstractDOMParser;
+
+/**
+ * Pool of idle DOM parsers with the same configuration. Xerces and NekoHTML parsers are expensive to create but can be
+ * reused for multiple parsing operations, one at a time. This pool is thread safe; it creates a new parser when there
+ * is no idle one and keeps at most a given number of idle parsers.
+ *
+ * @param <T> parser type.
+ * @author Iulian Rotaru
+ */
+final class ParserPool<T extends AbstractDOMParser>
+{
+  /** Idle parsers. */
+  private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+  /** Approximate idle parsers count, maintained separately since queue size is not constant time. */
+  private final AtomicInteger idleCount = new AtomicInteger();
+  /** Parser factory. */
+  private final Supplier<T> factory;
+  /** Maximum number of idle parsers kept by this pool. */
+  private final int maxIdle;
+
+  /**
+   * Create parsers pool.
+   *
+   * @param factory parser factory,
+   * @param maxIdle maximum number of idle parsers.
+   */
+  public ParserPool(Supplier<T> factory, int maxIdle)
+  {
+    this.factory = factory;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Get an idle parser or create a new one if pool is empty.
+   *
+   * @return parser instance.
+   */
+  public T borrow()
+  {
+    T parser = idle.poll();
+    if(parser == null) {
+      return factory.get();
+    }
+    idleCount.decrementAndGet();
+    return parser;
+  }
+
+  /**
+   * Return parser to pool. Drop parser references to last parsed document so that pool does not retain it; if pool is
+   * full parser is discarded.
+   *
+   * @param parser parser instance.
+   */
+  public void release(T parser)
+  {
+    parser.dropDocumentReferences();
+    if(idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      return;
+    }
+    idle.offer(parser);
+  }
+}
@@ -0,0 +1,57 @@
+package com.jslib.dom;
+
+import com.jslib.api.dom.Document;
+
+/**
+ * Result of a partial document loading, see {@link StopCondition}. Holds loaded document, possible incomplete, and
+ * loading statistics.
+ *
+ * @author Iulian Rotaru
+ */
+public final class PartialDocument
+{
+  /** Loaded document, incomplete if parsing was stopped. */
+  private final Document document;
+  /** Flag true if parsing was stopped by stop condition before document end. */
+  private final boolean stopped;
+  /** The number of bytes read from source stream. */
+  private final long bytesRead;
+
+  PartialDocument(Document document, boolean stopped, long bytesRead)
+  {
+    this.document = document;
+    this.stopped = stopped;
+    this.bytesRead = bytesRead;
+  }
+
+  /**
+   * Get loaded document. Returned document is incomplete if parsing was stopped but it is fully functional.
+   *
+   * @return loaded document.
+   */
+  public Document getDocument()
+  {
+    return document;
+  }
+
+  /**
+   * Test if parsing was stopped by stop condition. Returns false if entire source was parsed.
+   *
+   * @return true if parsing was stopped.
+   */
+  public boolean isStopped()
+  {
+    return stopped;
+  }
+
+  /**
+   * Get the number of bytes actually read from source stream. Since parser reads in chunks this value can be larger
+   * than the size of parsed content, but never larger than source size.
+   *
+   * @return bytes read.
+   */
+  public long getBytesRead()
+  {
+    return bytesRead;
+  }
+}
@@ -0,0 +1,322 @@
+package com.jslib.dom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Node;
+
+import com.jslib.util.Params;
+
+/**
+ * Simple element query evaluated in batch by {@link DocumentImpl#findAll(Query...)}. A query is a conjunction of
+ * element tag name, CSS classes and attribute conditions; all conditions are tested on a single element, without
+ * looking at ancestors or siblings, so that any number of queries are answered in a single document traversal.
+ * <p>
+ * Use factory methods to create queries: {@link #tag(String)}, {@link #tagNS(String, String)},
+ * {@link #cssClass(String)}, {@link #attr(String, String...)}, {@link #attrNS(String, String, String...)} and
+ * {@link #selector(String)}. Query semantic is the same as of related <code>findBy</code> method, for example
+ * <code>Query.attr("name", "value")</code> matches the same elements as <code>findByAttr("name", "value")</code>.
+ * <p>
+ * For HTML documents tag names are compared ignoring case. Query instances are immutable and can be reused.
+ *
+ * @author Iulian Rotaru
+ */
+public final class Query
+{
+  /** Optional tag name namespace URI, null if tag name is not name space aware. */
+  private final String namespaceURI;
+  /** Tag name, possible <code>*</code> for any tag name, null if tag name is not tested. */
+  private final String tagName;
+  /** CSS classes element should have, possible empty. */
+  private final String[] cssClasses;
+  /** Attribute conditions, possible empty. */
+  private final Attribute[] attributes;
+
+  private Query(String namespaceURI, String tagName, String[] cssClasses, Attribute[] attributes)
+  {
+    this.namespaceURI = namespaceURI;
+    this.tagName = tagName;
+    this.cssClasses = cssClasses;
+    this.attributes = attributes;
+  }
+
+  /**
+   * Create query for elements with given tag name, see {@link com.jslib.api.dom.Document#findByTag(String)}. Special
+   * value <code>*</code> matches all elements.
+   *
+   * @param tagName tag name.
+   * @return query instance.
+   * @throws IllegalArgumentException if tag name is null or empty.
+   */
+  public static Query tag(String tagName)
+  {
+    Params.notNullOrEmpty(tagName, "Tag name");
+    return new Query(null, tagName, new String[0], new Attribute[0]);
+  }
+
+  /**
+   * Create query for elements with given name space and local name, see
+   * {@link com.jslib.api.dom.Document#findByTagNS(String, String)}. Special value <code>*</code> matches all name spaces,
+   * respective all local names. If name space URI is null this factory delegates {@link #tag(String)}.
+   *
+   * @param namespaceURI name space URI, possible null,
+   * @param tagName tag local name.
+   * @return query instance.
+   * @throws IllegalArgumentException if tag name is null or empty.
+   */
+  public static Query tagNS(String namespaceURI, String tagName)
+  {
+    if(namespaceURI == null) {
+      return tag(tagName);
+    }
+    Params.notNullOrEmpty(tagName, "Tag name");
+    return new Query(namespaceURI, tagName, new String[0], new Attribute[0]);
+  }
+
+  /**
+   * Create query for elements having given CSS class, see {@link com.jslib.api.dom.Document#findByCssClass(String)}.
+   * Empty CSS class matches no element.
+   *
+   * @param cssClass CSS class.
+   * @return query instance.
+   * @throws IllegalArgumentException if CSS class is null.
+   */
+  public static Query cssClass(String cssClass)
+  {
+    Params.notNull(cssClass, "CSS class");
+    return new Query(null, null, new String[]
+    {
+        cssClass
+    }, new Attribute[0]);
+  }
+
+  /**
+   * Create query for elements with attribute and optional value, see
+   * {@link com.jslib.api.dom.Document#findByAttr(String, String...)}.
+   *
+   * @param name attribute name,
+   * @param value optional attribute value.
+   * @return query instance.
+   * @throws IllegalArgumentException if attribute name is null or empty.
+   */
+  public static Query attr(String name, String... value)
+  {
+    Params.notNullOrEmpty(name, "Attribute name");
+    return new Query(null, null, new String[0], new Attribute[]
+    {
+        new Attribute(null, name, value.length == 1 ? value[0] : null)
+    });
+  }
+
+  /**
+   * Name space aware variant of {@link #attr(String, String...)}. If name space URI is null this factory delegates
+   * {@link #attr(String, String...)}.
+   *
+   * @param namespaceURI name space URI, possible null,
+   * @param name attribute local name,
+   * @param value optional attribute value.
+   * @return query instance.
+   * @throws IllegalArgumentException if attribute name is null or empty.
+   */
+  public static Query attrNS(String namespaceURI, String name, String... value)
+  {
+    if(namespaceURI == null) {
+      return attr(name, value);
+    }
+    Params.notNullOrEmpty(name, "Attribute name");
+    return new Query(null, null, new String[0], new Attribute[]
+    {
+        new Attribute(namespaceURI, name, value.length == 1 ? value[0] : null)
+    });
+  }
+
+  /**
+   * Create query from a CSS compound selector. Supported selector is a sequence of simple selectors without
+   * combinators: optional type selector or universal selector, followed by any number of ID, class and attribute
+   * selectors, e.g. <code>a.button[target=_blank]</code> or <code>#main</code>. Attribute selectors support presence
+   * test and value equality, with quoted or unquoted value.
+   *
+   * @param selector CSS compound selector.
+   * @return query instance.
+   * @throws IllegalArgumentException if selector is null, empty or not supported.
+   */
+  public static Query selector(String selector)
+  {
+    Params.notNullOrEmpty(selector, "CSS selector");
+    String tagName = null;
+    List<String> cssClasses = new ArrayList<>();
+    List<Attribute> attributes = new ArrayList<>();
+
+    int index = 0;
+    int length = selector.length();
+    if(selector.charAt(0) == '*') {
+      tagName = "*";
+      ++index;
+    }
+    else if(isNameChar(selector.charAt(0))) {
+      index = nameEnd(selector, 0);
+      tagName = selector.substring(0, index);
+    }
+
+    while(index < length) {
+      char c = selector.charAt(index);
+      if(c == '.' || c == '#') {
+        int end = nameEnd(selector, index + 1);
+        Params.isTrue(end > index + 1, "Missing name in CSS selector |%s|.", selector);
+        String name = selector.substring(index + 1, end);
+        if(c == '.') {
+          cssClasses.add(name);
+        }
+        else {
+          attributes.add(new Attribute(null, "id", name));
+        }
+        index = end;
+        continue;
+      }
+
+      Params.isTrue(c == '[', "Not supported CSS selector |%s|.", selector);
+      int end = selector.indexOf(']', index);
+      Params.isTrue(end > index, "Not closed attribute selector in |%s|.", selector);
+      String condition = selector.substring(index + 1, end).trim();
+      int equals = condition.indexOf('=');
+      String name = (equals == -1 ? condition : condition.substring(0, equals)).trim();
+      Params.isTrue(!name.isEmpty() && nameEnd(name, 0) == name.length(), "Invalid attribute name in CSS selector |%s|.", selector);
+      String value = null;
+      if(equals != -1) {
+        value = condition.substring(equals + 1).trim();
+        if(value.length() > 1 && (value.charAt(0) == '"' || value.charAt(0) == '\'') && value.charAt(value.length() - 1) == value.charAt(0)) {
+          value = value.substring(1, value.length() - 1);
+        }
+      }
+      attributes.add(new Attribute(null, name, value));
+      index = end + 1;
+    }
+
+    return new Query(null, tagName, cssClasses.toArray(new String[0]), attributes.toArray(new Attribute[0]));
+  }
+
+  /**
+   * Test if this query matches given element.
+   *
+   * @param element W3C DOM element,
+   * @param xml true if element belongs to XML document, false for HTML.
+   * @return true if element satisfies all query conditions.
+   */
+  boolean matches(org.w3c.dom.Element element, boolean xml)
+  {
+    if(tagName != null && !matchesTagName(element, xml)) {
+      return false;
+    }
+    if(cssClasses.length > 0) {
+      String classValue = element.getAttribute("class");
+      for(String cssClass : cssClasses) {
+        if(ClassList.indexOf(classValue, cssClass, 0) == -1) {
+          return false;
+        }
+      }
+    }
+    for(Attribute attribute : attributes) {
+      if(!attribute.matches(element)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Count elements matching this query from given root subtree, stopping at given limit. Elements are visited in
+   * document order without creating nodes lists or element wrappers.
+   * <p>
+   * If <code>subtree</code> flag is true root element itself is tested only if this query has no tag name condition,
+   * mirroring element <code>findBy</code> methods: <code>findByTag</code> searches only descendants whereas
+   * <code>findByAttr</code> and <code>findByCssClass</code> include context element.
+   *
+   * @param root root element, possible null in which case returns zero,
+   * @param subtree true if root is an element context, false if root is document element,
+   * @param xml true if element belongs to XML document, false for HTML,
+   * @param limit maximum count, zero for no limit.
+   * @return matching elements count, not greater than limit if limit is not zero.
+   */
+  int count(org.w3c.dom.Element root, boolean subtree, boolean xml, int limit)
+  {
+    int count = 0;
+    boolean testRoot = !subtree || tagName == null;
+    Node node = root;
+    while(node != null) {
+      if(node.getNodeType() == Node.ELEMENT_NODE) {
+        if((node != root || testRoot) && matches((org.w3c.dom.Element)node, xml) && ++count == limit) {
+          return count;
+        }
+        if(node.getFirstChild() != null) {
+          node = node.getFirstChild();
+          continue;
+        }
+      }
+      while(node != root && node.getNextSibling() == null) {
+        node = node.getParentNode();
+      }
+      node = node != root ? node.getNextSibling() : null;
+    }
+    return count;
+  }
+
+  private boolean matchesTagName(org.w3c.dom.Element element, boolean xml)
+  {
+    if(namespaceURI != null) {
+      return ("*".equals(namespaceURI) || namespaceURI.equals(element.getNamespaceURI())) && ("*".equals(tagName) || tagName.equals(element.getLocalName()));
+    }
+    if("*".equals(tagName)) {
+      return true;
+    }
+    return xml ? tagName.equals(element.getTagName()) : tagName.equalsIgnoreCase(element.getTagName());
+  }
+
+  private static boolean isNameChar(char c)
+  {
+    return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+  }
+
+  private static int nameEnd(String selector, int index)
+  {
+    while(index < selector.length() && isNameChar(selector.charAt(index))) {
+      ++index;
+    }
+    return index;
+  }
+
+  /**
+   * Attribute condition: attribute presence or attribute value equality.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Attribute
+  {
+    /** Optional name space URI, null if attribute is not name space aware. */
+    final String namespaceURI;
+    /** Attribute name, local name if name space URI is present. */
+    final String name;
+    /** Expected attribute value or null if only attribute presence is tested. */
+    final String value;
+
+    Attribute(String namespaceURI, String name, String value)
+    {
+      this.namespaceURI = namespaceURI;
+      this.name = name;
+      this.value = value;
+    }
+
+    boolean matches(org.w3c.dom.Element element)
+    {
+      if(namespaceURI != null) {
+        if(!element.hasAttributeNS(namespaceURI, name)) {
+          return false;
+        }
+        return value == null || value.equals(element.getAttributeNS(namespaceURI, name));
+      }
+      if(!element.hasAttribute(name)) {
+        return false;
+      }
+      return value == null || value.equals(element.getAttribute(name));
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.jslib.dom;
+
+import org.w3c.dom.Node;
+
+/**
+ * Compact tokens buffer for a single XML record. Record reader scans source XML and stores record events into this
+ * buffer; building W3C DOM tree from buffer is a separate step that can be performed by another thread. This way
+ * source stream parsing stays sequential while DOM building can be executed in parallel, see {@link RecordPipeline}.
+ * <p>
+ * Buffer stores three token types: start element with name and attributes, text and end element. Name space
+ * declarations are stored as attributes from <code>xmlns</code> name space.
+ *
+ * @author Iulian Rotaru
+ */
+final class RecordBuffer
+{
+  /** Start element token; its value is a strings array, see {@link #startElement(String[])}. */
+  private static final byte START_ELEMENT = 1;
+  /** Text token; its value is text content. */
+  private static final byte TEXT = 2;
+  /** End element token has no value. */
+  private static final byte END_ELEMENT = 3;
+
+  /** Record sequence number, zero based, in source document order. */
+  private final long sequence;
+  /** Flag true if record elements and attributes are name space aware. */
+  private final boolean useNamespace;
+
+  /** Tokens type. */
+  private byte[] types = new byte[32];
+  /** Tokens value, parallel with {@link #types}. */
+  private Object[] values = new Object[32];
+  /** The number of tokens stored in this buffer. */
+  private int size;
+
+  /**
+   * Create empty record buffer.
+   *
+   * @param sequence record sequence number,
+   * @param useNamespace flag true if record is name space aware.
+   */
+  public RecordBuffer(long sequence, boolean useNamespace)
+  {
+    this.sequence = sequence;
+    this.useNamespace = useNamespace;
+  }
+
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * Add start element token. Given strings array has element name space URI and qualified name followed by attribute
+   * triples: name space URI, qualified name and value. Name space URI is null if record is not name space aware.
+   *
+   * @param element element name space URI and name followed by attribute triples.
+   */
+  public void startElement(String[] element)
+  {
+    add(START_ELEMENT, element);
+  }
+
+  /**
+   * Add text token. If previous token is also text concatenate them.
+   *
+   * @param text text content.
+   */
+  public void text(String text)
+  {
+    if(size > 0 && types[size - 1] == TEXT) {
+      values[size - 1] = (String)values[size - 1] + text;
+      return;
+    }
+    add(TEXT, text);
+  }
+
+  /** Add end element token. */
+  public void endElement()
+  {
+    add(END_ELEMENT, null);
+  }
+
+  /**
+   * Build W3C DOM document from stored tokens. Record root element becomes document root.
+   *
+   * @param builder W3C DOM builder used to create empty document.
+   * @return record document.
+   */
+  public org.w3c.dom.Document build(javax.xml.parsers.DocumentBuilder builder)
+  {
+    org.w3c.dom.Document doc = builder.newDocument();
+    Node parent = doc;
+    for(int i = 0; i < size; ++i) {
+      switch(types[i]) {
+      case START_ELEMENT:
+        parent = parent.appendChild(createElement(doc, (String[])values[i]));
+        break;
+
+      case TEXT:
+        parent.appendChild(doc.createTextNode((String)values[i]));
+        break;
+
+      case END_ELEMENT:
+        parent = parent.getParentNode();
+        break;
+      }
+    }
+    return doc;
+  }
+
+  /**
+   * Create W3C DOM element from start element token value.
+   *
+   * @param doc owner document,
+   * @param element element name space URI and name followed by attribute triples.
+   * @return newly created element.
+   */
+  private org.w3c.dom.Element createElement(org.w3c.dom.Document doc, String[] element)
+  {
+    org.w3c.dom.Element node;
+    if(useNamespace) {
+      node = doc.createElementNS(element[0], element[1]);
+      for(int i = 2; i < element.length; i += 3) {
+        node.setAttributeNS(element[i], element[i + 1], element[i + 2]);
+      }
+    }
+    else {
+      node = doc.createElement(element[1]);
+      for(int i = 2; i < element.length; i += 3) {
+        node.setAttribute(element[i + 1], element[i + 2]);
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Append token, growing internal arrays if necessary.
+   *
+   * @param type token type,
+   * @param value token value, possible null.
+   */
+  private void add(byte type, Object value)
+  {
+    if(size == types.length) {
+      byte[] newTypes = new byte[size << 1];
+      System.arraycopy(types, 0, newTypes, 0, size);
+      types = newTypes;
+      Object[] newValues = new Object[size << 1];
+      System.arraycopy(values, 0, newValues, 0, size);
+      values = newValues;
+    }
+    types[size] = type;
+    values[size] = value;
+    ++size;
+  }
+}
@@ -0,0 +1,272 @@
+package com.jslib.dom;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.Element;
+import com.jslib.util.Params;
+
+/**
+ * Parallel processing pipeline for XML records. Source stream is scanned sequentially, on the calling thread, by a
+ * {@link RecordReader} that only tokenizes records; tokenized records are handed to worker threads through a bounded
+ * queue. Every worker builds record DOM and invokes user supplied consumer with record root element. When queue is
+ * full reader thread blocks, so that memory stays bounded by queue capacity and in flight records.
+ * <p>
+ * Pipeline supports ordered and unordered completion. In unordered mode consumer is invoked concurrently, as soon as
+ * record DOM is ready. In ordered mode records DOM is still built in parallel but consumer invocations are serialized
+ * in source document order; consumer does not need to be thread safe in this mode.
+ *
+ * <pre>
+ * RecordPipeline pipeline = new RecordPipeline(4, 256, false);
+ * try(RecordReader reader = builder.readXMLRecords(stream, "/export/row")) {
+ *   pipeline.process(reader, row -&gt; index(row));
+ * }
+ * </pre>
+ * <p>
+ * If consumer throws exception processing is stopped and first exception is rethrown, after all workers ended.
+ * Pipeline instance holds only configuration and can be reused, including concurrently.
+ *
+ * @author Iulian Rotaru
+ */
+public final class RecordPipeline
+{
+  /** Queue marker used to signal workers there are no more records. */
+  private static final RecordBuffer END_OF_STREAM = new RecordBuffer(-1, false);
+
+  /** The number of worker threads. */
+  private final int workersCount;
+  /** Capacity of the records queue between reader and workers. */
+  private final int queueCapacity;
+  /** Flag true if consumer should be invoked in source document order. */
+  private final boolean ordered;
+
+  /**
+   * Create pipeline instance.
+   *
+   * @param workersCount the number of worker threads, strictly positive,
+   * @param queueCapacity capacity of records queue, strictly positive,
+   * @param ordered flag true if consumer should be invoked in source document order.
+   */
+  public RecordPipeline(int workersCount, int queueCapacity, boolean ordered)
+  {
+    Params.isTrue(workersCount > 0, "Workers count should be strictly positive.");
+    Params.isTrue(queueCapacity > 0, "Queue capacity should be strictly positive.");
+    this.workersCount = workersCount;
+    this.queueCapacity = queueCapacity;
+    this.ordered = ordered;
+  }
+
+  /**
+   * Read all records from given reader and process them in parallel. This method blocks till all records are consumed
+   * or processing is aborted on error. Record reader is not closed by this method.
+   *
+   * @param reader source records reader,
+   * @param consumer record consumer, should be thread safe if pipeline is unordered.
+   * @throws IOException if source stream reading fails or current thread is interrupted.
+   * @throws SAXException if source stream is not a valid XML document.
+   * @throws RuntimeException first exception thrown by consumer, if any.
+   */
+  public void process(RecordReader reader, Consumer<Element> consumer) throws IOException, SAXException
+  {
+    Params.notNull(reader, "Record reader");
+    Params.notNull(consumer, "Record consumer");
+
+    Execution execution = new Execution(reader.isNamespaceAware(), consumer);
+    Thread[] workers = new Thread[workersCount];
+    for(int i = 0; i < workersCount; ++i) {
+      workers[i] = new Thread(execution::work, "record-worker-" + i);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+
+    try {
+      RecordBuffer record;
+      while(!execution.isAborted() && (record = reader.next()) != null) {
+        execution.queue.put(record);
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      execution.abort(new InterruptedIOException("Records reading interrupted."));
+    }
+    catch(IOException | SAXException | RuntimeException e) {
+      execution.abort(e);
+    }
+    finally {
+      execution.end(workers);
+    }
+
+    Throwable error = execution.error.get();
+    if(error instanceof IOException) {
+      throw (IOException)error;
+    }
+    if(error instanceof SAXException) {
+      throw (SAXException)error;
+    }
+    if(error instanceof RuntimeException) {
+      throw (RuntimeException)error;
+    }
+    if(error instanceof Error) {
+      throw (Error)error;
+    }
+  }
+
+  /**
+   * State of a single {@link RecordPipeline#process(RecordReader, Consumer)} execution, shared by reader and workers.
+   *
+   * @author Iulian Rotaru
+   */
+  private class Execution
+  {
+    /** Bounded records queue between reader and workers. */
+    final BlockingQueue<RecordBuffer> queue = new ArrayBlockingQueue<>(queueCapacity);
+    /** First error, from reader or from workers. */
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    /** Flag true if records are name space aware. */
+    private final boolean useNamespace;
+    /** User defined record consumer. */
+    private final Consumer<Element> consumer;
+
+    /** Lock for ordered completion. */
+    private final Object orderLock = new Object();
+    /** Sequence of the record allowed to be consumed next, used only for ordered completion. */
+    private long nextSequence;
+
+    Execution(boolean useNamespace, Consumer<Element> consumer)
+    {
+      this.useNamespace = useNamespace;
+      this.consumer = consumer;
+    }
+
+    /**
+     * Worker thread loop. Every worker uses its own W3C DOM builder since builders are not thread safe.
+     */
+    void work()
+    {
+      javax.xml.parsers.DocumentBuilder builder = DocumentBuilderImpl.getDocumentBuilder(null, useNamespace);
+      try {
+        for(;;) {
+          RecordBuffer record = queue.take();
+          if(record == END_OF_STREAM) {
+            break;
+          }
+          if(isAborted()) {
+            // keep draining the queue so that reader is not blocked on full queue
+            continue;
+          }
+          Element root = new DocumentImpl(record.build(builder)).getRoot();
+          if(ordered) {
+            consumeOrdered(record.getSequence(), root);
+          }
+          else {
+            consumer.accept(root);
+          }
+        }
+      }
+      catch(InterruptedException e) {
+        abort(new InterruptedIOException("Record worker interrupted."));
+        // worker is aborted but still need to drain the queue so that reader is not blocked
+        drain();
+      }
+      catch(Throwable e) {
+        abort(e);
+        drain();
+      }
+    }
+
+    /**
+     * Wait for record turn then invoke consumer. Records are taken from queue in sequence order so the record with the
+     * lowest pending sequence is always held by a running worker; there is no risk of dead lock.
+     *
+     * @param sequence record sequence,
+     * @param root record root element.
+     * @throws InterruptedException if worker thread is interrupted while waiting.
+     */
+    private void consumeOrdered(long sequence, Element root) throws InterruptedException
+    {
+      synchronized(orderLock) {
+        while(nextSequence != sequence && !isAborted()) {
+          orderLock.wait();
+        }
+        if(isAborted()) {
+          return;
+        }
+        try {
+          consumer.accept(root);
+        }
+        finally {
+          ++nextSequence;
+          orderLock.notifyAll();
+        }
+      }
+    }
+
+    /** Take records from queue, without processing, till end of stream marker. */
+    private void drain()
+    {
+      try {
+        while(queue.take() != END_OF_STREAM) {
+        }
+      }
+      catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    boolean isAborted()
+    {
+      return error.get() != null;
+    }
+
+    /**
+     * Record first error and wake up workers waiting for ordered completion.
+     *
+     * @param e error cause.
+     */
+    void abort(Throwable e)
+    {
+      error.compareAndSet(null, e);
+      synchronized(orderLock) {
+        orderLock.notifyAll();
+      }
+    }
+
+    /**
+     * Send end of stream marker to every worker and wait for all of them to finish.
+     *
+     * @param workers worker threads.
+     */
+    void end(Thread[] workers)
+    {
+      boolean interrupted = false;
+      for(int i = 0; i < workers.length; ++i) {
+        try {
+          queue.put(END_OF_STREAM);
+        }
+        catch(InterruptedException e) {
+          interrupted = true;
+          --i;
+        }
+      }
+      for(int i = 0; i < workers.length; ++i) {
+        try {
+          workers[i].join();
+        }
+        catch(InterruptedException e) {
+          interrupted = true;
+          --i;
+        }
+      }
+      if(interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package com.jslib.dom;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.Document;
+import com.jslib.util.Params;
+
+/**
+ * Streaming reader for XML documents with repeated records. This reader uses a StAX pull parser to scan source XML and
+ * builds a small, self contained document only for elements matching the record path; elements outside records are
+ * never materialized. Returned record document has record element as root and supports all usual query methods.
+ * Memory used by this reader is bounded by the largest record.
+ * <p>
+ * Record path is absolute and uses element names, e.g. <code>/feed/item</code>; a path segment can be
+ * <code>*</code> to match any element name. Records are not nested: once a record is found its entire subtree is
+ * consumed by the record document.
+ *
+ * <pre>
+ * try(RecordReader reader = builder.readXMLRecords(stream, "/feed/item")) {
+ *   Document record;
+ *   while((record = reader.read()) != null) {
+ *     String title = record.getByTag("title").getText();
+ *   }
+ * }
+ * </pre>
+ * <p>
+ * Record reader instance is not thread safe. Closing the reader closes underlying source stream.
+ *
+ * @author Iulian Rotaru
+ */
+public final class RecordReader implements Closeable
+{
+  /** Record path segment matching any element name. */
+  private static final String ANY_NAME = "*";
+  /** Name space URI for name space declaration attributes. */
+  private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+
+  /** Source stream, byte or character, closed when this reader is closed. */
+  private final Closeable source;
+  /** StAX pull parser. */
+  private final XMLStreamReader reader;
+  /** W3C DOM builder used to create record documents. */
+  private final javax.xml.parsers.DocumentBuilder builder;
+  /** Flag true if records are name space aware. */
+  private final boolean useNamespace;
+  /** Record path segments, that is, element names from root to record element. */
+  private final String[] path;
+
+  /** Current depth of the parser into source elements tree. */
+  private int depth;
+  /** The number of path segments matched by currently opened elements. */
+  private int matchedDepth;
+  /** The number of records found so far. */
+  private long recordsCount;
+
+  /**
+   * Create record reader for byte stream. Characters encoding is detected from XML declaration.
+   *
+   * @param stream source byte stream,
+   * @param recordPath absolute path of the record element,
+   * @param useNamespace flag true if records are name space aware.
+   * @throws SAXException if parser creation fails.
+   */
+  RecordReader(InputStream stream, String recordPath, boolean useNamespace) throws SAXException
+  {
+    this.source = stream;
+    this.builder = DocumentBuilderImpl.getDocumentBuilder(null, useNamespace);
+    this.useNamespace = useNamespace;
+    this.path = parsePath(recordPath);
+    try {
+      this.reader = createInputFactory(useNamespace).createXMLStreamReader(stream);
+    }
+    catch(XMLStreamException e) {
+      throw new SAXException(e.getMessage());
+    }
+  }
+
+  /**
+   * Create record reader for characters stream.
+   *
+   * @param reader source characters stream,
+   * @param recordPath absolute path of the record element,
+   * @param useNamespace flag true if records are name space aware.
+   * @throws SAXException if parser creation fails.
+   */
+  RecordReader(Reader reader, String recordPath, boolean useNamespace) throws SAXException
+  {
+    this.source = reader;
+    this.builder = DocumentBuilderImpl.getDocumentBuilder(null, useNamespace);
+    this.useNamespace = useNamespace;
+    this.path = parsePath(recordPath);
+    try {
+      this.reader = createInputFactory(useNamespace).createXMLStreamReader(reader);
+    }
+    catch(XMLStreamException e) {
+      throw new SAXException(e.getMessage());
+    }
+  }
+
+  /**
+   * Read next record from source stream. Scan source XML till next element matching record path then build record
+   * document from element subtree. Returns null if there are no more records.
+   *
+   * @return next record document or null if source stream is exhausted.
+   * @throws IOException if source stream reading fails.
+   * @throws SAXException if source stream is not a valid XML document.
+   */
+  public Document read() throws IOException, SAXException
+  {
+    RecordBuffer record = next();
+    return record != null ? new DocumentImpl(record.build(builder)) : null;
+  }
+
+  boolean isNamespaceAware()
+  {
+    return useNamespace;
+  }
+
+  /**
+   * Scan source XML till next element matching record path and store element subtree into a record buffer. Returns
+   * null if there are no more records. Building DOM tree from returned buffer is a separated step, possible executed
+   * by another thread.
+   *
+   * @return next record buffer or null if source stream is exhausted.
+   * @throws IOException if source stream reading fails.
+   * @throws SAXException if source stream is not a valid XML document.
+   */
+  RecordBuffer next() throws IOException, SAXException
+  {
+    try {
+      while(reader.hasNext()) {
+        switch(reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          if(matchedDepth == depth && depth < path.length && matches(path[depth])) {
+            ++matchedDepth;
+          }
+          ++depth;
+          if(matchedDepth == path.length) {
+            RecordBuffer record = readRecord();
+            --depth;
+            matchedDepth = depth;
+            return record;
+          }
+          break;
+
+        case XMLStreamConstants.END_ELEMENT:
+          --depth;
+          if(matchedDepth > depth) {
+            matchedDepth = depth;
+          }
+          break;
+        }
+      }
+      return null;
+    }
+    catch(XMLStreamException e) {
+      if(e.getNestedException() instanceof IOException) {
+        throw (IOException)e.getNestedException();
+      }
+      throw new SAXException(e.getMessage());
+    }
+  }
+
+  /**
+   * Store current element subtree into record buffer. Parser is positioned on record start element; on return parser
+   * is positioned on record end element.
+   *
+   * @return record buffer.
+   * @throws XMLStreamException if source stream parsing fails.
+   */
+  private RecordBuffer readRecord() throws XMLStreamException
+  {
+    RecordBuffer record = new RecordBuffer(recordsCount++, useNamespace);
+    int recordDepth = 0;
+
+    for(;;) {
+      switch(reader.getEventType()) {
+      case XMLStreamConstants.START_ELEMENT:
+        record.startElement(element());
+        ++recordDepth;
+        break;
+
+      case XMLStreamConstants.END_ELEMENT:
+        record.endElement();
+        if(--recordDepth == 0) {
+          return record;
+        }
+        break;
+
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+        record.text(reader.getText());
+        break;
+      }
+      reader.next();
+    }
+  }
+
+  /**
+   * Get current parser start element as name followed by attribute triples, see
+   * {@link RecordBuffer#startElement(String[])}. For name space aware records name space declarations are included as
+   * attributes.
+   *
+   * @return element name space URI and name followed by attribute triples.
+   */
+  private String[] element()
+  {
+    if(useNamespace) {
+      int namespaceCount = reader.getNamespaceCount();
+      int attributeCount = reader.getAttributeCount();
+      String[] element = new String[2 + 3 * (namespaceCount + attributeCount)];
+      element[0] = emptyToNull(reader.getNamespaceURI());
+      element[1] = qualifiedName(reader.getPrefix(), reader.getLocalName());
+      int index = 2;
+      for(int i = 0; i < namespaceCount; ++i) {
+        String prefix = reader.getNamespacePrefix(i);
+        element[index++] = XMLNS_URI;
+        element[index++] = prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix;
+        element[index++] = reader.getNamespaceURI(i);
+      }
+      for(int i = 0; i < attributeCount; ++i) {
+        element[index++] = emptyToNull(reader.getAttributeNamespace(i));
+        element[index++] = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+        element[index++] = reader.getAttributeValue(i);
+      }
+      return element;
+    }
+
+    int attributeCount = reader.getAttributeCount();
+    String[] element = new String[2 + 3 * attributeCount];
+    element[1] = reader.getLocalName();
+    for(int i = 0, index = 2; i < attributeCount; ++i) {
+      ++index;
+      element[index++] = reader.getAttributeLocalName(i);
+      element[index++] = reader.getAttributeValue(i);
+    }
+    return element;
+  }
+
+  /**
+   * Test if current parser start element matches given path segment.
+   *
+   * @param segment record path segment.
+   * @return true if current element matches path segment.
+   */
+  private boolean matches(String segment)
+  {
+    if(segment.equals(ANY_NAME)) {
+      return true;
+    }
+    return segment.equals(useNamespace ? qualifiedName(reader.getPrefix(), reader.getLocalName()) : reader.getLocalName());
+  }
+
+  /**
+   * Close parser and underlying source stream.
+   *
+   * @throws IOException if source stream closing fails.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    try {
+      reader.close();
+    }
+    catch(XMLStreamException e) {
+      // parser close does not close source stream; continue with it
+    }
+    source.close();
+  }
+
+  // ----------------------------------------------------
+
+  /**
+   * Split record path into element names.
+   *
+   * @param recordPath absolute record path.
+   * @return record path segments.
+   * @throws IllegalArgumentException if record path is not absolute or has empty segments.
+   */
+  private static String[] parsePath(String recordPath)
+  {
+    Params.notNullOrEmpty(recordPath, "Record path");
+    Params.isTrue(recordPath.charAt(0) == '/', "Record path |%s| is not absolute.", recordPath);
+    String[] path = recordPath.substring(1).split("/");
+    for(String segment : path) {
+      Params.isTrue(!segment.isEmpty(), "Record path |%s| has empty segment.", recordPath);
+    }
+    return path;
+  }
+
+  /**
+   * Create StAX input factory configured consistently with document builder: text coalescing, entities replacement
+   * and XHTML entities resolved from local resources.
+   *
+   * @param useNamespace flag true if parser should be name space aware.
+   * @return StAX input factory.
+   */
+  private static XMLInputFactory createInputFactory(boolean useNamespace)
+  {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, useNamespace);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+    factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+    factory.setXMLResolver(new XMLResolver()
+    {
+      @Override
+      public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) throws XMLStreamException
+      {
+        InputSource source = new EntityResolverImpl().resolveEntity(publicID, systemID);
+        return source != null ? source.getByteStream() : null;
+      }
+    });
+    return factory;
+  }
+
+  private static String qualifiedName(String prefix, String localName)
+  {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+  }
+
+  private static String emptyToNull(String value)
+  {
+    return value == null || value.isEmpty() ? null : value;
+  }
+}
@@ -0,0 +1,364 @@
+package com.jslib.dom;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.xerces.parsers.SAXParser;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+
+import com.jslib.lang.BugError;
+
+/**
+ * Parser for rich text fragments, see {@link ElementImpl#setRichText(String)}. Rich text is XML content, possible with
+ * mixed text, and may use <code>nbsp</code>, <code>copy</code> and <code>reg</code> entities. Parser wraps content into
+ * a root element declared by a pre-built DOCTYPE with rich text entities and does not create a W3C DOM document: parsed
+ * content is recorded as compact tokens and tokens are replayed into a document fragment owned by target document, so
+ * that there is no throwaway document and no node import.
+ * <p>
+ * Tokens do not depend on target document and can be reused. If requested, tokens are cached by rich text content, in
+ * a shared cache with least recently used eviction policy and a fixed capacity of {@link #CACHE_CAPACITY} entries.
+ * <p>
+ * Xerces SAX parser and its handler are expensive to create but not thread safe; every thread has its own parser
+ * instance, reused for all rich text parsing on that thread.
+ *
+ * @author Iulian Rotaru
+ */
+final class RichTextParser
+{
+  /** Rich text prolog: XML declaration, DOCTYPE for rich text entities and root start tag. */
+  private static final String PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + //
+      "<!DOCTYPE fragment [" + //
+      "<!ENTITY nbsp \"&#160;\">" + //
+      "<!ENTITY copy \"&#169;\">" + //
+      "<!ENTITY reg \"&#174;\">" + //
+      "]><fragment>";
+  /** Rich text epilog, that is, root end tag. */
+  private static final String EPILOG = "</fragment>";
+
+  /** XML parser feature for name space support. */
+  private static final String FEAT_NAMESPACES = "http://xml.org/sax/features/namespaces";
+  /** XML parser feature for DTD validation. */
+  private static final String FEAT_VALIDATION = "http://xml.org/sax/features/validation";
+  /** SAX parser property for lexical handler. */
+  private static final String PROP_LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+  /** Source buffer capacity above which buffer is not retained by parser after parsing. */
+  private static final int MAX_BUFFER_CAPACITY = 64 * 1024;
+  /** Maximum number of cached rich text tokens. */
+  private static final int CACHE_CAPACITY = 256;
+
+  /** Parser instance per thread. */
+  private static final ThreadLocal<RichTextParser> PARSER = ThreadLocal.withInitial(RichTextParser::new);
+
+  /** Rich text tokens mapped to rich text content, in access order. Guarded by cache instance lock. */
+  private static final Map<String, Tokens> CACHE = new LinkedHashMap<String, Tokens>(64, 0.75F, true)
+  {
+    private static final long serialVersionUID = -2983713622458394120L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Tokens> eldest)
+    {
+      return size() > CACHE_CAPACITY;
+    }
+  };
+
+  /**
+   * Parse rich text into a document fragment owned by given document.
+   *
+   * @param doc target W3C DOM document,
+   * @param richText rich text content,
+   * @param cache flag true to lookup and store parsed rich text into cache.
+   * @return document fragment with rich text content.
+   * @throws SAXException if rich text is not well formed.
+   */
+  static DocumentFragment parse(org.w3c.dom.Document doc, String richText, boolean cache) throws SAXException
+  {
+    if(!cache) {
+      return PARSER.get().tokens(richText).build(doc);
+    }
+    Tokens tokens;
+    synchronized(CACHE) {
+      tokens = CACHE.get(richText);
+    }
+    if(tokens == null) {
+      tokens = PARSER.get().tokens(richText);
+      synchronized(CACHE) {
+        CACHE.put(richText, tokens);
+      }
+    }
+    return tokens.build(doc);
+  }
+
+  /** Xerces SAX parser configured for rich text. */
+  private final SAXParser parser;
+  /** Parser handler recording rich text tokens. */
+  private final Handler handler;
+  /** Source buffer reused for wrapping rich text into prolog and epilog. */
+  private StringBuilder buffer;
+
+  private RichTextParser()
+  {
+    this.handler = new Handler();
+    this.parser = new SAXParser();
+    try {
+      parser.setFeature(FEAT_NAMESPACES, false);
+      parser.setFeature(FEAT_VALIDATION, false);
+      parser.setProperty(PROP_LEXICAL_HANDLER, handler);
+    }
+    catch(SAXException e) {
+      // Xerces parser does not support features used by this constructor
+      throw new BugError(e);
+    }
+    parser.setContentHandler(handler);
+    parser.setEntityResolver(new EntityResolverImpl());
+    parser.setErrorHandler(new DocumentBuilderImpl.ErrorHandlerImpl());
+    this.buffer = new StringBuilder();
+  }
+
+  /**
+   * Parse rich text into tokens.
+   *
+   * @param richText rich text content.
+   * @return rich text tokens.
+   * @throws SAXException if rich text is not well formed.
+   */
+  private Tokens tokens(String richText) throws SAXException
+  {
+    buffer.setLength(0);
+    buffer.append(PROLOG).append(richText).append(EPILOG);
+    try {
+      parser.parse(new InputSource(new CharSequenceReader(buffer)));
+      return handler.tokens;
+    }
+    catch(IOException e) {
+      throw new BugError("IO exception on characters sequence reader.");
+    }
+    finally {
+      handler.tokens = null;
+      if(buffer.capacity() > MAX_BUFFER_CAPACITY) {
+        buffer = new StringBuilder();
+      }
+    }
+  }
+
+  /**
+   * SAX handler recording rich text tokens. Root element, DOCTYPE and content outside root element are not recorded;
+   * adjacent characters events are merged into a single text token.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Handler extends DefaultHandler2
+  {
+    /** Tokens of the rich text currently parsed. */
+    Tokens tokens;
+    /** Current element depth, root element depth is 1. */
+    private int depth;
+    /** Flag true while parser is inside DOCTYPE declaration. */
+    private boolean dtd;
+    /** Flag true while parser is inside CDATA section. */
+    private boolean cdata;
+    /** Characters not yet recorded as text or CDATA token. */
+    private final StringBuilder text = new StringBuilder();
+
+    @Override
+    public void startDocument()
+    {
+      tokens = new Tokens();
+      depth = 0;
+      dtd = false;
+      cdata = false;
+      text.setLength(0);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+    {
+      flush();
+      if(depth++ == 0) {
+        return;
+      }
+      String[] element = new String[1 + 2 * attributes.getLength()];
+      element[0] = qName;
+      for(int i = 0, j = 1; i < attributes.getLength(); ++i) {
+        element[j++] = attributes.getQName(i);
+        element[j++] = attributes.getValue(i);
+      }
+      tokens.add(Tokens.START_ELEMENT, element);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+    {
+      flush();
+      if(--depth > 0) {
+        tokens.add(Tokens.END_ELEMENT, null);
+      }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length)
+    {
+      if(depth > 0) {
+        text.append(ch, start, length);
+      }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length)
+    {
+      characters(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data)
+    {
+      flush();
+      if(depth > 0) {
+        tokens.add(Tokens.PROCESSING_INSTRUCTION, new String[]
+        {
+            target, data
+        });
+      }
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length)
+    {
+      flush();
+      if(depth > 0 && !dtd) {
+        tokens.add(Tokens.COMMENT, new String(ch, start, length));
+      }
+    }
+
+    @Override
+    public void startCDATA()
+    {
+      flush();
+      cdata = true;
+    }
+
+    @Override
+    public void endCDATA()
+    {
+      flush();
+      cdata = false;
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId)
+    {
+      dtd = true;
+    }
+
+    @Override
+    public void endDTD()
+    {
+      dtd = false;
+    }
+
+    /** Record pending characters, if any, as text or CDATA token. */
+    private void flush()
+    {
+      if(text.length() > 0) {
+        tokens.add(cdata ? Tokens.CDATA : Tokens.TEXT, text.toString());
+        text.setLength(0);
+      }
+    }
+  }
+
+  /**
+   * Immutable, once built, rich text tokens. Token values are strings, for text, CDATA and comment tokens, or strings
+   * arrays: element name followed by attribute name and value pairs, respective processing instruction target and data.
+   *
+   * @author Iulian Rotaru
+   */
+  private static final class Tokens
+  {
+    /** Start element token; its value is element name followed by attribute name and value pairs. */
+    static final byte START_ELEMENT = 1;
+    /** End element token has no value. */
+    static final byte END_ELEMENT = 2;
+    /** Text token; its value is text content. */
+    static final byte TEXT = 3;
+    /** CDATA section token; its value is section content. */
+    static final byte CDATA = 4;
+    /** Comment token; its value is comment content. */
+    static final byte COMMENT = 5;
+    /** Processing instruction token; its value is target and data. */
+    static final byte PROCESSING_INSTRUCTION = 6;
+
+    /** Tokens type. */
+    private byte[] types = new byte[16];
+    /** Tokens value, parallel with {@link #types}. */
+    private Object[] values = new Object[16];
+    /** The number of tokens. */
+    private int size;
+
+    void add(byte type, Object value)
+    {
+      if(size == types.length) {
+        byte[] newTypes = new byte[size << 1];
+        System.arraycopy(types, 0, newTypes, 0, size);
+        types = newTypes;
+        Object[] newValues = new Object[size << 1];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+      }
+      types[size] = type;
+      values[size] = value;
+      ++size;
+    }
+
+    /**
+     * Create document fragment with nodes described by this tokens.
+     *
+     * @param doc owner document.
+     * @return document fragment owned by given document.
+     */
+    DocumentFragment build(org.w3c.dom.Document doc)
+    {
+      DocumentFragment fragment = doc.createDocumentFragment();
+      Node parent = fragment;
+      for(int i = 0; i < size; ++i) {
+        switch(types[i]) {
+        case START_ELEMENT:
+          String[] element = (String[])values[i];
+          org.w3c.dom.Element node = doc.createElement(element[0]);
+          for(int j = 1; j < element.length; j += 2) {
+            node.setAttribute(element[j], element[j + 1]);
+          }
+          parent = parent.appendChild(node);
+          break;
+
+        case END_ELEMENT:
+          parent = parent.getParentNode();
+          break;
+
+        case TEXT:
+          parent.appendChild(doc.createTextNode((String)values[i]));
+          break;
+
+        case CDATA:
+          parent.appendChild(doc.createCDATASection((String)values[i]));
+          break;
+
+        case COMMENT:
+          parent.appendChild(doc.createComment((String)values[i]));
+          break;
+
+        case PROCESSING_INSTRUCTION:
+          String[] instruction = (String[])values[i];
+          parent.appendChild(doc.createProcessingInstruction(instruction[0], instruction[1]));
+          break;
+        }
+      }
+      return fragment;
+    }
+  }
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Stack;
 
-import org.apache.html.dom.HTMLDocumentImpl;
 import org.w3c.dom.DocumentType;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -75,7 +74,7 @@ final class Serializer
   public void serialize(DocumentImpl doc) throws IOException
   {
     org.w3c.dom.Document w3cDoc = doc.getDocument();
-    if(w3cDoc instanceof HTMLDocumentImpl) {
+    if(!doc.isXML()) {
       // if w3cDoc has no document type default to html5: <!DOCTYPE html>
       writer.write("<!DOCTYPE html");
       DocumentType dt = w3cDoc.getDoctype();
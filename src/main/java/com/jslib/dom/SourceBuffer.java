@@ -0,0 +1,105 @@
+package com.jslib.dom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.xml.sax.InputSource;
+
+/**
+ * In memory copy of an input source content, used when the same content should be parsed more than once, e.g. for
+ * parser fallback. Buffer reads entire byte or characters stream of the original input source but does not close it.
+ *
+ * @author Iulian Rotaru
+ */
+final class SourceBuffer
+{
+  /** Buffer size used for source reading. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /** Bytes content, null if original source is a characters stream. */
+  private final byte[] bytes;
+  /** Characters content, null if original source is a bytes stream. */
+  private final char[] chars;
+  /** Characters encoding of the original input source, possible null. */
+  private final String encoding;
+  /** System ID of the original input source, possible null. */
+  private final String systemId;
+
+  /**
+   * Read input source content. Characters stream has priority over bytes stream, consistent with SAX input source
+   * processing.
+   *
+   * @param source input source with byte or characters stream.
+   * @throws IOException if input source reading fails.
+   */
+  public SourceBuffer(InputSource source) throws IOException
+  {
+    this.encoding = source.getEncoding();
+    this.systemId = source.getSystemId();
+    if(source.getCharacterStream() != null) {
+      this.bytes = null;
+      this.chars = read(source.getCharacterStream());
+    }
+    else {
+      this.bytes = read(source.getByteStream());
+      this.chars = null;
+    }
+  }
+
+  /**
+   * Create a new input source over buffered content. Returned input source has the same encoding and system ID as the
+   * original one.
+   *
+   * @return newly created input source.
+   */
+  public InputSource getSource()
+  {
+    InputSource source = bytes != null ? new InputSource(new ByteArrayInputStream(bytes)) : new InputSource(new CharArrayReader(chars));
+    source.setEncoding(encoding);
+    source.setSystemId(systemId);
+    return source;
+  }
+
+  /**
+   * Get the start of buffered content as string, for content type sniffing. Bytes content is decoded as ISO-8859-1 so
+   * that only ASCII markup is significant.
+   *
+   * @param maxLength maximum prolog length.
+   * @return content prolog.
+   */
+  public String getProlog(int maxLength)
+  {
+    if(bytes != null) {
+      return new String(bytes, 0, Math.min(maxLength, bytes.length), StandardCharsets.ISO_8859_1);
+    }
+    return new String(chars, 0, Math.min(maxLength, chars.length));
+  }
+
+  private static byte[] read(InputStream stream) throws IOException
+  {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    byte[] bytes = new byte[BUFFER_SIZE];
+    int length;
+    while((length = stream.read(bytes)) != -1) {
+      buffer.write(bytes, 0, length);
+    }
+    return buffer.toByteArray();
+  }
+
+  private static char[] read(Reader reader) throws IOException
+  {
+    CharArrayWriter buffer = new CharArrayWriter(BUFFER_SIZE);
+    char[] chars = new char[BUFFER_SIZE];
+    int length;
+    while((length = reader.read(chars)) != -1) {
+      buffer.write(chars, 0, length);
+    }
+    return buffer.toCharArray();
+  }
+}
@@ -0,0 +1,86 @@
+package com.jslib.dom;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Stop condition for partial document loading. Parser consults this condition on every start and end tag and stops
+ * parsing, closing the input, as soon as condition fires; document built so far is returned and stays fully queryable.
+ * This is useful for metadata extraction when only document head is of interest.
+ * <p>
+ * Both methods have default implementations that never stop, so that implementation needs to override only the event
+ * of interest. Use factory methods for common conditions: {@link #afterEndTag(String)} and
+ * {@link #afterElements(int)}.
+ * <p>
+ * For HTML documents element names are reported as normalized by NekoHTML parser, that is, upper case.
+ *
+ * @author Iulian Rotaru
+ */
+public interface StopCondition
+{
+  /**
+   * Invoked on element start tag, before element node creation. If returns true parsing is stopped and element is not
+   * included into partial document.
+   *
+   * @param name element qualified name,
+   * @param attributes element attributes,
+   * @param depth element depth, zero for document root.
+   * @return true if parsing should stop.
+   */
+  default boolean startElement(String name, Attributes attributes, int depth)
+  {
+    return false;
+  }
+
+  /**
+   * Invoked on element end tag, after element and its subtree were added to document. If returns true parsing is
+   * stopped and element is included into partial document.
+   *
+   * @param name element qualified name,
+   * @param depth element depth, zero for document root.
+   * @return true if parsing should stop.
+   */
+  default boolean endElement(String name, int depth)
+  {
+    return false;
+  }
+
+  /**
+   * Create condition that stops parsing after end tag of the first element with given name, e.g.
+   * <code>afterEndTag("head")</code>. Element name is compared ignoring case.
+   *
+   * @param name element name.
+   * @return stop condition.
+   */
+  static StopCondition afterEndTag(String name)
+  {
+    return new StopCondition()
+    {
+      @Override
+      public boolean endElement(String elementName, int depth)
+      {
+        return elementName.equalsIgnoreCase(name);
+      }
+    };
+  }
+
+  /**
+   * Create condition that stops parsing after given number of elements were created; element that would exceed the
+   * limit is not included into partial document.
+   *
+   * @param count maximum number of elements.
+   * @return stop condition.
+   */
+  static StopCondition afterElements(int count)
+  {
+    return new StopCondition()
+    {
+      private int elementsCount;
+
+      @Override
+      public boolean startElement(String name, Attributes attributes, int depth)
+      {
+        return ++elementsCount > count;
+      }
+    };
+  }
+}
@@ -0,0 +1,85 @@
+package com.jslib.dom;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XNIException;
+import org.cyberneko.html.filters.DefaultFilter;
+import org.xml.sax.SAXException;
+
+/**
+ * Parser pipeline component that evaluates a {@link StopCondition} and aborts parsing when condition fires. Parsing is
+ * aborted by throwing {@link StopException} wrapped into an XNI exception; Xerces and NekoHTML parsers unwrap and
+ * rethrow it as it is, while DOM built so far stays available from parser.
+ *
+ * @author Iulian Rotaru
+ */
+final class StopConditionComponent extends DefaultFilter
+{
+  /** User defined stop condition. */
+  private final StopCondition condition;
+  /** Reusable attributes view passed to stop condition. */
+  private final XNIAttributes attributesView = new XNIAttributes();
+
+  /** Current element depth. */
+  private int depth;
+
+  /**
+   * Create pipeline component for given stop condition.
+   *
+   * @param condition stop condition.
+   */
+  public StopConditionComponent(StopCondition condition)
+  {
+    this.condition = condition;
+  }
+
+  @Override
+  public void startElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    if(condition.startElement(element.rawname, attributesView.wrap(attributes), depth)) {
+      throw new XNIException(new StopException());
+    }
+    ++depth;
+    super.startElement(element, attributes, augs);
+  }
+
+  @Override
+  public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    if(condition.startElement(element.rawname, attributesView.wrap(attributes), depth)) {
+      throw new XNIException(new StopException());
+    }
+    super.emptyElement(element, attributes, augs);
+    if(condition.endElement(element.rawname, depth)) {
+      throw new XNIException(new StopException());
+    }
+  }
+
+  @Override
+  public void endElement(QName element, Augmentations augs) throws XNIException
+  {
+    --depth;
+    super.endElement(element, augs);
+    if(condition.endElement(element.rawname, depth)) {
+      throw new XNIException(new StopException());
+    }
+  }
+
+  /**
+   * Exception used to abort parsing when stop condition fires. It is not an error condition and is always handled
+   * internally by document builder.
+   *
+   * @author Iulian Rotaru
+   */
+  static final class StopException extends SAXException
+  {
+    /** Java serialization version. */
+    private static final long serialVersionUID = -3525624380118329377L;
+
+    public StopException()
+    {
+      super("Parsing stopped by stop condition.");
+    }
+  }
+}
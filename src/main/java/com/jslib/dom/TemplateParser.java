@@ -0,0 +1,670 @@
+package com.jslib.dom;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cyberneko.html.HTMLEntities;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Lightweight HTML parser for trusted templates. Tokenizer follows WHATWG rules for void elements, see
+ * {@link #VOID_TAGS}, raw text elements, see {@link #RAW_TEXT_TAGS}, and escapable raw text elements,
+ * <code>textarea</code> and <code>title</code>, and tree builder creates W3C DOM nodes directly, with no intermediate
+ * events pipeline.
+ * <p>
+ * Unlike NekoHTML, this parser does not recover from markup errors: missing <code>html</code>, <code>head</code> or
+ * <code>body</code> elements are not inserted and there are no implied end tags. An end tag closes the nearest open
+ * element with the same name, together with all elements opened after it, and end tags with no open element are
+ * ignored. Self closing syntax is honored for all elements, since templates are frequently written in XHTML style.
+ * Element and attribute names are converted to lower case.
+ * <p>
+ * Resulting document is a Xerces core document, not an HTML DOM document; tag lookups are case sensitive. A parser
+ * instance is not thread safe and should be used for a single parsing.
+ *
+ * @author Iulian Rotaru
+ */
+final class TemplateParser
+{
+  /**
+   * Void elements, that is, elements with no content and no end tag: {@link HTML#EMPTY_TAGS} plus WHATWG void elements
+   * not declared there. Kept private since serializer uses {@link HTML#EMPTY_TAGS} for XML documents too.
+   */
+  private static final Set<String> VOID_TAGS = new HashSet<>(HTML.EMPTY_TAGS);
+  static {
+    VOID_TAGS.addAll(Arrays.asList("embed", "source", "track", "wbr"));
+  }
+  /** Raw text elements; content is not parsed and character references are not decoded. */
+  private static final Set<String> RAW_TEXT_TAGS = new HashSet<>(HTML.RAW_TAGS);
+  static {
+    RAW_TEXT_TAGS.add("style");
+  }
+  /** Escapable raw text elements; content is not parsed but character references are decoded. */
+  private static final Set<String> ESCAPABLE_RAW_TEXT_TAGS = new HashSet<>(Arrays.asList("textarea", "title"));
+  /** Elements with significant white space, preserved even if white space only text stripping is enabled. */
+  private static final Set<String> PRESERVE_TAGS = new HashSet<>(Arrays.asList("pre", "textarea"));
+
+  /** Buffer size used for source reading. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /** Create comment nodes. */
+  private final boolean includeComments;
+  /** Drop white space only text. */
+  private final boolean stripWhitespaceText;
+
+  /** Source characters. */
+  private char[] chars;
+  /** Number of valid characters from source buffer. */
+  private int length;
+  /** Current parsing position. */
+  private int pos;
+
+  /** Document under construction. */
+  private org.apache.xerces.dom.DocumentImpl doc;
+  /** Open elements stack. */
+  private final List<Element> stack = new ArrayList<>();
+  /** Node to which new nodes are appended, either document or top of open elements stack. */
+  private Node current;
+  /** Count of open elements with significant white space. */
+  private int preserveCount;
+  /** Pending text, accumulated till next markup. */
+  private final StringBuilder text = new StringBuilder();
+
+  /**
+   * Create template parser configured from parse profile. It uses HTML comments and white space only text stripping
+   * options.
+   *
+   * @param profile parse profile.
+   */
+  public TemplateParser(ParseProfile profile)
+  {
+    this.includeComments = profile.isIncludeHTMLComments();
+    this.stripWhitespaceText = profile.isStripWhitespaceText();
+  }
+
+  /**
+   * Parse template from characters stream. Reader is not closed by this method.
+   *
+   * @param reader source reader.
+   * @return W3C DOM document.
+   * @throws IOException if reader fails.
+   * @throws SAXException if template has content outside root element or ends inside a tag.
+   */
+  public org.w3c.dom.Document parse(Reader reader) throws IOException, SAXException
+  {
+    char[] buffer = new char[BUFFER_SIZE];
+    int count = 0;
+    int n;
+    while((n = reader.read(buffer, count, buffer.length - count)) != -1) {
+      count += n;
+      if(count == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length << 1);
+      }
+    }
+    return parse(buffer, count);
+  }
+
+  /**
+   * Parse template from characters buffer.
+   *
+   * @param chars characters buffer,
+   * @param length number of valid characters from buffer.
+   * @return W3C DOM document.
+   * @throws SAXException if template has content outside root element or ends inside a tag.
+   */
+  public org.w3c.dom.Document parse(char[] chars, int length) throws SAXException
+  {
+    this.chars = chars;
+    this.length = length;
+    this.pos = 0;
+    this.doc = new org.apache.xerces.dom.DocumentImpl();
+    // template is trusted; skip names validation on every node creation
+    this.doc.setErrorChecking(false);
+    this.current = doc;
+
+    while(pos < length) {
+      char c = chars[pos];
+      if(c == '<' && pos + 1 < length) {
+        char next = chars[pos + 1];
+        if(isLetter(next)) {
+          flushText();
+          startTag();
+          continue;
+        }
+        if(next == '/' && pos + 2 < length && isLetter(chars[pos + 2])) {
+          flushText();
+          endTag();
+          continue;
+        }
+        if(next == '!') {
+          flushText();
+          markupDeclaration();
+          continue;
+        }
+        if(next == '?') {
+          // processing instructions are not supported by HTML and are skipped
+          flushText();
+          pos = skipPast('>', pos + 2);
+          continue;
+        }
+      }
+      if(c == '&') {
+        characterReference(text);
+        continue;
+      }
+
+      int start = pos++;
+      while(pos < length && chars[pos] != '<' && chars[pos] != '&') {
+        ++pos;
+      }
+      text.append(chars, start, pos - start);
+    }
+    flushText();
+
+    doc.setErrorChecking(true);
+    return doc;
+  }
+
+  // ----------------------------------------------------
+  // tokenizer
+
+  /**
+   * Parse start tag, create element and append it to current node. Current position is on tag opening angle bracket.
+   *
+   * @throws SAXException if template ends inside start tag or has multiple root elements.
+   */
+  private void startTag() throws SAXException
+  {
+    ++pos;
+    String name = readName();
+    Element element = doc.createElement(name);
+
+    boolean selfClosing = false;
+    for(;;) {
+      skipWhitespace();
+      if(pos == length) {
+        throw new SAXException("Unexpected end of template inside start tag |" + name + "|.");
+      }
+      char c = chars[pos];
+      if(c == '>') {
+        ++pos;
+        break;
+      }
+      if(c == '/') {
+        ++pos;
+        if(pos < length && chars[pos] == '>') {
+          ++pos;
+          selfClosing = true;
+          break;
+        }
+        continue;
+      }
+
+      String attrName = readName();
+      skipWhitespace();
+      String value = "";
+      if(pos < length && chars[pos] == '=') {
+        ++pos;
+        skipWhitespace();
+        value = readAttributeValue();
+      }
+      // on duplicated attributes first one wins
+      if(!element.hasAttribute(attrName)) {
+        element.setAttribute(attrName, value);
+      }
+    }
+    // core document has no DTD; register id attribute so that document get element by ID works as on HTML document
+    if(element.hasAttribute("id")) {
+      element.setIdAttribute("id", true);
+    }
+
+    append(element);
+    if(selfClosing || VOID_TAGS.contains(name)) {
+      return;
+    }
+    if(RAW_TEXT_TAGS.contains(name)) {
+      rawText(element, name, false);
+      return;
+    }
+    if(ESCAPABLE_RAW_TEXT_TAGS.contains(name)) {
+      rawText(element, name, true);
+      return;
+    }
+    stack.add(element);
+    current = element;
+    if(PRESERVE_TAGS.contains(name)) {
+      ++preserveCount;
+    }
+  }
+
+  /**
+   * Parse end tag and close the nearest open element with the same name. Current position is on tag opening angle
+   * bracket.
+   */
+  private void endTag()
+  {
+    pos += 2;
+    String name = readName();
+    pos = skipPast('>', pos);
+
+    for(int i = stack.size() - 1; i >= 0; --i) {
+      if(stack.get(i).getNodeName().equals(name)) {
+        for(int j = stack.size() - 1; j >= i; --j) {
+          if(PRESERVE_TAGS.contains(stack.remove(j).getNodeName())) {
+            --preserveCount;
+          }
+        }
+        current = i > 0 ? stack.get(i - 1) : doc;
+        return;
+      }
+    }
+    // end tag with no open element is ignored
+  }
+
+  /**
+   * Read content of raw text element, up to element end tag, and append it as text node. Current position is right
+   * after element start tag.
+   *
+   * @param element raw text element,
+   * @param name element name,
+   * @param escapable flag true if character references should be decoded.
+   */
+  private void rawText(Element element, String name, boolean escapable)
+  {
+    int start = pos;
+    int end = length;
+    for(int i = pos; i < length - 1; ++i) {
+      if(chars[i] == '<' && chars[i + 1] == '/' && isEndTag(i + 2, name)) {
+        end = i;
+        break;
+      }
+    }
+
+    if(end > start) {
+      String content;
+      if(escapable) {
+        StringBuilder builder = new StringBuilder(end - start);
+        pos = start;
+        while(pos < end) {
+          if(chars[pos] == '&') {
+            characterReference(builder);
+          }
+          else {
+            builder.append(chars[pos++]);
+          }
+        }
+        content = builder.toString();
+      }
+      else {
+        content = new String(chars, start, end - start);
+      }
+      element.appendChild(doc.createTextNode(content));
+    }
+    pos = end < length ? skipPast('>', end) : length;
+  }
+
+  /**
+   * Test if characters from given position are the name of the raw text element end tag, ignoring case.
+   *
+   * @param index characters index, right after end tag solidus,
+   * @param name element name, lower case.
+   * @return true if element end tag is found.
+   */
+  private boolean isEndTag(int index, String name)
+  {
+    int end = index + name.length();
+    if(end > length) {
+      return false;
+    }
+    for(int i = 0; i < name.length(); ++i) {
+      if(Character.toLowerCase(chars[index + i]) != name.charAt(i)) {
+        return false;
+      }
+    }
+    return end == length || chars[end] == '>' || chars[end] == '/' || isWhitespace(chars[end]);
+  }
+
+  /**
+   * Parse markup declaration: comment, CDATA section or document type. Other declarations are skipped. Current position
+   * is on declaration opening angle bracket.
+   *
+   * @throws SAXException if comment cannot be appended.
+   */
+  private void markupDeclaration() throws SAXException
+  {
+    if(startsWith("<!--")) {
+      int end = indexOf("-->", pos + 4);
+      if(includeComments) {
+        append(doc.createComment(new String(chars, pos + 4, end - pos - 4)));
+      }
+      pos = Math.min(end + 3, length);
+      return;
+    }
+    if(startsWith("<![CDATA[")) {
+      int end = indexOf("]]>", pos + 9);
+      text.append(chars, pos + 9, end - pos - 9);
+      pos = Math.min(end + 3, length);
+      return;
+    }
+    if(startsWithIgnoreCase("<!DOCTYPE")) {
+      pos += 9;
+      documentType();
+      return;
+    }
+    pos = skipPast('>', pos + 2);
+  }
+
+  /**
+   * Parse document type declaration, after <code>DOCTYPE</code> keyword, and append document type node to document.
+   * Document type is ignored if not declared before root element.
+   */
+  private void documentType()
+  {
+    skipWhitespace();
+    String name = readName();
+    skipWhitespace();
+    String publicId = null;
+    String systemId = null;
+    if(startsWithIgnoreCase("PUBLIC")) {
+      pos += 6;
+      publicId = readQuoted();
+      systemId = readQuoted();
+    }
+    else if(startsWithIgnoreCase("SYSTEM")) {
+      pos += 6;
+      systemId = readQuoted();
+    }
+    pos = skipPast('>', pos);
+    if(current == doc && doc.getDocumentElement() == null && doc.getDoctype() == null) {
+      doc.appendChild(doc.createDocumentType(name, publicId, systemId));
+    }
+  }
+
+  /**
+   * Decode character reference and append it to given builder. If reference is not valid ampersand is appended as it
+   * is. Named references are recognized only if terminated by semicolon; legacy references with no semicolon are
+   * not decoded. Current position is on ampersand.
+   *
+   * @param builder characters builder.
+   */
+  private void characterReference(StringBuilder builder)
+  {
+    int start = pos + 1;
+    if(start < length && chars[start] == '#') {
+      int i = start + 1;
+      int radix = 10;
+      if(i < length && (chars[i] == 'x' || chars[i] == 'X')) {
+        radix = 16;
+        ++i;
+      }
+      int digitsStart = i;
+      int value = 0;
+      while(i < length && Character.digit(chars[i], radix) != -1) {
+        if(value <= Character.MAX_CODE_POINT) {
+          value = value * radix + Character.digit(chars[i], radix);
+        }
+        ++i;
+      }
+      if(i > digitsStart) {
+        if(value == 0 || value > Character.MAX_CODE_POINT || (value >= 0xD800 && value <= 0xDFFF)) {
+          value = 0xFFFD;
+        }
+        builder.appendCodePoint(value);
+        pos = i < length && chars[i] == ';' ? i + 1 : i;
+        return;
+      }
+    }
+    else {
+      int i = start;
+      while(i < length && isLetterOrDigit(chars[i])) {
+        ++i;
+      }
+      if(i > start && i < length && chars[i] == ';') {
+        int value = HTMLEntities.get(new String(chars, start, i - start));
+        if(value != -1) {
+          builder.append((char)value);
+          pos = i + 1;
+          return;
+        }
+      }
+    }
+    builder.append('&');
+    ++pos;
+  }
+
+  // ----------------------------------------------------
+  // tree builder
+
+  /**
+   * Append node to current node. Text and multiple elements are not allowed at document level.
+   *
+   * @param node node to append.
+   * @throws SAXException if attempt to append a second root element.
+   */
+  private void append(Node node) throws SAXException
+  {
+    if(current == doc && node.getNodeType() == Node.ELEMENT_NODE && doc.getDocumentElement() != null) {
+      throw new SAXException("Multiple root elements.");
+    }
+    current.appendChild(node);
+  }
+
+  /**
+   * Create text node from pending text and append it to current node. White space only text is dropped at document
+   * level and, if stripping is enabled, outside elements with significant white space.
+   *
+   * @throws SAXException if there is text outside root element.
+   */
+  private void flushText() throws SAXException
+  {
+    if(text.length() == 0) {
+      return;
+    }
+    boolean whitespace = isWhitespace(text);
+    if(current == doc) {
+      text.setLength(0);
+      if(!whitespace) {
+        throw new SAXException("Text outside root element.");
+      }
+      return;
+    }
+    if(!whitespace || !stripWhitespaceText || preserveCount > 0) {
+      current.appendChild(doc.createTextNode(text.toString()));
+    }
+    text.setLength(0);
+  }
+
+  // ----------------------------------------------------
+  // low level scanning
+
+  /**
+   * Read tag or attribute name and convert it to lower case. Name ends on white space, solidus, equals sign or closing
+   * angle bracket.
+   *
+   * @return name, lower case.
+   */
+  private String readName()
+  {
+    int start = pos;
+    boolean lowerCase = true;
+    while(pos < length) {
+      char c = chars[pos];
+      if(isWhitespace(c) || c == '/' || c == '>' || (c == '=' && pos > start)) {
+        break;
+      }
+      if(c >= 'A' && c <= 'Z') {
+        lowerCase = false;
+      }
+      ++pos;
+    }
+    String name = new String(chars, start, pos - start);
+    return lowerCase ? name : name.toLowerCase();
+  }
+
+  /**
+   * Read attribute value, quoted or unquoted, decoding character references.
+   *
+   * @return attribute value.
+   */
+  private String readAttributeValue()
+  {
+    if(pos == length) {
+      return "";
+    }
+    char quote = chars[pos];
+    boolean quoted = quote == '"' || quote == '\'';
+    if(quoted) {
+      ++pos;
+    }
+
+    int start = pos;
+    while(pos < length) {
+      char c = chars[pos];
+      if(quoted ? c == quote : isWhitespace(c) || c == '>') {
+        break;
+      }
+      if(c == '&') {
+        // slow path, value has character references
+        StringBuilder builder = new StringBuilder();
+        builder.append(chars, start, pos - start);
+        while(pos < length && (quoted ? chars[pos] != quote : !isWhitespace(chars[pos]) && chars[pos] != '>')) {
+          if(chars[pos] == '&') {
+            characterReference(builder);
+          }
+          else {
+            builder.append(chars[pos++]);
+          }
+        }
+        if(quoted && pos < length) {
+          ++pos;
+        }
+        return builder.toString();
+      }
+      ++pos;
+    }
+
+    String value = new String(chars, start, pos - start);
+    if(quoted && pos < length) {
+      ++pos;
+    }
+    return value;
+  }
+
+  /**
+   * Read quoted string from document type declaration.
+   *
+   * @return quoted string or null if current position is not on a quote.
+   */
+  private String readQuoted()
+  {
+    skipWhitespace();
+    if(pos == length || (chars[pos] != '"' && chars[pos] != '\'')) {
+      return null;
+    }
+    char quote = chars[pos++];
+    int start = pos;
+    while(pos < length && chars[pos] != quote) {
+      ++pos;
+    }
+    String value = new String(chars, start, pos - start);
+    if(pos < length) {
+      ++pos;
+    }
+    return value;
+  }
+
+  private void skipWhitespace()
+  {
+    while(pos < length && isWhitespace(chars[pos])) {
+      ++pos;
+    }
+  }
+
+  /**
+   * Get position after the first occurrence of given character, starting from given index.
+   *
+   * @param c character to search for,
+   * @param index start index.
+   * @return position after found character or source length if not found.
+   */
+  private int skipPast(char c, int index)
+  {
+    while(index < length && chars[index] != c) {
+      ++index;
+    }
+    return Math.min(index + 1, length);
+  }
+
+  /**
+   * Get index of given string, starting from given index.
+   *
+   * @param s string to search for,
+   * @param index start index.
+   * @return string index or source length if not found.
+   */
+  private int indexOf(String s, int index)
+  {
+    char first = s.charAt(0);
+    for(int i = index, last = length - s.length(); i <= last; ++i) {
+      if(chars[i] == first && regionMatches(i, s, false)) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  private boolean startsWith(String s)
+  {
+    return regionMatches(pos, s, false);
+  }
+
+  private boolean startsWithIgnoreCase(String s)
+  {
+    return regionMatches(pos, s, true);
+  }
+
+  private boolean regionMatches(int index, String s, boolean ignoreCase)
+  {
+    if(index + s.length() > length) {
+      return false;
+    }
+    for(int i = 0; i < s.length(); ++i) {
+      char c = chars[index + i];
+      if(c != s.charAt(i) && (!ignoreCase || Character.toUpperCase(c) != Character.toUpperCase(s.charAt(i)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isLetter(char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isLetterOrDigit(char c)
+  {
+    return isLetter(c) || (c >= '0' && c <= '9');
+  }
+
+  private static boolean isWhitespace(char c)
+  {
+    return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+  }
+
+  private static boolean isWhitespace(CharSequence s)
+  {
+    for(int i = 0; i < s.length(); ++i) {
+      if(!isWhitespace(s.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
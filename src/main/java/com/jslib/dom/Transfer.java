@@ -0,0 +1,19 @@
+package com.jslib.dom;
+
+/**
+ * How elements from another document are transferred into target document by insertion operations. Elements already
+ * belonging to target document are always moved, as by W3C DOM insertion methods.
+ *
+ * @author Iulian Rotaru
+ */
+public enum Transfer
+{
+  /** Deep copy elements subtree into target document; source document is not changed. */
+  COPY,
+  /**
+   * Adopt elements subtree into target document, removing it from source document. No nodes are copied and element
+   * instances already created for adopted subtree are moved to target document. If source document implementation
+   * does not support adoption, subtree is copied.
+   */
+  MOVE
+}
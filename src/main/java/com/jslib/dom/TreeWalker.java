@@ -0,0 +1,94 @@
+package com.jslib.dom;
+
+import org.w3c.dom.Node;
+
+import com.jslib.dom.ElementVisitor.Action;
+
+/**
+ * Iterative W3C DOM tree walker with enter and exit callbacks. Walk follows first child, next sibling and parent node
+ * references and keeps no stack and no children lists; it is the engine behind {@link ElementVisitor} walks and is used
+ * internally on nodes of any type.
+ *
+ * @author Iulian Rotaru
+ */
+final class TreeWalker
+{
+  /**
+   * Callbacks for nodes walk, see {@link ElementVisitor} for actions semantic.
+   *
+   * @author Iulian Rotaru
+   */
+  interface NodeVisitor
+  {
+    Action enter(Node node);
+
+    default Action exit(Node node)
+    {
+      return Action.CONTINUE;
+    }
+  }
+
+  /**
+   * Walk given root node subtree, root included, in document order.
+   *
+   * @param root walk root node,
+   * @param visitor nodes visitor.
+   * @return true if walk completed or false if stopped by visitor.
+   */
+  static boolean walk(Node root, NodeVisitor visitor)
+  {
+    Node node = root;
+    for(;;) {
+      Action action = visitor.enter(node);
+      if(action == Action.STOP) {
+        return false;
+      }
+      if(action == Action.CONTINUE && node.getFirstChild() != null) {
+        node = node.getFirstChild();
+        continue;
+      }
+
+      // leave node together with ancestors that have no next sibling
+      for(;;) {
+        if(visitor.exit(node) == Action.STOP) {
+          return false;
+        }
+        if(node == root) {
+          return true;
+        }
+        if(node.getNextSibling() != null) {
+          node = node.getNextSibling();
+          break;
+        }
+        node = node.getParentNode();
+      }
+    }
+  }
+
+  /**
+   * Walk elements from given root element subtree, root included, in document order. Non element nodes are not visited
+   * and their descendants, e.g. entity reference content, are skipped.
+   *
+   * @param ownerDoc owner document, used to get element instances,
+   * @param root walk root element node,
+   * @param visitor elements visitor.
+   * @return true if walk completed or false if stopped by visitor.
+   */
+  static boolean walk(DocumentImpl ownerDoc, Node root, ElementVisitor visitor)
+  {
+    return walk(root, new NodeVisitor()
+    {
+      @Override
+      public Action enter(Node node)
+      {
+        return node.getNodeType() == Node.ELEMENT_NODE ? visitor.enter(ownerDoc.getElement(node)) : Action.SKIP_SUBTREE;
+      }
+
+      @Override
+      public Action exit(Node node)
+      {
+        return node.getNodeType() == Node.ELEMENT_NODE ? visitor.exit(ownerDoc.getElement(node)) : Action.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,192 @@
+package com.jslib.dom;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.cyberneko.html.filters.DefaultFilter;
+
+/**
+ * Parser pipeline component that drops white space only text so that DOM builder does not create text nodes for
+ * indentation. Text is dropped only if the entire run of characters between two markup events is white space; runs
+ * containing other characters are passed unchanged, even if parser reports them in multiple chunks.
+ * <p>
+ * Content of elements where white space is significant is always preserved: <code>pre</code>, <code>textarea</code>
+ * and {@link HTML#RAW_TAGS}. Component is reusable; its state is reset on every parsing.
+ *
+ * @author Iulian Rotaru
+ */
+final class WhitespaceFilterComponent extends DefaultFilter
+{
+  /** Elements with significant white space, in addition to {@link HTML#RAW_TAGS}. */
+  private static final String[] PRESERVE_TAGS = new String[]
+  {
+      "pre", "textarea"
+  };
+
+  /** Current element depth. */
+  private int depth;
+  /** Depth of the preserving element currently in progress or -1 if not inside such element. */
+  private int preserveDepth = -1;
+  /** Flag true while inside CDATA section. */
+  private boolean cdata;
+  /** Flag true if current characters run has non white space characters. */
+  private boolean runHasText;
+  /** White space chunks from current characters run, pending till run is known to have text. */
+  private final StringBuilder pending = new StringBuilder();
+
+  @Override
+  public void startDocument(XMLLocator locator, String encoding, NamespaceContext context, Augmentations augs) throws XNIException
+  {
+    // component is used by both NekoHTML and Xerces pipelines; reset state here since Xerces does not reset filters
+    depth = 0;
+    preserveDepth = -1;
+    cdata = false;
+    endRun();
+    super.startDocument(locator, encoding, context, augs);
+  }
+
+  @Override
+  public void startElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    endRun();
+    if(preserveDepth == -1 && isPreserveTag(element.rawname)) {
+      preserveDepth = depth;
+    }
+    ++depth;
+    super.startElement(element, attributes, augs);
+  }
+
+  @Override
+  public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException
+  {
+    endRun();
+    super.emptyElement(element, attributes, augs);
+  }
+
+  @Override
+  public void endElement(QName element, Augmentations augs) throws XNIException
+  {
+    endRun();
+    if(--depth == preserveDepth) {
+      preserveDepth = -1;
+    }
+    super.endElement(element, augs);
+  }
+
+  @Override
+  public void characters(XMLString text, Augmentations augs) throws XNIException
+  {
+    if(preserveDepth != -1 || cdata) {
+      super.characters(text, augs);
+      return;
+    }
+    if(isWhitespace(text)) {
+      if(runHasText) {
+        super.characters(text, augs);
+      }
+      else {
+        // XNI string buffer is reused by scanner so white space should be copied
+        pending.append(text.ch, text.offset, text.length);
+      }
+      return;
+    }
+
+    if(pending.length() > 0) {
+      char[] chars = new char[pending.length()];
+      pending.getChars(0, chars.length, chars, 0);
+      pending.setLength(0);
+      super.characters(new XMLString(chars, 0, chars.length), augs);
+    }
+    runHasText = true;
+    super.characters(text, augs);
+  }
+
+  @Override
+  public void ignorableWhitespace(XMLString text, Augmentations augs) throws XNIException
+  {
+    if(preserveDepth != -1 || cdata) {
+      super.ignorableWhitespace(text, augs);
+    }
+  }
+
+  @Override
+  public void comment(XMLString text, Augmentations augs) throws XNIException
+  {
+    endRun();
+    super.comment(text, augs);
+  }
+
+  @Override
+  public void processingInstruction(String target, XMLString data, Augmentations augs) throws XNIException
+  {
+    endRun();
+    super.processingInstruction(target, data, augs);
+  }
+
+  @Override
+  public void startCDATA(Augmentations augs) throws XNIException
+  {
+    endRun();
+    cdata = true;
+    super.startCDATA(augs);
+  }
+
+  @Override
+  public void endCDATA(Augmentations augs) throws XNIException
+  {
+    cdata = false;
+    super.endCDATA(augs);
+  }
+
+  /**
+   * End current characters run discarding pending white space, if any.
+   */
+  private void endRun()
+  {
+    runHasText = false;
+    pending.setLength(0);
+  }
+
+  /**
+   * Test if element has significant white space. Element name is compared ignoring case since NekoHTML element names
+   * case is configurable.
+   *
+   * @param name element name.
+   * @return true if element white space should be preserved.
+   */
+  private static boolean isPreserveTag(String name)
+  {
+    for(String tag : PRESERVE_TAGS) {
+      if(tag.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    for(String tag : HTML.RAW_TAGS) {
+      if(tag.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Test if XNI string contains only white space characters, as defined by XML specification.
+   *
+   * @param text XNI string.
+   * @return true if string has only white space.
+   */
+  private static boolean isWhitespace(XMLString text)
+  {
+    for(int i = text.offset, end = text.offset + text.length; i < end; ++i) {
+      char c = text.ch[i];
+      if(c != ' ' && c != '\n' && c != '\t' && c != '\r') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
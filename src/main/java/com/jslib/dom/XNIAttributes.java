@@ -0,0 +1,100 @@
+package com.jslib.dom;
+
+import org.apache.xerces.xni.XMLAttributes;
+import org.xml.sax.Attributes;
+
+/**
+ * SAX attributes view over Xerces native interface attributes. Used to expose element attributes to user defined
+ * parse time callbacks without copying them. An instance is reusable and is valid only while wrapped attributes are.
+ *
+ * @author Iulian Rotaru
+ */
+final class XNIAttributes implements Attributes
+{
+  /** Wrapped XNI attributes. */
+  private XMLAttributes attributes;
+
+  /**
+   * Set wrapped XNI attributes.
+   *
+   * @param attributes XNI attributes.
+   * @return this object.
+   */
+  public XNIAttributes wrap(XMLAttributes attributes)
+  {
+    this.attributes = attributes;
+    return this;
+  }
+
+  @Override
+  public int getLength()
+  {
+    return attributes.getLength();
+  }
+
+  @Override
+  public String getURI(int index)
+  {
+    return attributes.getURI(index);
+  }
+
+  @Override
+  public String getLocalName(int index)
+  {
+    return attributes.getLocalName(index);
+  }
+
+  @Override
+  public String getQName(int index)
+  {
+    return attributes.getQName(index);
+  }
+
+  @Override
+  public String getType(int index)
+  {
+    return attributes.getType(index);
+  }
+
+  @Override
+  public String getValue(int index)
+  {
+    return attributes.getValue(index);
+  }
+
+  @Override
+  public int getIndex(String uri, String localName)
+  {
+    return attributes.getIndex(uri, localName);
+  }
+
+  @Override
+  public int getIndex(String qName)
+  {
+    return attributes.getIndex(qName);
+  }
+
+  @Override
+  public String getType(String uri, String localName)
+  {
+    return attributes.getType(uri, localName);
+  }
+
+  @Override
+  public String getType(String qName)
+  {
+    return attributes.getType(qName);
+  }
+
+  @Override
+  public String getValue(String uri, String localName)
+  {
+    return attributes.getValue(uri, localName);
+  }
+
+  @Override
+  public String getValue(String qName)
+  {
+    return attributes.getValue(qName);
+  }
+}
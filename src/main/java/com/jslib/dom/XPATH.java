@@ -1,5 +1,9 @@
 package com.jslib.dom;
 
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
@@ -11,6 +15,7 @@ import org.w3c.dom.NodeList;
 import com.jslib.api.dom.NamespaceContext;
 import com.jslib.api.log.Log;
 import com.jslib.api.log.LogFactory;
+import com.jslib.util.Params;
 import com.jslib.util.Strings;
 
 /**
@@ -22,70 +27,96 @@ final class XPATH
 {
   private static final Log log = LogFactory.getLog(XPATH.class);
 
+  /** Name of the variable holding attribute value or CSS class in expressions built by this class. */
+  private static final String VALUE_VARIABLE = "value";
+
+  /** Expression for elements with CSS class given by {@link #VALUE_VARIABLE}. */
+  private static final String ELEMENTS_BY_CLASS_NAME = "descendant-or-self::node()[contains(concat(' ', normalize-space(@class), ' '), concat(' ', $value, ' '))]";
+
   /**
-   * Build XPath expression for elements with attribute name and optional value.
+   * Build XPath expression for elements with attribute name and optional value. Attribute value is not part of
+   * expression but referenced by a variable; evaluate expression with variables returned by {@link #value(String...)}.
    * 
    * @param name attribute name,
    * @param value optional attribute value.
    * @return XPath expression.
+   * @throws IllegalArgumentException if attribute name is not a valid XML name.
    */
   static String getElementsByAttrNameValue(String name, String... value)
   {
+    Params.isTrue(isName(name), "Invalid attribute name |%s|.", name);
     StringBuilder xpath = new StringBuilder();
     xpath.append("descendant-or-self::node()");
     xpath.append("[@");
     xpath.append(name);
     if(value.length == 1) {
-      xpath.append("='");
-      xpath.append(value[0]);
-      xpath.append("'");
+      xpath.append("=$");
+      xpath.append(VALUE_VARIABLE);
     }
     xpath.append("]");
     return xpath.toString();
   }
 
   /**
-   * Build XPath expression for elements with attribute name and optional value.
+   * Build XPath expression for elements with attribute name and optional value. Attribute value is referenced by a
+   * variable, see {@link #getElementsByAttrNameValue(String, String...)}.
    * 
+   * @param namespacePrefix name space prefix,
    * @param name attribute name,
    * @param value optional attribute value.
    * @return XPath expression.
+   * @throws IllegalArgumentException if attribute name is not a valid XML name.
    */
   static String getElementsByAttrNameValueNS(String namespacePrefix, String name, String... value)
   {
-    StringBuilder xpath = new StringBuilder();
-    xpath.append("descendant-or-self::node()");
-    xpath.append("[@");
-    xpath.append(namespacePrefix);
-    xpath.append(':');
-    xpath.append(name);
-    if(value.length == 1) {
-      xpath.append("='");
-      xpath.append(value[0]);
-      xpath.append("'");
-    }
-    xpath.append("]");
-    return xpath.toString();
+    return getElementsByAttrNameValue(namespacePrefix + ':' + name, value);
   }
 
   /**
-   * Build XPath expression for elements with class name. Element class is and attribute with the name 'class' that can
-   * contain space separated class names.
+   * Get XPath expression for elements with class name. Element class is and attribute with the name 'class' that can
+   * contain space separated class names. Class name is referenced by a variable; evaluate expression with variables
+   * returned by {@link #value(String...)}.
    * 
-   * @param className class name.
    * @return XPath expression.
    */
-  static String getElementsByClassName(String className)
+  static String getElementsByClassName()
   {
-    StringBuilder xpath = new StringBuilder();
-    xpath.append("descendant-or-self::node()");
-    xpath.append("[contains(");
-    xpath.append("concat(' ', normalize-space(@class), ' '),");
-    xpath.append("' ");
-    xpath.append(className);
-    xpath.append(" '");
-    xpath.append(")]");
-    return xpath.toString();
+    return ELEMENTS_BY_CLASS_NAME;
+  }
+
+  /**
+   * Create variables for expressions built by this class, binding attribute value or CSS class.
+   * 
+   * @param value optional attribute value or CSS class.
+   * @return variables map, empty if value is missing.
+   */
+  static Map<String, Object> value(String... value)
+  {
+    return value.length == 1 ? Collections.singletonMap(VALUE_VARIABLE, value[0]) : Collections.emptyMap();
+  }
+
+  /**
+   * Test if string is a valid XML name, possible prefixed.
+   * 
+   * @param name string to test.
+   * @return true if string is a valid name.
+   */
+  private static boolean isName(String name)
+  {
+    if(name == null || name.isEmpty()) {
+      return false;
+    }
+    for(int i = 0; i < name.length(); ++i) {
+      char c = name.charAt(i);
+      if(Character.isLetter(c) || c == '_' || c == ':') {
+        continue;
+      }
+      if(i > 0 && (Character.isDigit(c) || c == '-' || c == '.')) {
+        continue;
+      }
+      return false;
+    }
+    return true;
   }
 
   /**
@@ -114,9 +145,10 @@ final class XPATH
    */
   static Node evaluateXPathNodeNS(Node contextNode, NamespaceContext namespaceContext, String expression, Object... args) throws XPathExpressionException
   {
-    if(args.length > 0) {
-      expression = Strings.format(expression, args);
+    if(args.length == 0) {
+      return evaluateXPathNodeNS(contextNode, namespaceContext, expression, Collections.emptyMap());
     }
+    expression = Strings.format(expression, args);
 
     Node node = null;
     XPath xpath = XPathFactory.newInstance().newXPath();
@@ -162,9 +194,10 @@ final class XPATH
    */
   static NodeList evaluateXPathNodeListNS(Node contextNode, NamespaceContext namespaceContext, String expression, Object... args) throws XPathExpressionException
   {
-    if(args.length > 0) {
-      expression = Strings.format(expression, args);
+    if(args.length == 0) {
+      return evaluateXPathNodeListNS(contextNode, namespaceContext, expression, Collections.emptyMap());
     }
+    expression = Strings.format(expression, args);
 
     NodeList nodeList = null;
     XPath xpath = XPathFactory.newInstance().newXPath();
@@ -182,6 +215,213 @@ final class XPATH
     return nodeList;
   }
 
+  /**
+   * Test if XPath expression yields at least one node. Expression is evaluated as <code>boolean(expression)</code> so
+   * that XPath engine stops on first node and result nodes set is not materialized.
+   * 
+   * @param contextNode evaluation context node,
+   * @param expression XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return true if expression yields at least one node.
+   * @throws XPathExpressionException if expression is not valid.
+   */
+  static boolean evaluateXPathExists(Node contextNode, String expression, Object... args) throws XPathExpressionException
+  {
+    return (Boolean)evaluate(contextNode, "boolean(" + expression + ")", XPathConstants.BOOLEAN, args);
+  }
+
+  /**
+   * Count nodes yielded by XPath expression. Expression is evaluated as <code>count(expression)</code> so that result
+   * nodes set is not materialized.
+   * 
+   * @param contextNode evaluation context node,
+   * @param expression XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return result nodes count.
+   * @throws XPathExpressionException if expression is not valid.
+   */
+  static int evaluateXPathCount(Node contextNode, String expression, Object... args) throws XPathExpressionException
+  {
+    return ((Double)evaluate(contextNode, "count(" + expression + ")", XPathConstants.NUMBER, args)).intValue();
+  }
+
+  /**
+   * Evaluate XPath expression with optional formatting arguments. Expression without arguments is evaluated using
+   * expressions cached by current thread; formatted expressions are not cached since they depend on arguments values.
+   * 
+   * @param contextNode evaluation context node,
+   * @param expression XPath expression, formatting tags supported,
+   * @param returnType expected result type,
+   * @param args optional formatting arguments.
+   * @return evaluation result.
+   * @throws XPathExpressionException if expression is not valid.
+   */
+  private static Object evaluate(Node contextNode, String expression, QName returnType, Object... args) throws XPathExpressionException
+  {
+    if(args.length == 0) {
+      return XPathCache.evaluate(contextNode, expression, Collections.emptyMap(), returnType);
+    }
+    XPath xpath = XPathFactory.newInstance().newXPath();
+    return xpath.evaluate(Strings.format(expression, args), contextNode, returnType);
+  }
+
+  /**
+   * Evaluate XPath expression with variables expecting a single result node. Variables are referenced from expression
+   * as <code>$name</code> and values are bound at evaluation, so expression is compiled once and reused for all values,
+   * see {@link XPathCache}. Since values are never part of expression text they need no escaping.
+   * 
+   * @param contextNode evaluation context node,
+   * @param expression XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return evaluation result as element, possible null.
+   * @throws XPathExpressionException if expression is not valid.
+   * @throws IllegalArgumentException if expression references a variable not in map.
+   */
+  static Node evaluateXPathNode(Node contextNode, String expression, Map<String, ?> variables) throws XPathExpressionException
+  {
+    return evaluateXPathNodeNS(contextNode, null, expression, variables);
+  }
+
+  /**
+   * Name space aware variant of {@link #evaluateXPathNode(Node, String, Map)}. Expressions evaluated with a name space
+   * context are not cached.
+   * 
+   * @param contextNode evaluation context node,
+   * @param namespaceContext optional name space context, null if not used,
+   * @param expression XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return evaluation result as element, possible null.
+   * @throws XPathExpressionException if expression is not valid.
+   * @throws IllegalArgumentException if expression references a variable not in map.
+   */
+  static Node evaluateXPathNodeNS(Node contextNode, NamespaceContext namespaceContext, String expression, Map<String, ?> variables) throws XPathExpressionException
+  {
+    Node node = (Node)evaluate(contextNode, namespaceContext, expression, variables, XPathConstants.NODE);
+    if(node == null) {
+      return null;
+    }
+    if(node.getNodeType() != Node.ELEMENT_NODE) {
+      log.debug("XPath expression |{dom_xpath}| on |{dom_node}| yields a node that is not element. Force to null.", expression, contextNode);
+      return null;
+    }
+    return node;
+  }
+
+  /**
+   * Evaluate XPath expression with variables expected to return nodes list. See
+   * {@link #evaluateXPathNode(Node, String, Map)} for variables description.
+   * 
+   * @param contextNode evaluation context node,
+   * @param expression XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return list of result elements, possible empty.
+   * @throws XPathExpressionException if expression is not valid.
+   * @throws IllegalArgumentException if expression references a variable not in map.
+   */
+  static NodeList evaluateXPathNodeList(Node contextNode, String expression, Map<String, ?> variables) throws XPathExpressionException
+  {
+    return evaluateXPathNodeListNS(contextNode, null, expression, variables);
+  }
+
+  /**
+   * Name space aware variant of {@link #evaluateXPathNodeList(Node, String, Map)}. Expressions evaluated with a name
+   * space context are not cached.
+   * 
+   * @param contextNode evaluation context node,
+   * @param namespaceContext optional name space context, null if not used,
+   * @param expression XPath expression, possible with variable references,
+   * @param variables variables values mapped to names.
+   * @return list of result elements, possible empty.
+   * @throws XPathExpressionException if expression is not valid.
+   * @throws IllegalArgumentException if expression references a variable not in map.
+   */
+  static NodeList evaluateXPathNodeListNS(Node contextNode, NamespaceContext namespaceContext, String expression, Map<String, ?> variables) throws XPathExpressionException
+  {
+    NodeList nodeList = (NodeList)evaluate(contextNode, namespaceContext, expression, variables, XPathConstants.NODESET);
+    return nodeList != null ? nodeList : EMPTY_NODE_LIST;
+  }
+
+  /**
+   * Evaluate XPath expression with variables. If there is no name space context use expression compiled and cached by
+   * current thread, otherwise compile expression on the fly.
+   * 
+   * @param contextNode evaluation context node,
+   * @param namespaceContext optional name space context, null if not used,
+   * @param expression XPath expression, possible with variable references,
+   * @param variables variables values mapped to names,
+   * @param returnType expected result type.
+   * @return evaluation result, possible null.
+   * @throws XPathExpressionException if expression is not valid.
+   * @throws IllegalArgumentException if expression references a variable not in map.
+   */
+  private static Object evaluate(Node contextNode, NamespaceContext namespaceContext, String expression, Map<String, ?> variables, QName returnType) throws XPathExpressionException
+  {
+    if(namespaceContext == null) {
+      return XPathCache.evaluate(contextNode, expression, variables, returnType);
+    }
+    XPath xpath = XPathFactory.newInstance().newXPath();
+    xpath.setNamespaceContext(namespaceContext);
+    xpath.setXPathVariableResolver(new XPathCache.VariableResolver(variables));
+    return xpath.evaluate(expression, contextNode, returnType);
+  }
+
+  /**
+   * Cancellable variant of {@link #evaluateXPathNode(Node, String, Object...)}.
+   * 
+   * @param contextNode evaluation context node,
+   * @param cancellation cancellation token,
+   * @param expression XPath expression, formatting tags supported,
+   * @param args optional formatting arguments.
+   * @return evaluation result as element, possible null.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   * @throws XPathExpressionException if expression is not valid.
+   */
+  static Node evaluateXPathNode(Node contextNode, Cancellation cancellation, String expression, Object... args) throws XPathExpressionException
+  {
+    NodeList nodeList = evaluateXPathNodeList(contextNode, cancellation, expression, args);
+    for(int i = 0; i < nodeList.getLength(); ++i) {
+      if(nodeList.item(i).getNodeType() == Node.ELEMENT_NODE) {
+        return nodeList.item(i);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Cancellable variant of {@link #evaluateXPathNodeList(Node, String, Object...)}. Expressions supported by
+   * {@link NativeXPath} are evaluated natively and cancellation token is checked while evaluation progresses. Other
+   * expressions are evaluated by JDK XPath engine that cannot be interrupted; for them token is checked only before and
+   * after evaluation.
+   * 
+   * @param contextNode evaluation context node,
+   * @param cancellation cancellation token,
+   * @param expression XPath expression with optional formatting tags,
+   * @param args optional formatting arguments.
+   * @return list of result elements, possible empty.
+   * @throws XPathCancelledException if cancellation token is cancelled before evaluation completes.
+   * @throws XPathExpressionException if expression is not valid.
+   */
+  static NodeList evaluateXPathNodeList(Node contextNode, Cancellation cancellation, String expression, Object... args) throws XPathExpressionException
+  {
+    if(args.length > 0) {
+      expression = Strings.format(expression, args);
+    }
+
+    NativeXPath nativeXPath = NativeXPath.compile(expression);
+    if(nativeXPath != null) {
+      return nativeXPath.evaluate(contextNode, cancellation);
+    }
+
+    if(cancellation.isCancelled()) {
+      throw new XPathCancelledException(expression);
+    }
+    NodeList nodeList = evaluateXPathNodeList(contextNode, expression);
+    if(cancellation.isCancelled()) {
+      throw new XPathCancelledException(expression);
+    }
+    return nodeList;
+  }
+
   /** Empty nodes list constant. */
   private static final NodeList EMPTY_NODE_LIST = new EmptyNodeList();
 
@@ -0,0 +1,128 @@
+package com.jslib.dom;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.w3c.dom.Node;
+
+import com.jslib.util.Params;
+
+/**
+ * Per thread cache for compiled XPath expressions. JDK XPath objects and compiled expressions are not thread safe so
+ * every thread has its own XPath instance and expressions cache. Expression values are not part of expression text but
+ * bound at evaluation time via XPath variables, see {@link VariableResolver}; this way a single compiled expression
+ * serves all values and cache size is bounded by the number of distinct expressions, not by values.
+ * <p>
+ * Cache uses least recently used eviction policy and has a fixed capacity of {@link #CAPACITY} expressions.
+ *
+ * @author Iulian Rotaru
+ */
+final class XPathCache
+{
+  /** Maximum number of compiled expressions cached per thread. */
+  private static final int CAPACITY = 256;
+
+  /** Cache instance per thread. */
+  private static final ThreadLocal<XPathCache> CACHE = ThreadLocal.withInitial(XPathCache::new);
+
+  /**
+   * Evaluate XPath expression using compiled expression cached by current thread. Variables are bound only for the
+   * duration of this evaluation.
+   *
+   * @param contextNode evaluation context node,
+   * @param expression XPath expression, possible with variable references,
+   * @param variables variables values mapped to names,
+   * @param returnType expected result type.
+   * @return evaluation result, possible null.
+   * @throws XPathExpressionException if expression is not valid.
+   * @throws IllegalArgumentException if expression references a variable not in map.
+   */
+  static Object evaluate(Node contextNode, String expression, Map<String, ?> variables, QName returnType) throws XPathExpressionException
+  {
+    XPathCache cache = CACHE.get();
+    XPathExpression compiledExpression = cache.compile(expression);
+    cache.resolver.variables = variables;
+    try {
+      return compiledExpression.evaluate(contextNode, returnType);
+    }
+    finally {
+      cache.resolver.variables = Collections.emptyMap();
+    }
+  }
+
+  /** XPath instance used to compile expressions, bound to {@link #resolver}. */
+  private final XPath xpath;
+
+  /** Variables resolver shared by all expressions compiled by this cache. */
+  private final VariableResolver resolver;
+
+  /** Compiled expressions mapped to expression text, in access order. */
+  private final Map<String, XPathExpression> expressions;
+
+  private XPathCache()
+  {
+    this.resolver = new VariableResolver(Collections.emptyMap());
+    this.xpath = XPathFactory.newInstance().newXPath();
+    this.xpath.setXPathVariableResolver(this.resolver);
+    this.expressions = new LinkedHashMap<String, XPathExpression>(64, 0.75F, true)
+    {
+      private static final long serialVersionUID = 5337018255290245416L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest)
+      {
+        return size() > CAPACITY;
+      }
+    };
+  }
+
+  private XPathExpression compile(String expression) throws XPathExpressionException
+  {
+    XPathExpression compiledExpression = expressions.get(expression);
+    if(compiledExpression == null) {
+      compiledExpression = xpath.compile(expression);
+      expressions.put(expression, compiledExpression);
+    }
+    return compiledExpression;
+  }
+
+  /**
+   * XPath variables resolver backed by a map. Variables are looked up by local name; numbers are converted to double
+   * and characters to string, as required by XPath data model. A reference to a variable not present in map is rejected
+   * with illegal argument exception.
+   *
+   * @author Iulian Rotaru
+   */
+  static class VariableResolver implements XPathVariableResolver
+  {
+    /** Variables values mapped to names. */
+    private Map<String, ?> variables;
+
+    VariableResolver(Map<String, ?> variables)
+    {
+      this.variables = variables;
+    }
+
+    @Override
+    public Object resolveVariable(QName name)
+    {
+      Object value = variables.get(name.getLocalPart());
+      Params.isTrue(value != null, "Missing XPath variable |%s|.", name.getLocalPart());
+      if(value instanceof Number && !(value instanceof Double)) {
+        return ((Number)value).doubleValue();
+      }
+      if(value instanceof Character) {
+        return value.toString();
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.jslib.dom;
+
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * XPath evaluation aborted because its {@link Cancellation} token was cancelled or its deadline passed. It extends
+ * XPath expression exception so that cancellable queries have the same signature as standard ones.
+ *
+ * @author Iulian Rotaru
+ */
+public class XPathCancelledException extends XPathExpressionException
+{
+  /** Java serialization version. */
+  private static final long serialVersionUID = -4187061958740373275L;
+
+  /**
+   * Create exception for cancelled XPath expression.
+   *
+   * @param expression cancelled XPath expression.
+   */
+  public XPathCancelledException(String expression)
+  {
+    super(String.format("XPath evaluation cancelled. Expression is |%s|.", expression));
+  }
+}
@@ -1,16 +1,24 @@
 package com.jslib.dom;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
@@ -90,6 +98,21 @@ public class BuilderUnitTest
     assertUtfDocument(builder().parseXML(string));
   }
 
+  @Test
+  public void parseXml_StringBuilder() throws SAXException
+  {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>");
+    builder.append("<body>");
+    builder.append("    <h1 id=\"id1\">ηεαδερ 1</h1>");
+    builder.append("    <h2 id=\"id2\">ηεαδερ 2</h2>");
+    builder.append("    <h3 id=\"id3\">ηεαδερ 3</h3>");
+    builder.append("</body>");
+
+    // characters are fed directly to parser so declared encoding is not relevant
+    assertUtfDocument(new DocumentBuilderImpl().parseXML(builder));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void parseXML_EmptyString() throws SAXException
   {
@@ -298,6 +321,430 @@ public class BuilderUnitTest
     assertIsoDocument(builder().loadHTML((URL)null));
   }
 
+  @Test
+  public void readXMLRecords() throws IOException, SAXException
+  {
+    String xml = "<feed>" + //
+        "<meta><item>not a record</item></meta>" + //
+        "<item id=\"1\"><title>first</title></item>" + //
+        "<item id=\"2\"><title>second</title></item>" + //
+        "</feed>";
+
+    List<String> titles = new ArrayList<>();
+    try (RecordReader reader = new DocumentBuilderImpl().readXMLRecords(new StringReader(xml), "/feed/item")) {
+      Document record;
+      while((record = reader.read()) != null) {
+        assertEquals("item", record.getRoot().getTag());
+        titles.add(record.getRoot().getAttr("id") + ":" + record.getByTag("title").getText());
+      }
+    }
+    assertEquals(Arrays.asList("1:first", "2:second"), titles);
+  }
+
+  @Test
+  public void processXMLRecords() throws IOException, SAXException
+  {
+    StringBuilder xml = new StringBuilder("<feed>");
+    for(int i = 0; i < 1000; ++i) {
+      xml.append("<item id=\"").append(i).append("\"><title>title</title></item>");
+    }
+    xml.append("</feed>");
+
+    List<String> ids = new ArrayList<>();
+    try (RecordReader reader = new DocumentBuilderImpl().readXMLRecords(new StringReader(xml.toString()), "/feed/item")) {
+      new RecordPipeline(4, 16, true).process(reader, item -> ids.add(item.getAttr("id")));
+    }
+    assertEquals(1000, ids.size());
+    for(int i = 0; i < 1000; ++i) {
+      assertEquals(Integer.toString(i), ids.get(i));
+    }
+  }
+
+  @Test
+  public void loadHTML_ElementFilter() throws IOException, SAXException
+  {
+    Document doc = new DocumentBuilderImpl().loadHTML(stream("bench-probe.html"), "UTF-8", (name, attributes, depth) -> {
+      return name.equalsIgnoreCase("body") ? ElementFilter.Action.REJECT : ElementFilter.Action.ACCEPT;
+    });
+    assertEquals("House Community", doc.getByTag("title").getText());
+    assertEquals(6, doc.findByTag("link").size());
+    assertEquals(0, doc.findByTag("div").size());
+  }
+
+  @Test
+  public void loadXML_ElementFilter() throws IOException, SAXException
+  {
+    String xml = "<root><a><b>keep</b></a><skip><c>child</c></skip><reject><d>drop</d></reject></root>";
+    Document doc = new DocumentBuilderImpl().loadXML(new ByteArrayInputStream(xml.getBytes("UTF-8")), (name, attributes, depth) -> {
+      if(name.equals("skip")) {
+        return ElementFilter.Action.SKIP;
+      }
+      return name.equals("reject") ? ElementFilter.Action.REJECT : ElementFilter.Action.ACCEPT;
+    });
+    assertEquals("keep", doc.getByTag("b").getText());
+    assertNull(doc.getByTag("skip"));
+    assertEquals("root", doc.getByTag("c").getParent().getTag());
+    assertNull(doc.getByTag("reject"));
+    assertNull(doc.getByTag("d"));
+  }
+
+  @Test
+  public void loadHTML_ElementFilterUnmatchedEndTag() throws IOException, SAXException
+  {
+    // without tag balancer unmatched end tags reach element filter and outnumber start tags
+    ParseProfile profile = ParseProfile.builder().balanceTags(false).elementNameCase(ParseProfile.ElementNameCase.LOWER).build();
+    String html = "<html><body><p>text</p></div><span>keep</span></body></html></html>";
+    Document doc = new DocumentBuilderImpl(profile).loadHTML(new ByteArrayInputStream(html.getBytes("UTF-8")), "UTF-8", (name, attributes, depth) -> {
+      return name.equals("p") ? ElementFilter.Action.REJECT : ElementFilter.Action.ACCEPT;
+    });
+    assertNull(doc.getByTag("p"));
+    assertEquals("keep", doc.getByTag("span").getText());
+
+    // unmatched end tag inside rejected element does not end rejected subtree
+    html = "<html><body><div><p>drop</span><b>drop</b></p><i>keep</i></div></body></html>";
+    doc = new DocumentBuilderImpl(profile).loadHTML(new ByteArrayInputStream(html.getBytes("UTF-8")), "UTF-8", (name, attributes, depth) -> {
+      return name.equals("p") ? ElementFilter.Action.REJECT : ElementFilter.Action.ACCEPT;
+    });
+    assertNull(doc.getByTag("p"));
+    assertNull(doc.getByTag("b"));
+    assertEquals("div", doc.getByTag("i").getParent().getTag());
+
+    // unmatched end tag inside skipped element does not drop accepted end tags
+    html = "<html><body><div><p></span><b>keep</b></p><i>keep</i></div></body></html>";
+    doc = new DocumentBuilderImpl(profile).loadHTML(new ByteArrayInputStream(html.getBytes("UTF-8")), "UTF-8", (name, attributes, depth) -> {
+      return name.equals("p") ? ElementFilter.Action.SKIP : ElementFilter.Action.ACCEPT;
+    });
+    assertNull(doc.getByTag("p"));
+    assertEquals("div", doc.getByTag("b").getParent().getTag());
+    assertEquals("div", doc.getByTag("i").getParent().getTag());
+    assertEquals("body", doc.getByTag("div").getParent().getTag());
+
+    // end tag of outer element closes inner elements left open
+    html = "<html><body><div><p><b>keep</div><i>keep</i></body></html>";
+    doc = new DocumentBuilderImpl(profile).loadHTML(new ByteArrayInputStream(html.getBytes("UTF-8")), "UTF-8", (name, attributes, depth) -> {
+      return name.equals("p") ? ElementFilter.Action.SKIP : ElementFilter.Action.ACCEPT;
+    });
+    assertEquals("div", doc.getByTag("b").getParent().getTag());
+    assertEquals("body", doc.getByTag("i").getParent().getTag());
+  }
+
+  @Test
+  public void loadPartialHTML() throws IOException, SAXException
+  {
+    PartialDocument partial = new DocumentBuilderImpl().loadPartialHTML(stream("bench-probe.html"), "UTF-8", StopCondition.afterEndTag("head"));
+    assertTrue(partial.isStopped());
+    assertTrue(partial.getBytesRead() < file("bench-probe.html").length());
+
+    Document doc = partial.getDocument();
+    assertEquals("House Community", doc.getByTag("title").getText());
+    assertEquals(6, doc.findByTag("link").size());
+    assertEquals(0, doc.findByTag("div").size());
+  }
+
+  @Test
+  public void loadPartialXML() throws IOException, SAXException
+  {
+    String xml = "<root><item>1</item><item>2</item><item>3</item></root>";
+    PartialDocument partial = new DocumentBuilderImpl().loadPartialXML(new ByteArrayInputStream(xml.getBytes("UTF-8")), StopCondition.afterElements(3));
+    assertTrue(partial.isStopped());
+    // root element is counted too
+    assertEquals(2, partial.getDocument().findByTag("item").size());
+  }
+
+  @Test
+  public void parseProfile() throws IOException, SAXException
+  {
+    String xml = "<root><!-- note --><item><![CDATA[a<b]]></item></root>";
+    ParseProfile profile = ParseProfile.builder().includeComments(true).deferNodeExpansion(false).build();
+    Document doc = new DocumentBuilderImpl(profile).parseXML(xml);
+    org.w3c.dom.Document w3cDoc = Classes.getFieldValue(doc, "doc");
+    assertEquals(org.w3c.dom.Node.COMMENT_NODE, w3cDoc.getDocumentElement().getFirstChild().getNodeType());
+    assertEquals("a<b", doc.getByTag("item").getText());
+
+    // default profile discards comments and second parsing reuses pooled parser
+    for(int i = 0; i < 2; ++i) {
+      doc = builder().parseXML(xml);
+      w3cDoc = Classes.getFieldValue(doc, "doc");
+      assertEquals("item", w3cDoc.getDocumentElement().getFirstChild().getNodeName());
+    }
+
+    // element name case is visible to parse time filters
+    profile = ParseProfile.builder().elementNameCase(ParseProfile.ElementNameCase.LOWER).build();
+    List<String> names = new ArrayList<>();
+    new DocumentBuilderImpl(profile).loadHTML(new ByteArrayInputStream("<html><body><P>text</P></body></html>".getBytes("UTF-8")), "UTF-8", (name, attributes, depth) -> {
+      names.add(name);
+      return ElementFilter.Action.ACCEPT;
+    });
+    assertEquals(Arrays.asList("head", "body", "p"), names);
+  }
+
+  @Test
+  public void deferredHTML() throws IOException, SAXException
+  {
+    // default upper case element names are overridden by deferred HTML documents
+    ParseProfile profile = ParseProfile.builder().deferHTMLNodeExpansion(true).build();
+    assertEquals(ParseProfile.ElementNameCase.LOWER, profile.getElementNameCase());
+    Document doc = new DocumentBuilderImpl(profile).loadHTML(stream("bench-probe.html"));
+    org.w3c.dom.Document w3cDoc = Classes.getFieldValue(doc, "doc");
+    assertTrue(w3cDoc instanceof org.apache.xerces.dom.DeferredDocumentImpl);
+    assertFalse(doc.isXML());
+    assertEquals("House Community", doc.getByTag("title").getText());
+    assertEquals(6, doc.findByTag("link").size());
+    assertEquals("video-player", doc.getById("video-player").getAttr("id"));
+    assertNull(doc.getById("missing"));
+
+    // element filter does not affect identifiers registration
+    doc = new DocumentBuilderImpl(profile).loadHTML(new ByteArrayInputStream("<html><body><div id='d1'><p id='p1'>text</p></div></body></html>".getBytes("UTF-8")), "UTF-8", (name, attributes, depth) -> {
+      return ElementFilter.Action.ACCEPT;
+    });
+    assertEquals("p", doc.getById("p1").getTag());
+    assertEquals("d1", doc.getByTag("div").getAttr("id"));
+  }
+
+  @Test
+  public void deferredXML() throws IOException, SAXException
+  {
+    String xml = "<root><item>1</item><item>2</item></root>";
+    Document doc = new DocumentBuilderImpl(ParseProfile.builder().deferNodeExpansion(true).build()).parseXML(xml);
+    org.w3c.dom.Document w3cDoc = Classes.getFieldValue(doc, "doc");
+    assertTrue(w3cDoc instanceof org.apache.xerces.dom.DeferredDocumentImpl);
+    assertEquals("2", doc.findByTag("item").item(1).getText());
+
+    doc = new DocumentBuilderImpl(ParseProfile.builder().deferNodeExpansion(false).build()).parseXML(xml);
+    w3cDoc = Classes.getFieldValue(doc, "doc");
+    assertFalse(w3cDoc instanceof org.apache.xerces.dom.DeferredDocumentImpl);
+  }
+
+  @Test
+  public void stripWhitespaceText() throws IOException, SAXException
+  {
+    DocumentBuilder builder = new DocumentBuilderImpl(ParseProfile.builder().stripWhitespaceText(true).build());
+    Document doc = builder.loadHTML(stream("bench-probe.html"));
+    org.w3c.dom.Document w3cDoc = Classes.getFieldValue(doc, "doc");
+    assertEquals(0, countWhitespaceText(w3cDoc.getDocumentElement(), false));
+    assertEquals(builder().loadHTML(stream("bench-probe.html")).findByTag("*").size(), doc.findByTag("*").size());
+
+    // pooled parser is reused for second parsing
+    for(int i = 0; i < 2; ++i) {
+      doc = builder.parseHTML("<html><body>\n  <p>a <b>b</b> c</p>\n  <pre>\n  x\n</pre><textarea>  </textarea><script> </script>\n</body></html>");
+      assertEquals("a b c", doc.getByTag("p").getText());
+      assertEquals("\n  x\n", doc.getByTag("pre").getTextContent());
+      assertEquals("  ", doc.getByTag("textarea").getTextContent());
+      assertEquals(" ", doc.getByTag("script").getTextContent());
+      w3cDoc = Classes.getFieldValue(doc, "doc");
+      assertEquals(org.w3c.dom.Node.ELEMENT_NODE, w3cDoc.getElementsByTagName("body").item(0).getFirstChild().getNodeType());
+    }
+  }
+
+  @Test
+  public void xhtmlFastPath() throws IOException, SAXException
+  {
+    DocumentBuilder builder = new DocumentBuilderImpl(ParseProfile.builder().xhtmlMode(ParseProfile.XHTMLMode.AUTO).build());
+    Document doc = builder.loadHTML(stream("bench-probe.html"));
+    assertFalse(doc.isXML());
+    assertEquals("House Community", doc.getByTag("title").getText());
+    assertEquals(builder().loadHTML(stream("bench-probe.html")).findByTag("a").size(), doc.findByTag("a").size());
+
+    // XML parser processes XHTML DTD and adds default attributes
+    String doctype = "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\">";
+    doc = builder.parseHTML(doctype + "<html><body><pre>text</pre></body></html>");
+    assertEquals("preserve", doc.getByTag("pre").getAttr("xml:space"));
+
+    // not well formed source falls back to NekoHTML
+    doc = builder.parseHTML(doctype + "<html><body><pre>text</pre><p>unclosed</body></html>");
+    assertFalse(doc.isXML());
+    assertNull(doc.getByTag("pre").getAttr("xml:space"));
+    assertEquals("unclosed", doc.getByTag("p").getText());
+  }
+
+  @Test
+  public void loadTemplate() throws IOException, SAXException
+  {
+    for(String fixture : new String[]
+    {
+        "page-html5.html", "bench-probe.html"
+    }) {
+      Document doc = new DocumentBuilderImpl().loadTemplate(file(fixture));
+      Document nekoDoc = builder().loadHTML(file(fixture));
+      assertFalse(doc.isXML());
+      assertEquals(nekoDoc.getByTag("title").getText(), doc.getByTag("title").getText());
+      assertEquals(nekoDoc.findByTag("*").size(), doc.findByTag("*").size());
+      assertEquals(nekoDoc.findByTag("script").size(), doc.findByTag("script").size());
+    }
+  }
+
+  @Test
+  public void parseTemplate() throws SAXException
+  {
+    String template = "<!DOCTYPE html><HTML><body>" + //
+        "<img src='a.png' alt=\"a &amp; b\"><br/><div/>" + //
+        "<p id=intro class=x>&lt;tag&gt; &#169; &copy; &unknown; &amp;</p>" + //
+        "<script>if(a<b && c) {}</script>" + //
+        "<style>a>b{}</style><wbr><video><source src=v.mp4><track src=t.vtt></video>" + //
+        "<textarea>&lt;raw&gt;</textarea>" + //
+        "<!-- comment -->" + //
+        "</body></HTML>";
+    Document doc = new DocumentBuilderImpl().parseTemplate(template);
+    org.w3c.dom.Document w3cDoc = Classes.getFieldValue(doc, "doc");
+    assertEquals("html", w3cDoc.getDoctype().getName());
+    assertEquals("html", doc.getRoot().getTag());
+
+    assertEquals("a & b", doc.getByTag("img").getAttr("alt"));
+    assertEquals("a.png", doc.getByTag("img").getAttr("src"));
+    assertEquals("body", doc.getByTag("br").getParent().getTag());
+    assertEquals("body", doc.getByTag("div").getParent().getTag());
+    assertEquals("x", doc.getByTag("p").getAttr("class"));
+    assertEquals("p", doc.getById("intro").getTag());
+    assertNull(doc.getById("missing"));
+    assertEquals("<tag> © © &unknown; &", doc.getByTag("p").getText());
+    assertEquals("if(a<b && c) {}", doc.getByTag("script").getText());
+    assertEquals("a>b{}", doc.getByTag("style").getText());
+    assertEquals("body", doc.getByTag("wbr").getParent().getTag());
+    assertEquals("video", doc.getByTag("track").getParent().getTag());
+    assertEquals("<raw>", doc.getByTag("textarea").getText());
+    assertEquals(org.w3c.dom.Node.COMMENT_NODE, w3cDoc.getElementsByTagName("body").item(0).getLastChild().getNodeType());
+  }
+
+  @Test(expected = SAXException.class)
+  public void parseTemplate_MultipleRoots() throws SAXException
+  {
+    new DocumentBuilderImpl().parseTemplate("<div></div><div></div>");
+  }
+
+  @Test
+  public void parseLimits() throws IOException, SAXException
+  {
+    assertLimit(ParseLimits.builder().maxDepth(2), ParseLimitException.Limit.DEPTH, "<a><b><c/></b></a>", false);
+    assertLimit(ParseLimits.builder().maxDepth(2), ParseLimitException.Limit.DEPTH, "<div><p>text</p></div>", true);
+    assertLimit(ParseLimits.builder().maxNodes(3), ParseLimitException.Limit.NODES, "<a><b>1</b><c>2</c></a>", false);
+    assertLimit(ParseLimits.builder().maxAttributes(2), ParseLimitException.Limit.ATTRIBUTES, "<a x='1' y='2' z='3'/>", false);
+    assertLimit(ParseLimits.builder().maxAttributes(2), ParseLimitException.Limit.ATTRIBUTES, "<p x='1' y='2' z='3'>text</p>", true);
+    assertLimit(ParseLimits.builder().maxBytes(16), ParseLimitException.Limit.BYTES, "<a><b>text</b></a>", false);
+    assertLimit(ParseLimits.builder().maxBytes(16), ParseLimitException.Limit.BYTES, "<p>some text here</p>", true);
+
+    String entities = "<!DOCTYPE a [<!ENTITY e1 'x'><!ENTITY e2 '&e1;&e1;'><!ENTITY e3 '&e2;&e2;'>]><a>&e3;&e3;</a>";
+    assertLimit(ParseLimits.builder().maxEntityExpansions(10), ParseLimitException.Limit.ENTITY_EXPANSIONS, entities, false);
+
+    StringBuilder source = new StringBuilder("<a>");
+    for(int i = 0; i < 100000; ++i) {
+      source.append("<b>text</b>");
+    }
+    source.append("</a>");
+    // source stream stalls past timeout while parsing so that timeout is exceeded regardless machine speed
+    try {
+      new DocumentBuilderImpl(ParseProfile.builder().limits(ParseLimits.builder().timeout(1).build()).build()).loadXML(new StallingInputStream(source.toString().getBytes("UTF-8"), 10));
+      fail("Source exceeding limits should throw parse limit exception.");
+    }
+    catch(ParseLimitException e) {
+      assertEquals(ParseLimitException.Limit.TIMEOUT, e.getLimit());
+    }
+
+    // documents within limits are loaded and byte limit applies to streams too
+    ParseLimits limits = ParseLimits.builder().maxBytes(100000).maxDepth(16).maxNodes(10000).maxAttributes(16).maxEntityExpansions(20).build();
+    DocumentBuilder builder = new DocumentBuilderImpl(ParseProfile.builder().limits(limits).build());
+    assertEquals(3, builder.parseXML("<a><b>1</b><c>2</c></a>").findByTag("*").size());
+    assertEquals(8, builder.parseXML(entities).getRoot().getText().length());
+    assertNotNull(builder.loadHTML(stream("bench-probe.html")));
+    try {
+      new DocumentBuilderImpl(ParseProfile.builder().limits(ParseLimits.builder().maxBytes(100).build()).build()).loadXML(stream("document-utf.xml"));
+      fail("Byte stream longer than limit should throw parse limit exception.");
+    }
+    catch(ParseLimitException e) {
+      assertEquals(ParseLimitException.Limit.BYTES, e.getLimit());
+    }
+
+    // XHTML fast path does not fall back to NekoHTML on exceeded limits
+    builder = new DocumentBuilderImpl(ParseProfile.builder().xhtmlMode(ParseProfile.XHTMLMode.ALWAYS).limits(ParseLimits.builder().maxDepth(2).build()).build());
+    try {
+      builder.parseHTML("<html><body><p>text</p></body></html>");
+      fail("Too deep document should throw parse limit exception.");
+    }
+    catch(ParseLimitException e) {
+      assertEquals(ParseLimitException.Limit.DEPTH, e.getLimit());
+    }
+  }
+
+  private static void assertLimit(ParseLimits.Builder limits, ParseLimitException.Limit limit, String source, boolean html) throws SAXException
+  {
+    DocumentBuilder builder = new DocumentBuilderImpl(ParseProfile.builder().limits(limits.build()).build());
+    try {
+      if(html) {
+        builder.parseHTML(source);
+      }
+      else {
+        builder.parseXML(source);
+      }
+      fail("Source exceeding limits should throw parse limit exception.");
+    }
+    catch(ParseLimitException e) {
+      assertEquals(limit, e.getLimit());
+    }
+  }
+
+  /**
+   * Input stream that delivers content in small chunks and stalls once, after parser consumed some content, that is,
+   * after parsing started.
+   */
+  private static class StallingInputStream extends InputStream
+  {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int STALL_OFFSET = 4 * CHUNK_SIZE;
+
+    private final InputStream stream;
+    private final long stall;
+    private int offset;
+    private boolean stalled;
+
+    public StallingInputStream(byte[] content, long stall)
+    {
+      this.stream = new ByteArrayInputStream(content);
+      this.stall = stall;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      if(!stalled && offset >= STALL_OFFSET) {
+        stalled = true;
+        try {
+          Thread.sleep(stall);
+        }
+        catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      int count = stream.read(b, off, Math.min(len, CHUNK_SIZE));
+      if(count > 0) {
+        offset += count;
+      }
+      return count;
+    }
+  }
+
+  private static int countWhitespaceText(org.w3c.dom.Node node, boolean preserve)
+  {
+    int count = 0;
+    for(org.w3c.dom.Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if(child.getNodeType() == org.w3c.dom.Node.TEXT_NODE) {
+        if(!preserve && child.getNodeValue().trim().isEmpty()) {
+          ++count;
+        }
+      }
+      else {
+        String name = child.getNodeName().toLowerCase();
+        count += countWhitespaceText(child, preserve || name.equals("pre") || name.equals("textarea") || name.equals("script"));
+      }
+    }
+    return count;
+  }
+
   @Test
   public void localLoadedDTD() throws IOException, SAXException
   {
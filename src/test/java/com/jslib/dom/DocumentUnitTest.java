@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.xpath.XPathException;
 
@@ -448,6 +451,229 @@ public class DocumentUnitTest extends TestCase
     assertEquals("ns2.element", elist.item(1).getText());
   }
 
+  public void testFindAll() throws IOException, SAXException
+  {
+    DocumentImpl doc = (DocumentImpl)builder().loadHTML(file("page-simple.html"));
+    List<EList> results = doc.findAll(Query.cssClass("header"), Query.tag("h1"), Query.tag("*"), Query.attr("class", "title"), Query.cssClass("fake"));
+    assertEquals(5, results.size());
+    assertSameElements(doc.findByCssClass("header"), results.get(0));
+    assertSameElements(doc.findByTag("h1"), results.get(1));
+    assertSameElements(doc.findByTag("*"), results.get(2));
+    assertSameElements(doc.findByAttr("class", "title"), results.get(3));
+    assertTrue(results.get(4).isEmpty());
+
+    doc = (DocumentImpl)builder().loadHTML(file("bench-probe.html"));
+    results = doc.findAll(Query.tag("a"), Query.tag("DIV"), Query.attr("id"), Query.attr("href"), Query.cssClass("item"));
+    assertSameElements(doc.findByTag("a"), results.get(0));
+    assertSameElements(doc.findByTag("div"), results.get(1));
+    assertSameElements(doc.findByAttr("id"), results.get(2));
+    assertSameElements(doc.findByAttr("href"), results.get(3));
+    assertSameElements(doc.findByCssClass("item"), results.get(4));
+
+    doc = (DocumentImpl)builder().loadXMLNS(file("document-ns.xml"));
+    results = doc.findAll(Query.tagNS("*", "el"), Query.tagNS(NS1, "el"), Query.attrNS(NS1, "attr", "ns1.value"), Query.attr("attr"));
+    assertSameElements(doc.findByTagNS("*", "el"), results.get(0));
+    assertSameElements(doc.findByTagNS(NS1, "el"), results.get(1));
+    assertSameElements(doc.findByAttrNS(NS1, "attr", "ns1.value"), results.get(2));
+    assertSameElements(doc.findByAttr("attr"), results.get(3));
+  }
+
+  public void testExistsAndCount() throws IOException, SAXException, XPathException
+  {
+    DocumentImpl doc = (DocumentImpl)builder().loadHTML(file("bench-probe.html"));
+    for(Query query : new Query[]
+    {
+        Query.tag("li"), Query.tag("*"), Query.cssClass("list"), Query.attr("href"), Query.attr("data-value"), Query.selector("a[href]")
+    }) {
+      EList expected = doc.findAll(query).get(0);
+      assertFalse(expected.isEmpty());
+      assertTrue(doc.exists(query));
+      assertEquals(expected.size(), doc.count(query));
+    }
+    assertFalse(doc.exists(Query.cssClass("fake")));
+    assertEquals(0, doc.count(Query.attr("fake")));
+
+    doc = (DocumentImpl)builder().loadXMLNS(file("document-ns.xml"));
+    assertTrue(doc.exists(Query.tag("doc")));
+    assertEquals(3, doc.count(Query.tagNS("*", "el")));
+    assertEquals(2, doc.count(Query.attrNS(NS1, "attr")));
+
+    assertTrue(doc.existsXPath("//*[@attr]"));
+    assertFalse(doc.existsXPath("//fake"));
+    assertEquals(doc.findByXPath("//*").size(), doc.countXPath("//*"));
+    assertEquals(0, doc.countXPath("//%s", "fake"));
+  }
+
+  public void testFindAllSelector() throws IOException, SAXException
+  {
+    String html = "<html><body>" + //
+        "<div id='main' class='box wide'>" + //
+        "<a class='button' target='_blank' href='#1'>1</a>" + //
+        "<a class='button primary' href='#2'>2</a>" + //
+        "<span class='button' title='a b'>3</span>" + //
+        "</div>" + //
+        "</body></html>";
+    DocumentImpl doc = (DocumentImpl)builder().parseHTML(html);
+    List<EList> results = doc.findAll(Query.selector("a.button"), Query.selector("#main"), Query.selector(".button[target=_blank]"), Query.selector("*[title='a b']"), Query.selector("div.box.wide"), Query.selector(".button.primary[href]"));
+    assertEquals(6, results.size());
+    assertEquals(2, results.get(0).size());
+    assertEquals("div", results.get(1).item(0).getTag());
+    assertEquals("1", results.get(2).item(0).getText());
+    assertEquals("3", results.get(3).item(0).getText());
+    assertEquals(1, results.get(4).size());
+    assertEquals("2", results.get(5).item(0).getText());
+
+    for(String selector : new String[]
+    {
+        "div a", "div > a", "a:hover", "a.", "[href", "[=x]"
+    }) {
+      try {
+        Query.selector(selector);
+        fail("Not supported selector should throw exception: " + selector);
+      }
+      catch(IllegalArgumentException expected) {}
+    }
+  }
+
+  public void testAdoptElement() throws SAXException
+  {
+    DocumentImpl doc = (DocumentImpl)builder().parseXML("<root/>");
+    Document source = builder().parseXML("<source><div id='1'><p>paragraph</p></div></source>");
+    Element div = source.getByTag("div");
+    Element p = source.getByTag("p");
+
+    Element adopted = doc.adoptElement(div);
+    assertSame(div, adopted);
+    assertSame(doc, div.getDocument());
+    assertSame(doc, p.getDocument());
+    assertNull(div.getParent());
+    assertTrue(source.findByTag("div").isEmpty());
+
+    doc.getRoot().addChild(div);
+    assertSame(p, doc.getByTag("p"));
+    assertEquals("paragraph", doc.getRoot().getText());
+
+    try {
+      doc.adoptElement(div);
+      fail("Adopting element from the same document should throw exception.");
+    }
+    catch(IllegalArgumentException expected) {}
+  }
+
+  public void testGetByTrace() throws SAXException
+  {
+    String html = "<!DOCTYPE html>" + //
+        "<html>" + //
+        "   <head></head>" + //
+        "   <body>" + //
+        "       <div></div>" + //
+        "       <p></p>" + //
+        "       <div>" + //
+        "           <p></p>" + //
+        "           <p></p>" + //
+        "       </div>" + //
+        "   </body>" + //
+        "</html>";
+    DocumentImpl doc = (DocumentImpl)builder().parseHTML(html);
+
+    org.w3c.dom.NodeList nodes = doc.getDocument().getElementsByTagName("*");
+    for(int i = 0; i < nodes.getLength(); ++i) {
+      Element element = doc.getElement(nodes.item(i));
+      assertSame(element, doc.getByTrace(element.trace()));
+    }
+    assertEquals("/html/body/div[1]/p[1]", doc.getByTrace("/html/body/div[1]/p[1]").trace());
+    assertEquals("/html/body/div[0]", doc.getByTrace("/html/body/div").trace());
+    assertEquals("/html/body/div[1]", doc.getByTrace("/HTML/BODY/DIV[1]").trace());
+
+    assertNull(doc.getByTrace("/html/body/div[2]"));
+    assertNull(doc.getByTrace("/html/body/span"));
+    assertNull(doc.getByTrace("/body"));
+
+    for(String trace : new String[]
+    {
+        "html/body", "/", "/html//div", "/html/body/div[1", "/html/body/div[x]", "/html/body/div[-1]", "/html/body/"
+    }) {
+      try {
+        doc.getByTrace(trace);
+        fail("Invalid trace should rise illegal argument exception: " + trace);
+      }
+      catch(IllegalArgumentException expected) {}
+    }
+  }
+
+  public void testDocumentOrder() throws Exception
+  {
+    DocumentImpl doc = (DocumentImpl)builder().parseXML("<a><b><c/><d/></b><e><f/></e></a>");
+    assertNull(doc.getDocumentOrder());
+    DocumentOrder order = doc.indexDocumentOrder();
+    assertSame(order, doc.getDocumentOrder());
+    assertEquals(6, order.size());
+
+    String[] tags = new String[]
+    {
+        "a", "b", "c", "d", "e", "f"
+    };
+    int[] ends = new int[]
+    {
+        5, 3, 2, 3, 5, 5
+    };
+    for(int i = 0; i < tags.length; ++i) {
+      Element element = doc.getByTag(tags[i]);
+      assertEquals(i, order.getNumber(element));
+      assertEquals(ends[i], order.getEnd(element));
+      assertSame(element, order.getElement(i));
+    }
+
+    Element b = doc.getByTag("b");
+    Element d = doc.getByTag("d");
+    Element f = doc.getByTag("f");
+    assertTrue(order.compare(b, f) < 0);
+    assertTrue(order.compare(f, d) > 0);
+    assertEquals(0, order.compare(d, d));
+    assertTrue(order.isAncestor(doc.getRoot(), f));
+    assertTrue(order.isAncestor(b, d));
+    assertFalse(order.isAncestor(b, f));
+    assertFalse(order.isAncestor(b, b));
+    assertFalse(order.isAncestor(d, b));
+    assertEquals(-1, order.getNumber(doc.createElement("g")));
+
+    // attribute and text changes do not affect document order
+    d.setAttr("id", "d");
+    d.setText("text");
+    assertTrue(order.isValid());
+
+    f.remove();
+    assertFalse(order.isValid());
+    assertNull(doc.getDocumentOrder());
+    try {
+      order.getElement(0);
+      fail("Invalid index should rise illegal state exception.");
+    }
+    catch(IllegalStateException expected) {}
+
+    order = doc.indexDocumentOrder();
+    assertEquals(5, order.size());
+    b.addChild(doc.createElement("g"));
+    assertFalse(order.isValid());
+
+    // dropped index removes its mutation events listeners
+    order = doc.indexDocumentOrder();
+    assertFalse(eventListeners(doc).isEmpty());
+    doc.dropDocumentOrder();
+    assertFalse(order.isValid());
+    assertNull(doc.getDocumentOrder());
+    assertTrue(eventListeners(doc).isEmpty());
+    doc.dropDocumentOrder();
+  }
+
+  private static Map<?, ?> eventListeners(DocumentImpl doc) throws Exception
+  {
+    java.lang.reflect.Field field = org.apache.xerces.dom.DocumentImpl.class.getDeclaredField("eventListeners");
+    field.setAccessible(true);
+    Map<?, ?> listeners = (Map<?, ?>)field.get(doc.getDocument());
+    return listeners != null ? listeners : Collections.emptyMap();
+  }
+
   public void testSerialize() throws IOException, SAXException
   {
     Document doc = builder().loadHTML(file("document-utf.xml"));
@@ -464,6 +690,14 @@ public class DocumentUnitTest extends TestCase
     assertEquals(doc.getByTag("h3").getText(), recreatedDoc.getByTag("h3").getText());
   }
 
+  private static void assertSameElements(EList expected, EList elist)
+  {
+    assertEquals(expected.size(), elist.size());
+    for(int i = 0; i < expected.size(); ++i) {
+      assertSame(((ElementImpl)expected.item(i)).getNode(), ((ElementImpl)elist.item(i)).getNode());
+    }
+  }
+
   private static DocumentBuilder builder()
   {
     return new DocumentBuilderImpl();
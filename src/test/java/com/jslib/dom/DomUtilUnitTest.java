@@ -1,5 +1,14 @@
 package com.jslib.dom;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import com.jslib.api.dom.Document;
@@ -24,4 +33,51 @@ public class DomUtilUnitTest extends TestCase {
 		assertEquals("first-name", elist.item(2).getText());
 		assertEquals("surname", elist.item(3).getText());
 	}
+
+	public void testFindByNonEmptyTextOnPage() throws Exception {
+		Document doc = new DocumentBuilderImpl().loadHTML(new File("src/test/resources/bench-probe.html"));
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate("//*[child::text()[normalize-space()][string-length()>0]]", ((DocumentImpl) doc).getDocument(), XPathConstants.NODESET);
+		List<Node> expected = new ArrayList<>();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			if (nodes.item(i).getChildNodes().getLength() == 1 && nodes.item(i).getFirstChild().getNodeType() == Node.TEXT_NODE) {
+				expected.add(nodes.item(i));
+			}
+		}
+
+		EList elist = DomUtil.findByNonEmptyText(doc);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), elist.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), ((ElementImpl) elist.item(i)).getNode());
+		}
+	}
+
+	public void testExtractText() throws SAXException {
+		String fragment = "<body>" + //
+				"<a> about\n  us </a>" + //
+				"<b>   </b>" + //
+				"<p>" + //
+				"  <span>first-name</span>, <span>surname</span>" + //
+				"<![CDATA[ cdata]]></p>" + //
+				"</body>";
+		Document doc = new DocumentBuilderImpl().parseXML(fragment);
+
+		List<String> texts = new ArrayList<>();
+		DomUtil.extractText(doc, DomUtil.WhiteSpace.PRESERVE, (element, text) -> texts.add(element.getTag() + ":" + text));
+		assertEquals(4, texts.size());
+		assertEquals("a: about\n  us ", texts.get(0));
+		assertEquals("p:  ,  cdata", texts.get(1));
+		assertEquals("span:first-name", texts.get(2));
+		assertEquals("span:surname", texts.get(3));
+
+		texts.clear();
+		DomUtil.extractText(doc, DomUtil.WhiteSpace.TRIM, (element, text) -> texts.add(text));
+		assertEquals("about\n  us", texts.get(0));
+		assertEquals(",  cdata", texts.get(1));
+
+		texts.clear();
+		DomUtil.extractText(doc, DomUtil.WhiteSpace.NORMALIZE, (element, text) -> texts.add(text));
+		assertEquals("about us", texts.get(0));
+		assertEquals(", cdata", texts.get(1));
+	}
 }
@@ -1,5 +1,14 @@
 package com.jslib.dom;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.Document;
+import com.jslib.api.dom.EList;
+import com.jslib.lang.BugError;
+
 import junit.framework.TestCase;
 
 public class EListUnitTest extends TestCase
@@ -8,4 +17,132 @@ public class EListUnitTest extends TestCase
   {
 
   }
+
+  public void testBulkOperations() throws SAXException
+  {
+    Document doc = new DocumentBuilderImpl().parseXML("<ul><li class='item'>1</li><li>2</li><li class='item last'>3</li></ul>");
+    EListImpl elist = (EListImpl)doc.findByTag("li");
+
+    elist.setAttr("data-id", "x").addCssClass("row", "item").removeCssClass("last");
+    for(int i = 0; i < elist.size(); ++i) {
+      assertEquals("x", elist.item(i).getAttr("data-id"));
+      assertTrue(elist.item(i).hasCssClass("row"));
+      assertTrue(elist.item(i).hasCssClass("item"));
+      assertFalse(elist.item(i).hasCssClass("last"));
+    }
+    assertEquals("item row", elist.item(0).getAttr("class"));
+    assertEquals("row item", elist.item(1).getAttr("class"));
+
+    elist.removeAttr("data-id").setText("text");
+    List<String> texts = new ArrayList<>();
+    elist.forEach(element -> {
+      assertFalse(element.hasAttr("data-id"));
+      texts.add(element.getText());
+    });
+    assertEquals(3, texts.size());
+    assertEquals("text", texts.get(2));
+  }
+
+  public void testSetOperations() throws SAXException
+  {
+    DocumentImpl doc = (DocumentImpl)new DocumentBuilderImpl().parseXML("<ul><li id='1' class='a'/><li id='2' class='b'/><li id='3' class='a b'/><li id='4'/></ul>");
+    for(int i = 0; i < 2; ++i) {
+      if(i == 1) {
+        doc.indexDocumentOrder();
+      }
+      EListImpl a = (EListImpl)doc.findByCssClass("a");
+      EListImpl b = (EListImpl)doc.findByCssClass("b");
+      // other list is in reverse document order to check result sorting
+      NodeListImpl nodes = new NodeListImpl();
+      nodes.add(((ElementImpl)doc.getByAttr("id", "4")).getNode());
+      nodes.add(((ElementImpl)doc.getByAttr("id", "2")).getNode());
+      EListImpl reversed = new EListImpl(doc, nodes);
+
+      assertEquals("1 2 3", ids(a.union(b)));
+      assertEquals("3", ids(a.intersection(b)));
+      assertEquals("1", ids(a.difference(b)));
+      assertEquals("1 2 3 4", ids(a.union(reversed)));
+      assertEquals("", ids(a.intersection(reversed)));
+      assertEquals("2 4", ids(reversed.difference(a)));
+    }
+  }
+
+  public void testSetOperationsForeignElements() throws SAXException
+  {
+    Document doc = new DocumentBuilderImpl().parseXML("<ul><li/></ul>");
+    Document other = new DocumentBuilderImpl().parseXML("<ul><li/></ul>");
+    try {
+      ((EListImpl)doc.findByTag("li")).union(other.findByTag("li"));
+      fail("Elements from other document should rise illegal argument exception.");
+    }
+    catch(IllegalArgumentException expected) {}
+  }
+
+  private static String ids(EList elist)
+  {
+    StringBuilder ids = new StringBuilder();
+    elist.forEach(element -> {
+      if(ids.length() > 0) {
+        ids.append(' ');
+      }
+      ids.append(element.getAttr("id"));
+    });
+    return ids.toString();
+  }
+
+  public void testRemove() throws SAXException
+  {
+    Document doc = new DocumentBuilderImpl().parseXML("<ul><li class='item'>1</li><li>2</li><li class='item'>3</li></ul>");
+    // elements list by tag is live whereas by CSS class is not
+    doc.findByCssClass("item").remove();
+    assertEquals(1, doc.findByTag("li").size());
+    doc.findByTag("li").remove();
+    assertTrue(doc.findByTag("li").isEmpty());
+  }
+
+  public void testCall() throws SAXException
+  {
+    Document doc = new DocumentBuilderImpl().parseXML("<ul><li>1</li><li>2</li></ul>");
+    EList elist = doc.findByTag("li");
+
+    elist.call("setAttr", "id", "x");
+    elist.call("addCssClass", "row");
+    elist.call("setAttrs", "a", "1", "b", "2");
+    elist.call("setAttrs", (Object)new String[]
+    {
+        "c", "3"
+    });
+    for(int i = 0; i < elist.size(); ++i) {
+      assertEquals("x", elist.item(i).getAttr("id"));
+      assertEquals("row", elist.item(i).getAttr("class"));
+      assertEquals("1", elist.item(i).getAttr("a"));
+      assertEquals("2", elist.item(i).getAttr("b"));
+      assertEquals("3", elist.item(i).getAttr("c"));
+    }
+
+    try {
+      elist.call("setAttr", "id", null);
+      fail("Runtime exception from element method should be propagated.");
+    }
+    catch(IllegalArgumentException expected) {}
+
+    try {
+      elist.call("fakeMethod");
+      fail("Missing element method should throw bug error.");
+    }
+    catch(BugError expected) {}
+
+    // fixed arity overload with primitive parameter
+    elist.call("setRichText", "<b>rich</b>", Boolean.FALSE);
+    for(int i = 0; i < elist.size(); ++i) {
+      assertEquals("rich", elist.item(i).getByTag("b").getText());
+    }
+
+    try {
+      // null argument matches both findByXPath(String, Object[]) and findByXPath(String, Map)
+      elist.call("findByXPath", "b", null);
+      fail("Ambiguous element method should throw bug error.");
+    }
+    catch(BugError expected) {}
+  }
 }
@@ -2,6 +2,12 @@ package com.jslib.dom;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.xml.xpath.XPathException;
 
@@ -9,6 +15,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import com.jslib.api.dom.ChildNode;
 import com.jslib.api.dom.Document;
 import com.jslib.api.dom.DocumentBuilder;
 import com.jslib.api.dom.EList;
@@ -81,6 +88,73 @@ public class ElementUnitTest extends TestCase
     assertEquals("melon", document.getElementById("id3").getTextContent());
   }
 
+  public void testAppendChildren() throws SAXException, XPathException
+  {
+    Document doc = builder().parseXML("<ul><li>1</li></ul>");
+    ElementImpl ul = (ElementImpl)doc.getRoot();
+    List<Element> rows = new ArrayList<>();
+    for(int i = 2; i <= 4; ++i) {
+      rows.add(doc.createElement("li").setText(Integer.toString(i)));
+    }
+    ul.appendChildren(rows, Transfer.COPY);
+    assertEquals("1234", ul.getText());
+
+    ul.insertChildren(ul.findByXPath("li[position() > 2]"), Transfer.COPY);
+    assertEquals("3412", ul.getText());
+
+    ul.replaceChildren(Arrays.asList(ul.getByXPath("li[.='1']"), doc.createElement("li").setText("5")), Transfer.COPY);
+    assertEquals("15", ul.getText());
+    assertEquals(2, ul.findByTag("li").size());
+  }
+
+  public void testAppendForeignChildren() throws SAXException
+  {
+    Document doc = builder().parseXML("<ul/>");
+    ElementImpl ul = (ElementImpl)doc.getRoot();
+
+    Document source = builder().parseXML("<rows><li>1</li><li>2</li></rows>");
+    ul.appendChildren(source.findByTag("li"), Transfer.COPY);
+    assertEquals("12", ul.getText());
+    assertEquals(2, source.findByTag("li").size());
+
+    Element row = source.getByTag("li");
+    ul.appendChildren(source.findByTag("li"), Transfer.MOVE);
+    assertEquals("1212", ul.getText());
+    assertTrue(source.findByTag("li").isEmpty());
+    // element instance is moved with adopted node
+    assertSame(doc, row.getDocument());
+    assertSame(ul.getNode(), ((ElementImpl)row.getParent()).getNode());
+    row.addChild(doc.createElement("b"));
+    assertEquals(1, doc.findByTag("b").size());
+  }
+
+  public void testMoveForeignChild() throws SAXException
+  {
+    Document doc = builder().parseXML("<ul><li>1</li></ul>");
+    ElementImpl li = (ElementImpl)doc.getByTag("li");
+    Document source = builder().parseXML("<rows><li>0</li><li>2</li><li>3</li><li>4</li></rows>");
+    EList rows = source.findByTag("li");
+    Element row0 = rows.item(0);
+    Element row2 = rows.item(1);
+    Element row3 = rows.item(2);
+    Element row4 = rows.item(3);
+
+    li.insertBefore(row0, Transfer.MOVE);
+    ((ElementImpl)doc.getRoot()).addChild(Transfer.MOVE, row2, row3);
+    assertEquals("0123", doc.getRoot().getText());
+    assertSame(doc, row0.getDocument());
+    assertEquals(1, source.findByTag("li").size());
+
+    ((ElementImpl)doc.getRoot()).replaceChild(row4, row3, Transfer.MOVE);
+    assertEquals("0124", doc.getRoot().getText());
+    assertTrue(source.findByTag("li").isEmpty());
+
+    Document other = builder().parseXML("<rows><li>5</li></rows>");
+    ((ElementImpl)row4).replace(other.getByTag("li"), Transfer.COPY);
+    assertEquals("0125", doc.getRoot().getText());
+    assertEquals(1, other.findByTag("li").size());
+  }
+
   public void testAddForeignChild() throws IOException, SAXException
   {
     Document foreignDoc = builder().createXML("root");
@@ -348,6 +422,21 @@ public class ElementUnitTest extends TestCase
     assertEquals("ηεαδερ 3", elist.item(2).getText());
   }
 
+  public void testExistsAndCount() throws XPathException
+  {
+    ElementImpl body = (ElementImpl)doc.getByTag("body");
+    assertTrue(body.exists(Query.cssClass("header")));
+    assertEquals(3, body.count(Query.cssClass("header")));
+    assertFalse(body.exists(Query.cssClass("fake")));
+    assertEquals(body.findByTag("*").size(), body.count(Query.tag("*")));
+    assertEquals(0, body.count(Query.tag("body")));
+    assertEquals(body.findByAttr("class").size(), body.count(Query.attr("class")));
+
+    assertTrue(body.existsXPath("H1"));
+    assertFalse(body.existsXPath("%s", "fake"));
+    assertEquals(body.findByXPath("descendant::*").size(), body.countXPath("descendant::*"));
+  }
+
   public void testGetByAttr() throws IOException, SAXException
   {
     Document doc = builder().loadXML(file("document-ns.xml"));
@@ -646,6 +735,82 @@ public class ElementUnitTest extends TestCase
     assertEquals("header inner", h3.getAttr("class"));
   }
 
+  public void testCssClassArguments() throws SAXException
+  {
+    Element div = builder().parseXML("<div class='a b a c a'/>").getRoot();
+    div.removeCssClass(" a ");
+    assertEquals("b c", div.getAttr("class"));
+    div.addCssClass(" d ").toggleCssClass(" b ");
+    assertEquals("c d", div.getAttr("class"));
+
+    for(String cssClass : new String[]
+    {
+        null, "", "  ", "c d"
+    }) {
+      try {
+        div.addCssClass(cssClass);
+        fail("Invalid CSS class should rise illegal argument exception.");
+      }
+      catch(IllegalArgumentException expected) {}
+      try {
+        div.removeCssClass(cssClass);
+        fail("Invalid CSS class should rise illegal argument exception.");
+      }
+      catch(IllegalArgumentException expected) {}
+      try {
+        div.toggleCssClass(cssClass);
+        fail("Invalid CSS class should rise illegal argument exception.");
+      }
+      catch(IllegalArgumentException expected) {}
+    }
+    assertEquals("c d", div.getAttr("class"));
+  }
+
+  public void testClassList() throws SAXException
+  {
+    ElementImpl div = (ElementImpl)builder().parseXML("<div class=' a  b c '/>").getRoot();
+    ClassList classList = div.getClassList();
+    assertTrue(classList.contains("a"));
+    assertTrue(classList.contains("c"));
+    assertFalse(classList.contains("ab"));
+
+    classList.add("b", "d", "e", "d");
+    assertEquals(" a  b c d e", div.getAttr("class"));
+    classList.remove("a", "c", "x");
+    assertEquals("b d e", div.getAttr("class"));
+    classList.remove("x");
+    assertEquals("b d e", div.getAttr("class"));
+
+    assertFalse(classList.toggle("d"));
+    assertTrue(classList.toggle("f"));
+    assertEquals("b e f", classList.toString());
+    assertTrue(classList.toggle("f", true));
+    assertFalse(classList.toggle("g", false));
+    assertEquals("b e f", classList.toString());
+
+    assertTrue(classList.replace("e", "b"));
+    assertEquals("b f", classList.toString());
+    assertTrue(classList.replace("b", "z"));
+    assertEquals("z f", classList.toString());
+    assertFalse(classList.replace("x", "y"));
+
+    div.addCssClass(" y ");
+    assertTrue(div.hasCssClass("y"));
+    div.toggleCssClass("y");
+    assertFalse(div.hasCssClass("y"));
+
+    for(String cssClass : new String[]
+    {
+        "", "a b"
+    }) {
+      try {
+        classList.add(cssClass);
+        fail("Invalid CSS class should throw exception.");
+      }
+      catch(IllegalArgumentException expected) {}
+    }
+  }
+
   public void testTrace() throws SAXException
   {
     String html = "<!DOCTYPE html>" + //
@@ -764,6 +929,50 @@ public class ElementUnitTest extends TestCase
     assertEquals("h1", elist.item(2).getTag());
   }
 
+  public void testInsertChildrenMixedContent() throws SAXException
+  {
+    Document doc = builder().parseXML("<p>Hello <b/></p>");
+    ElementImpl p = (ElementImpl)doc.getRoot();
+    p.insertChildren(Arrays.asList(doc.createElement("i"), doc.createElement("u")), Transfer.COPY);
+    assertEquals("<p>Hello <i/><u/><b/></p>", serialize(p));
+
+    p.insertChildren(doc.findByTag("b"));
+    assertEquals("<p>Hello <b/><i/><u/></p>", serialize(p));
+
+    p = (ElementImpl)builder().parseXML("<p>text only</p>").getRoot();
+    p.insertChildren(Arrays.asList(p.getDocument().createElement("i")), Transfer.COPY);
+    assertEquals("<p>text only<i/></p>", serialize(p));
+  }
+
+  private static String serialize(ElementImpl element)
+  {
+    StringBuilder builder = new StringBuilder();
+    TreeWalker.walk(element.getNode(), new TreeWalker.NodeVisitor()
+    {
+      @Override
+      public ElementVisitor.Action enter(Node node)
+      {
+        if(node.getNodeType() == Node.ELEMENT_NODE) {
+          builder.append('<').append(node.getNodeName()).append(node.hasChildNodes() ? ">" : "/>");
+        }
+        else {
+          builder.append(node.getNodeValue());
+        }
+        return ElementVisitor.Action.CONTINUE;
+      }
+
+      @Override
+      public ElementVisitor.Action exit(Node node)
+      {
+        if(node.getNodeType() == Node.ELEMENT_NODE && node.hasChildNodes()) {
+          builder.append("</").append(node.getNodeName()).append('>');
+        }
+        return ElementVisitor.Action.CONTINUE;
+      }
+    });
+    return builder.toString();
+  }
+
   public void testInsertBefore()
   {
     Element h2 = doc.getByTag("h2");
@@ -864,6 +1073,173 @@ public class ElementUnitTest extends TestCase
     assertEquals(1, document.getElementsByTagName("i").getLength());
   }
 
+  public void testSetRichTextEntities() throws SAXException
+  {
+    ElementImpl body = (ElementImpl)doc.getByTag("body");
+    body.setRichText("<p>A&nbsp;B &copy; <!--note--><![CDATA[<c>]]></p>");
+    assertEquals(1, body.getChildren().size());
+    Node p = document.getElementsByTagName("p").item(0);
+    assertEquals("A\u00A0B \u00A9 <c>", p.getTextContent());
+    assertEquals(Node.COMMENT_NODE, p.getChildNodes().item(1).getNodeType());
+    assertEquals(Node.CDATA_SECTION_NODE, p.getChildNodes().item(2).getNodeType());
+    assertSame(document, p.getOwnerDocument());
+
+    try {
+      body.setRichText("<p>not closed");
+      fail("Not well formed rich text should throw SAX exception.");
+    }
+    catch(SAXException expected) {}
+    assertEquals(1, document.getElementsByTagName("p").getLength());
+  }
+
+  public void testSetRichTextCache() throws SAXException
+  {
+    ElementImpl body = (ElementImpl)doc.getByTag("body");
+    body.setRichText("<p class=\"note\">Some <b>bold</b> text.</p>", true);
+    body.setRichText("<p class=\"note\">Some <b>bold</b> text.</p>", true);
+    assertEquals(1, document.getElementsByTagName("p").getLength());
+    assertEquals("note", body.getByTag("p").getAttr("class"));
+    assertEquals("Some bold text.", body.getText());
+
+    Document otherDoc = builder().parseHTML("<html><body></body></html>");
+    ElementImpl otherBody = (ElementImpl)otherDoc.getByTag("body");
+    otherBody.setRichText("<p class=\"note\">Some <b>bold</b> text.</p>", true);
+    assertSame(otherDoc, otherBody.getByTag("b").getDocument());
+    assertEquals("Some bold text.", otherBody.getText());
+  }
+
+  public void testChildIteration() throws SAXException
+  {
+    Document doc = builder().parseXML("<ul>text<li id='1'/><!--comment--><li id='2'/>more<li id='3'/></ul>");
+    ElementImpl ul = (ElementImpl)doc.getRoot();
+
+    assertEquals(3, ul.getChildrenCount());
+    assertEquals("1", ul.getChild(0).getAttr("id"));
+    assertEquals("3", ul.getChild(2).getAttr("id"));
+    assertSame(ul.getChild(1), ul.getChild(1));
+    assertNull(ul.getChild(3));
+    try {
+      ul.getChild(-1);
+      fail("Negative index should rise illegal argument exception.");
+    }
+    catch(IllegalArgumentException expected) {}
+
+    StringBuilder nodes = new StringBuilder();
+    for(ChildNode child : ul.getLazyChildNodes()) {
+      nodes.append(child.isElement() ? child.asElement().getAttr("id") : child.asText()).append(' ');
+    }
+    assertEquals("text 1 2 more 3 ", nodes.toString());
+
+    // current child element can be removed while iterating
+    for(Element child : ul.getChildElements()) {
+      if(!child.getAttr("id").equals("3")) {
+        child.remove();
+      }
+    }
+    assertEquals(1, ul.getChildrenCount());
+    assertEquals("3", ul.getChildElements().iterator().next().getAttr("id"));
+
+    // lazy iteration is a live view: inserted children are visited and removing looked ahead child fails
+    doc = builder().parseXML("<ul><li id='1'/><li id='2'/><li id='3'/></ul>");
+    ul = (ElementImpl)doc.getRoot();
+    nodes.setLength(0);
+    for(Element child : ul.getChildElements()) {
+      nodes.append(child.getAttr("id")).append(' ');
+      if(child.getAttr("id").equals("2")) {
+        ul.addChild(doc.createElement("li", "id", "4"));
+      }
+    }
+    assertEquals("1 2 3 4 ", nodes.toString());
+    try {
+      for(Element child : ul.getChildElements()) {
+        if(child.getAttr("id").equals("1")) {
+          ul.getChild(1).remove();
+        }
+      }
+      fail("Removing looked ahead child should rise concurrent modification exception.");
+    }
+    catch(ConcurrentModificationException expected) {}
+
+    // child nodes snapshot is not affected by children moved while iterating
+    doc = builder().parseXML("<div><ul>a<li id='1'/><li id='2'/>b</ul><ol/></div>");
+    ul = (ElementImpl)doc.getByTag("ul");
+    Element ol = doc.getByTag("ol");
+    nodes.setLength(0);
+    for(ChildNode child : ul.getChildNodes()) {
+      nodes.append(child.isElement() ? child.asElement().getAttr("id") : child.asText()).append(' ');
+      if(child.isElement()) {
+        ol.addChild(ul.getChild(ul.getChildrenCount() - 1));
+      }
+    }
+    assertEquals("a 1 2 b ", nodes.toString());
+    assertEquals(0, ul.getChildrenCount());
+    assertEquals(2, ((ElementImpl)ol).getChildrenCount());
+
+    Iterator<Element> empty = ((ElementImpl)doc.createElement("li")).getChildElements().iterator();
+    assertFalse(empty.hasNext());
+    try {
+      empty.next();
+      fail("Exhausted iterator should rise no such element exception.");
+    }
+    catch(NoSuchElementException expected) {}
+  }
+
+  public void testWalk() throws SAXException
+  {
+    Document doc = builder().parseXML("<a><b><c/><d/></b><e><f/></e><g/></a>");
+    StringBuilder trace = new StringBuilder();
+    ElementVisitor visitor = new ElementVisitor()
+    {
+      @Override
+      public Action enter(Element element)
+      {
+        trace.append('+').append(element.getTag());
+        if(element.getTag().equals("e")) {
+          return Action.SKIP_SUBTREE;
+        }
+        return element.getTag().equals("g") ? Action.STOP : Action.CONTINUE;
+      }
+
+      @Override
+      public Action exit(Element element)
+      {
+        trace.append('-').append(element.getTag());
+        return Action.CONTINUE;
+      }
+    };
+
+    assertFalse(((DocumentImpl)doc).walk(visitor));
+    assertEquals("+a+b+c-c+d-d-b+e-e+g", trace.toString());
+
+    trace.setLength(0);
+    assertTrue(((ElementImpl)doc.getByTag("b")).walk(visitor));
+    assertEquals("+b+c-c+d-d-b", trace.toString());
+  }
+
+  public void testWalkDeepTree()
+  {
+    Document doc = builder().createXML("root");
+    org.w3c.dom.Document document = ((DocumentImpl)doc).getDocument();
+    org.w3c.dom.Node parent = document.getDocumentElement();
+    for(int i = 0; i < 100000; ++i) {
+      parent = parent.appendChild(document.createElement("e"));
+    }
+    parent.appendChild(document.createTextNode("text"));
+
+    int[] count = new int[1];
+    assertTrue(((DocumentImpl)doc).walk(new ElementVisitor()
+    {
+      @Override
+      public Action enter(Element element)
+      {
+        ++count[0];
+        return Action.CONTINUE;
+      }
+    }));
+    assertEquals(100001, count[0]);
+    assertTrue(doc.getRoot().getRichText().contains("<e>text</e></e>"));
+  }
+
   public void testGetRichText()
   {
     Element body = doc.getByTag("body");
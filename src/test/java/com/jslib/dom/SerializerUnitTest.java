@@ -115,6 +115,16 @@ public class SerializerUnitTest
     assertTrue(writer.toString().contains("(window,document,'script','//www.google-analytics.com/analytics.js','ga');"));
   }
 
+  @Test
+  public void testSerializeXmlSourceAndStyle() throws Exception
+  {
+    DocumentImpl doc = (DocumentImpl)builder().parseXML("<rss><source url=\"http://feed.com/\">Feed</source><style>a &amp; b &lt; c</style></rss>");
+    serializer.serialize(doc);
+    // source and style are not in serializer empty and raw tags so that XML elements with these names keep content
+    assertTrue(writer.toString().contains("<source url=\"http://feed.com/\">Feed</source>"));
+    assertTrue(writer.toString().contains("<style>a &amp; b &lt; c</style>"));
+  }
+
   @Test
   public void GivenWebXmlFile_ThenAsExpected() throws Exception
   {
@@ -1,5 +1,10 @@
 package com.jslib.dom;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.xml.xpath.XPathException;
 
 import org.xml.sax.SAXException;
@@ -348,6 +353,137 @@ public class XPathUnitTest extends TestCase
     assertEquals(0, elist.size());
   }
 
+  public void testCancellableXPath() throws SAXException, IOException, XPathException
+  {
+    String xml = "<?xml version='1.0' encoding='UTF-8'?>" + //
+        "<root id='1'>" + //
+        "   <child id='2' name='Zeus'>zeus<b id='3'>bold</b> tail</child>" + //
+        "   <child id='4' name='Hades'>hades</child>" + //
+        "   <nephew id='5'>" + //
+        "       <child id='6'><child id='7' name='Hermes'>hermes</child></child>" + //
+        "       <!-- comment --><child id='8' name=''><![CDATA[cdata]]> text</child>" + //
+        "   </nephew>" + //
+        "</root>";
+    String[] expressions = new String[]
+    {
+        "root", "/root", "//child", "//*", "/root/child", "//child/child", "//child//child", "child::root/descendant::child", //
+        "//child[1]", "//child[last()]", "//nephew/child[2]", "/root/*[2]", "//child[@name][2]", "//child[2][@name]", //
+        "//child[@name]", "//child[@name='Zeus']", "//child[@name!='Zeus']", "//*[not(@name)]", "//child[@name and text()]", //
+        "//child[@name='Zeus' or @name='Hades']", "//*[contains(., 'her')]", "//*[contains(text(), 'tail')]", "//*[text()=' tail']", //
+        "//*[starts-with(@name, 'H')]", "//*[. = 'hermes']", "//*[text()='cdata text']", "//b/..", "//b/../..", "//child/.", //
+        "//*[@name='']", "descendant-or-self::node()[@name='Hades']", "//child[(@name='Zeus' or @id='6') and not(text()='x')]", //
+        "//*[@*]", "//*[not(@*)]", "//child[@*='Zeus']", "//*[@*!='2']", "//*[contains(@*, '1')]", "//*[starts-with(@*, 'H')]"
+    };
+
+    DocumentImpl doc = (DocumentImpl)builder().parseXML(xml);
+    assertSameResults(doc, expressions);
+    assertSameResults((DocumentImpl)builder().parseXMLNS(xml.replace("<root id='1'>", "<root id='1' xmlns='js-lib.com/ns'>")), expressions);
+    assertSameResults((DocumentImpl)builder().loadHTML(new File("src/test/resources/bench-probe.html")), new String[]
+    {
+        "//DIV", "//DIV[@class]/A", "//A[contains(@href, 'http')]", "//UL/LI[last()]", "//*[@id][1]", "/HTML/BODY//P[2]", "//A[@*]", "//*[contains(@*, 'a')]"
+    });
+
+    ElementImpl nephew = (ElementImpl)doc.getByTag("nephew");
+    assertEquals(2, nephew.findByXPath(Cancellation.create(), "child").size());
+    assertEquals("6", nephew.getByXPath(Cancellation.create(), "child").getAttr("id"));
+    assertEquals("1", nephew.getByXPath(Cancellation.create(), "..").getAttr("id"));
+    assertEquals(5, nephew.findByXPath(Cancellation.create(), "//child").size());
+
+    // unsupported expressions are evaluated by JDK XPath engine
+    assertNull(NativeXPath.compile("//img[@src]|//input[@src]"));
+    assertNull(NativeXPath.compile("//child[position()=1]"));
+    assertNull(NativeXPath.compile("//ns:child"));
+    assertNull(NativeXPath.compile("//child[99999999999]"));
+    assertEquals(2, doc.findByXPath(Cancellation.create(), "//b|//nephew").size());
+    assertEquals(0, doc.findByXPath(Cancellation.create(), "//child[99999999999]").size());
+  }
+
+  public void testCancelledXPath() throws SAXException, XPathException
+  {
+    StringBuilder xml = new StringBuilder("<root>");
+    for(int i = 0; i < 2000; ++i) {
+      xml.append("<div><p>paragraph <b>bold</b></p></div>");
+    }
+    xml.append("</root>");
+    DocumentImpl doc = (DocumentImpl)builder().parseXML(xml.toString());
+
+    Cancellation cancellation = Cancellation.create();
+    assertEquals(2000, doc.findByXPath(cancellation, "//div/p").size());
+    cancellation.cancel();
+    assertTrue(cancellation.isCancelled());
+    for(String expression : new String[]
+    {
+        "//div/p", "//div|//p"
+    }) {
+      try {
+        doc.findByXPath(cancellation, expression);
+        fail("Cancelled XPath evaluation should throw exception.");
+      }
+      catch(XPathCancelledException expected) {}
+    }
+
+    try {
+      // zero timeout deadline is already passed
+      doc.findByXPath(Cancellation.timeout(0), "//*[contains(., 'missing')]");
+      fail("XPath evaluation exceeding deadline should throw exception.");
+    }
+    catch(XPathCancelledException expected) {}
+  }
+
+  public void testXPathVariables() throws SAXException, XPathException
+  {
+    String xml = "<?xml version='1.0' encoding='UTF-8'?>" + //
+        "<root>" + //
+        "   <item id='1' title=\"it's &quot;quoted&quot;\" class='first selected'></item>" + //
+        "   <item id='2' title='plain' class='second'></item>" + //
+        "   <item id='3' title='plain' class='selected-not'></item>" + //
+        "</root>";
+    DocumentImpl doc = (DocumentImpl)builder().parseXML(xml);
+
+    Map<String, Object> variables = new HashMap<>();
+    variables.put("title", "it's \"quoted\"");
+    assertEquals("1", doc.getByXPath("//item[@title=$title]", variables).getAttr("id"));
+    assertEquals("1", doc.getByAttr("title", "it's \"quoted\"").getAttr("id"));
+
+    variables.put("title", "plain");
+    assertEquals(2, doc.findByXPath("//item[@title=$title]", variables).size());
+    assertEquals(2, doc.findByAttr("title", "plain").size());
+    assertEquals(2, doc.getRoot().findByAttr("title", "plain").size());
+    assertEquals(0, doc.findByAttr("title", "plain' or '1'='1").size());
+
+    variables.put("position", 3);
+    assertEquals("3", doc.getByXPath("//item[$position]", variables).getAttr("id"));
+    assertNull(((ElementImpl)doc.getRoot()).getByXPath("item[@title=$title][@id='1']", variables));
+
+    assertEquals(1, doc.findByCssClass("selected").size());
+    assertEquals("1", doc.getRoot().getByCssClass("selected").getAttr("id"));
+
+    try {
+      doc.findByXPath("//item[@title=$missing]", variables);
+      fail("Unbound XPath variable should throw exception.");
+    }
+    catch(IllegalArgumentException expected) {}
+
+    try {
+      doc.findByAttr("title='plain' or @id");
+      fail("Invalid attribute name should throw exception.");
+    }
+    catch(IllegalArgumentException expected) {}
+  }
+
+  private static void assertSameResults(DocumentImpl doc, String[] expressions) throws XPathException
+  {
+    for(String expression : expressions) {
+      assertNotNull(expression, NativeXPath.compile(expression));
+      EList expected = doc.findByXPath(expression);
+      EList elist = doc.findByXPath(Cancellation.create(), expression);
+      assertEquals(expression, expected.size(), elist.size());
+      for(int i = 0; i < expected.size(); ++i) {
+        assertSame(expression, ((ElementImpl)expected.item(i)).getNode(), ((ElementImpl)elist.item(i)).getNode());
+      }
+    }
+  }
+
   private static DocumentBuilder builder()
   {
     return new DocumentBuilderImpl();
@@ -0,0 +1,80 @@
+package com.jslib.dom.it;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.DocumentImpl;
+import com.jslib.dom.Query;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare separate find queries with batch queries evaluated in a single traversal, on a page renderer like workload.
+ */
+@Ignore
+public class BatchQueryBenchmark extends TestCase {
+	private static final int TEST_COUNT = 2000;
+
+	private static final String[] CSS_CLASSES = { "list", "clear", "caption", "text", "preview", "paging", "operations", "item", "date-time", "active" };
+	private static final String[] TAGS = { "li", "div", "img", "span", "a", "h3", "ul", "p", "script", "link" };
+	private static final String[] ATTRS = { "src", "href", "id", "title", "data-value", "type", "rel", "width", "height", "alt" };
+
+	private DocumentImpl doc;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.doc = (DocumentImpl) new DocumentBuilderImpl().loadHTML(new File("src/test/resources/bench-probe.html"));
+	}
+
+	public void testThirtyQueries() throws IOException, SAXException {
+		Query[] queries = new Query[CSS_CLASSES.length + TAGS.length + ATTRS.length];
+		int index = 0;
+		for (String cssClass : CSS_CLASSES) {
+			queries[index++] = Query.cssClass(cssClass);
+		}
+		for (String tag : TAGS) {
+			queries[index++] = Query.tag(tag);
+		}
+		for (String attr : ATTRS) {
+			queries[index++] = Query.attr(attr);
+		}
+
+		Metter metter = new Metter("separate queries");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			for (String cssClass : CSS_CLASSES) {
+				this.doc.findByCssClass(cssClass);
+			}
+			for (String tag : TAGS) {
+				this.doc.findByTag(tag).size();
+			}
+			for (String attr : ATTRS) {
+				this.doc.findByAttr(attr);
+			}
+		}
+		metter.stop();
+
+		metter = new Metter("batch query");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.doc.findAll(queries);
+		}
+		metter.stop();
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.jslib.dom.it;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.Document;
+import com.jslib.api.dom.EList;
+import com.jslib.api.dom.Element;
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.ElementImpl;
+import com.jslib.dom.Transfer;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare one by one children insertion with fragment based bulk insertion, for table rows from the same document and
+ * from a throwaway parsed document.
+ */
+@Ignore
+public class BulkInsertBenchmark extends TestCase {
+	private static final int TEST_COUNT = 20;
+	private static final int ROWS_COUNT = 10000;
+
+	private DocumentBuilderImpl builder;
+	private String rowsXML;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.builder = new DocumentBuilderImpl();
+		StringBuilder xml = new StringBuilder("<tbody>");
+		for (int i = 0; i < ROWS_COUNT; ++i) {
+			xml.append("<tr><td>").append(i).append("</td><td class='name'>name</td><td><a href='#'>edit</a></td></tr>");
+		}
+		xml.append("</tbody>");
+		this.rowsXML = xml.toString();
+	}
+
+	public void testLocalRows() throws SAXException {
+		Metter metter = new Metter("add child");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Document doc = this.builder.parseXML("<table><tbody/></table>");
+			Element tbody = doc.getByTag("tbody");
+			for (Element row : rows(doc)) {
+				tbody.addChild(row);
+			}
+		}
+		metter.stop();
+
+		metter = new Metter("append children");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Document doc = this.builder.parseXML("<table><tbody/></table>");
+			((ElementImpl) doc.getByTag("tbody")).appendChildren(rows(doc), Transfer.COPY);
+		}
+		metter.stop();
+	}
+
+	public void testForeignRows() throws SAXException {
+		Metter metter = new Metter("import child");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Document doc = this.builder.parseXML("<table><tbody/></table>");
+			Element tbody = doc.getByTag("tbody");
+			for (Element row : this.builder.parseXML(this.rowsXML).findByTag("tr")) {
+				tbody.addChild(row);
+			}
+		}
+		metter.stop();
+
+		metter = new Metter("adopt children");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Document doc = this.builder.parseXML("<table><tbody/></table>");
+			EList rows = this.builder.parseXML(this.rowsXML).findByTag("tr");
+			((ElementImpl) doc.getByTag("tbody")).appendChildren(rows, Transfer.MOVE);
+		}
+		metter.stop();
+	}
+
+	private static List<Element> rows(Document doc) {
+		List<Element> rows = new ArrayList<>();
+		for (int i = 0; i < ROWS_COUNT; ++i) {
+			Element row = doc.createElement("tr");
+			row.addChild(doc.createElement("td").setText(Integer.toString(i)));
+			row.addChild(doc.createElement("td", "class", "name").setText("name"));
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.jslib.dom.it;
+
+import java.util.Date;
+import java.util.Iterator;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.Element;
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.ElementImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare materialized children list with lazy child elements iteration and index free child access, reading the first
+ * three children of an element with one thousand children.
+ */
+@Ignore
+public class ChildIterationBenchmark extends TestCase {
+	private static final int TEST_COUNT = 100000;
+
+	private ElementImpl list;
+
+	@Override
+	protected void setUp() throws SAXException {
+		StringBuilder xml = new StringBuilder("<ul>");
+		for (int i = 0; i < 1000; ++i) {
+			xml.append("<li/>");
+		}
+		xml.append("</ul>");
+		this.list = (ElementImpl) new DocumentBuilderImpl().parseXML(xml.toString()).getRoot();
+	}
+
+	public void testFirstChildren() {
+		Metter metter = new Metter("children list");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Iterator<Element> iterator = this.list.getChildren().iterator();
+			for (int j = 0; j < 3; ++j) {
+				iterator.next();
+			}
+		}
+		metter.stop();
+
+		metter = new Metter("lazy children");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Iterator<Element> iterator = this.list.getChildElements().iterator();
+			for (int j = 0; j < 3; ++j) {
+				iterator.next();
+			}
+		}
+		metter.stop();
+
+		metter = new Metter("child by index");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			for (int j = 0; j < 3; ++j) {
+				this.list.getChild(j);
+			}
+		}
+		metter.stop();
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
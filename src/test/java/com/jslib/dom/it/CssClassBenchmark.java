@@ -0,0 +1,99 @@
+package com.jslib.dom.it;
+
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.dom.ClassList;
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.ElementImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare regular expression based CSS class operations with token scanning, on element with eight classes.
+ */
+@Ignore
+public class CssClassBenchmark extends TestCase {
+	private static final int TEST_COUNT = 1000000;
+
+	private static final String CLASSES = "card card-primary shadow-sm rounded p-3 mb-2 text-muted active";
+
+	private ElementImpl element;
+
+	@Override
+	protected void setUp() throws SAXException {
+		this.element = (ElementImpl) new DocumentBuilderImpl().parseXML("<div class='" + CLASSES + "'/>").getRoot();
+	}
+
+	public void testHasCssClass() {
+		org.w3c.dom.Element node = (org.w3c.dom.Element) this.element.getNode();
+
+		Metter metter = new Metter("regex has");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			hasCssClassRegex(node, "text-muted");
+			hasCssClassRegex(node, "missing");
+		}
+		metter.stop();
+
+		metter = new Metter("token has");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.element.hasCssClass("text-muted");
+			this.element.hasCssClass("missing");
+		}
+		metter.stop();
+	}
+
+	public void testToggleCssClass() {
+		org.w3c.dom.Element node = (org.w3c.dom.Element) this.element.getNode();
+
+		Metter metter = new Metter("regex toggle");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			if (hasCssClassRegex(node, "selected")) {
+				removeCssClassRegex(node, "selected");
+			} else {
+				node.setAttribute("class", node.getAttribute("class") + " selected");
+			}
+		}
+		metter.stop();
+
+		ClassList classList = this.element.getClassList();
+		metter = new Metter("token toggle");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			classList.toggle("selected");
+		}
+		metter.stop();
+	}
+
+	/** Legacy implementation, compiling a regular expression on every call. */
+	private static boolean hasCssClassRegex(org.w3c.dom.Element node, String cssClass) {
+		String classes = node.getAttribute("class");
+		Pattern pattern = Pattern.compile("(?:^|\\s+)" + Pattern.quote(cssClass) + "(?:\\s+|$)");
+		Matcher matcher = pattern.matcher(classes);
+		return matcher.find();
+	}
+
+	/** Legacy implementation, compiling a regular expression on every call. */
+	private static void removeCssClassRegex(org.w3c.dom.Element node, String cssClass) {
+		String classes = node.getAttribute("class");
+		Pattern pattern = Pattern.compile("(?:^|\\s+)" + Pattern.quote(cssClass) + "(?:\\s+|$)");
+		Matcher matcher = pattern.matcher(classes);
+		node.setAttribute("class", matcher.replaceFirst(" ").trim());
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
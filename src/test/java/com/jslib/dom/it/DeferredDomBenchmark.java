@@ -0,0 +1,147 @@
+package com.jslib.dom.it;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.Document;
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.ParseProfile;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare eager and deferred DOM loading for two access patterns: load then read one element, and load then serialize
+ * entire document.
+ */
+@Ignore
+public class DeferredDomBenchmark extends TestCase {
+	private static final int TEST_COUNT = 2000;
+
+	private byte[] html;
+	private byte[] xml;
+	private Writer writer;
+
+	private DocumentBuilderImpl eagerBuilder;
+	private DocumentBuilderImpl deferredBuilder;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.html = Files.readAllBytes(Paths.get("src/test/resources/bench-probe.html"));
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("<config>");
+		for (int i = 0; i < 1000; ++i) {
+			builder.append("<property name=\"key").append(i).append("\">value ").append(i).append("</property>");
+		}
+		builder.append("<database url=\"jdbc:h2:mem\" />");
+		builder.append("</config>");
+		this.xml = builder.toString().getBytes("UTF-8");
+
+		this.writer = new MockWriter();
+
+		ParseProfile eager = ParseProfile.builder().deferNodeExpansion(false).elementNameCase(ParseProfile.ElementNameCase.LOWER).build();
+		ParseProfile deferred = ParseProfile.builder().deferNodeExpansion(true).deferHTMLNodeExpansion(true).elementNameCase(ParseProfile.ElementNameCase.LOWER).build();
+		this.eagerBuilder = new DocumentBuilderImpl(eager);
+		this.deferredBuilder = new DocumentBuilderImpl(deferred);
+	}
+
+	public void testXmlReadOne() throws IOException, SAXException {
+		Metter metter = new Metter("XML eager load and read one");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.eagerBuilder.loadXML(xmlStream()).getByTag("database");
+		}
+		metter.stop();
+
+		metter = new Metter("XML deferred load and read one");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.deferredBuilder.loadXML(xmlStream()).getByTag("database");
+		}
+		metter.stop();
+	}
+
+	public void testXmlSerialize() throws IOException, SAXException {
+		Metter metter = new Metter("XML eager load and serialize");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.eagerBuilder.loadXML(xmlStream()).serialize(this.writer);
+		}
+		metter.stop();
+
+		metter = new Metter("XML deferred load and serialize");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.deferredBuilder.loadXML(xmlStream()).serialize(this.writer);
+		}
+		metter.stop();
+	}
+
+	public void testHtmlReadOne() throws IOException, SAXException {
+		Metter metter = new Metter("HTML eager load and read one");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.eagerBuilder.loadHTML(htmlStream()).getByTag("title");
+		}
+		metter.stop();
+
+		metter = new Metter("HTML deferred load and read one");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.deferredBuilder.loadHTML(htmlStream()).getByTag("title");
+		}
+		metter.stop();
+	}
+
+	public void testHtmlSerialize() throws IOException, SAXException {
+		Metter metter = new Metter("HTML eager load and serialize");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.eagerBuilder.loadHTML(htmlStream()).serialize(this.writer);
+		}
+		metter.stop();
+
+		metter = new Metter("HTML deferred load and serialize");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			Document doc = this.deferredBuilder.loadHTML(htmlStream());
+			doc.serialize(this.writer);
+		}
+		metter.stop();
+	}
+
+	private InputStream xmlStream() {
+		return new ByteArrayInputStream(this.xml);
+	}
+
+	private InputStream htmlStream() {
+		return new ByteArrayInputStream(this.html);
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+
+	private static class MockWriter extends Writer {
+		@Override
+		public void close() throws IOException {
+		}
+
+		@Override
+		public void flush() throws IOException {
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.jslib.dom.it;
+
+import java.util.Date;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.DocumentImpl;
+import com.jslib.dom.EListImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare elements lists union sorted with W3C DOM compareDocumentPosition and with document order index, on a
+ * document with one thousand sections of five paragraphs.
+ */
+@Ignore
+public class DocumentOrderBenchmark extends TestCase {
+	private static final int TEST_COUNT = 10;
+
+	private DocumentImpl doc;
+
+	@Override
+	protected void setUp() throws SAXException {
+		StringBuilder xml = new StringBuilder("<doc>");
+		for (int i = 0; i < 1000; ++i) {
+			xml.append("<section><p class='a'/><p class='b'/><p class='a b'/><p/><p class='b'/></section>");
+		}
+		xml.append("</doc>");
+		this.doc = (DocumentImpl) new DocumentBuilderImpl().parseXML(xml.toString());
+	}
+
+	public void testUnion() {
+		EListImpl a = (EListImpl) this.doc.findByCssClass("a");
+		EListImpl b = (EListImpl) this.doc.findByCssClass("b");
+
+		Metter metter = new Metter("position union");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			a.union(b);
+		}
+		metter.stop();
+
+		metter = new Metter("index union");
+		this.doc.indexDocumentOrder();
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			a.union(b);
+		}
+		metter.stop();
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
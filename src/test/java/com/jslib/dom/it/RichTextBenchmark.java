@@ -0,0 +1,90 @@
+package com.jslib.dom.it;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Date;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Ignore;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.ElementImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare legacy rich text setter, creating a document builder and a throwaway document on every call, with pooled
+ * rich text parser, with and without cache.
+ */
+@Ignore
+public class RichTextBenchmark extends TestCase {
+	private static final int TEST_COUNT = 100000;
+
+	private static final String RICH_TEXT = "<p>Some <b>bold</b>&nbsp;and <i>italic</i> text &copy; 2024.</p>";
+
+	private ElementImpl body;
+
+	@Override
+	protected void setUp() throws SAXException {
+		this.body = (ElementImpl) new DocumentBuilderImpl().parseHTML("<html><body></body></html>").getByTag("body");
+	}
+
+	public void testSetRichText() throws Exception {
+		org.w3c.dom.Element node = (org.w3c.dom.Element) this.body.getNode();
+
+		Metter metter = new Metter("legacy");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			setRichTextLegacy(node, RICH_TEXT);
+		}
+		metter.stop();
+
+		metter = new Metter("pooled");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.body.setRichText(RICH_TEXT);
+		}
+		metter.stop();
+
+		metter = new Metter("cached");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.body.setRichText(RICH_TEXT, true);
+		}
+		metter.stop();
+	}
+
+	/** Legacy implementation, parsing a new document and importing its root element. */
+	private static void setRichTextLegacy(org.w3c.dom.Element node, String richText) throws ParserConfigurationException, SAXException, IOException {
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		DocumentBuilder db = dbf.newDocumentBuilder();
+		String source = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!DOCTYPE fragment [<!ENTITY nbsp \"&#160;\"><!ENTITY copy \"&#169;\"><!ENTITY reg \"&#174;\">]><fragment>" + richText + "</fragment>";
+		org.w3c.dom.Document doc = db.parse(new InputSource(new StringReader(source)));
+		Node richTextNode = node.getOwnerDocument().importNode(doc.getDocumentElement(), true);
+		DocumentFragment richTextFragment = node.getOwnerDocument().createDocumentFragment();
+		while (richTextNode.hasChildNodes()) {
+			richTextFragment.appendChild(richTextNode.removeChild(richTextNode.getFirstChild()));
+		}
+		while (node.hasChildNodes()) {
+			node.removeChild(node.getFirstChild());
+		}
+		node.appendChild(richTextFragment);
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.jslib.dom.it;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.dom.DocumentBuilderImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare NekoHTML parser with template parser on test fixtures. Both builders use default parse profile.
+ */
+@Ignore
+public class TemplateBenchmark extends TestCase {
+	private static final int TEST_COUNT = 2000;
+
+	private DocumentBuilderImpl builder;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.builder = new DocumentBuilderImpl();
+	}
+
+	public void testBenchProbe() throws IOException, SAXException {
+		run("bench-probe.html");
+	}
+
+	public void testPageHtml5() throws IOException, SAXException {
+		run("page-html5.html");
+	}
+
+	private void run(String fixture) throws IOException, SAXException {
+		byte[] bytes = Files.readAllBytes(Paths.get("src/test/resources", fixture));
+
+		Metter metter = new Metter(fixture + " NekoHTML");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.builder.loadHTML(new ByteArrayInputStream(bytes));
+		}
+		metter.stop();
+
+		metter = new Metter(fixture + " template parser");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.builder.loadTemplate(new ByteArrayInputStream(bytes), "UTF-8");
+		}
+		metter.stop();
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.jslib.dom.it;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Ignore;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.jslib.api.dom.Document;
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.DocumentImpl;
+import com.jslib.dom.DomUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare XPath based search for elements with not empty text with single pass tree walk, on a large localized
+ * template like document.
+ */
+@Ignore
+public class TextExtractionBenchmark extends TestCase {
+	private static final int TEST_COUNT = 50;
+	private static final int SECTIONS_COUNT = 5000;
+
+	private Document doc;
+
+	@Override
+	protected void setUp() throws Exception {
+		StringBuilder xml = new StringBuilder("<body>");
+		for (int i = 0; i < SECTIONS_COUNT; ++i) {
+			xml.append("<section>\n\t<h2>title</h2>\n\t<p>paragraph <b>bold</b> text</p>\n\t<ul>\n\t\t<li>item</li>\n\t\t<li><a>link</a></li>\n\t</ul>\n</section>");
+		}
+		xml.append("</body>");
+		this.doc = new DocumentBuilderImpl().parseXML(xml.toString());
+	}
+
+	public void testFindByNonEmptyText() throws XPathExpressionException {
+		Metter metter = new Metter("XPath");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			findByNonEmptyTextXPath();
+		}
+		metter.stop();
+
+		metter = new Metter("tree walk");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			DomUtil.findByNonEmptyText(this.doc).size();
+		}
+		metter.stop();
+
+		metter = new Metter("extract text");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			DomUtil.extractText(this.doc, DomUtil.WhiteSpace.NORMALIZE, (element, text) -> {
+			});
+		}
+		metter.stop();
+	}
+
+	/** Legacy implementation, using XPath and inspecting every hit child list. */
+	private List<Node> findByNonEmptyTextXPath() throws XPathExpressionException {
+		String expression = "//*[child::text()[normalize-space()][string-length()>0]]";
+		NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, ((DocumentImpl) this.doc).getDocument(), XPathConstants.NODESET);
+		List<Node> textNodes = new ArrayList<Node>();
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Node node = nodes.item(i);
+			NodeList children = node.getChildNodes();
+			if (children.getLength() == 1 && children.item(0).getNodeType() == Node.TEXT_NODE) {
+				textNodes.add(node);
+			}
+		}
+		return textNodes;
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
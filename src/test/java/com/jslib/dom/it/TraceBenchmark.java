@@ -0,0 +1,131 @@
+package com.jslib.dom.it;
+
+import java.util.Date;
+
+import javax.xml.xpath.XPathExpressionException;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.api.dom.EList;
+import com.jslib.api.dom.Element;
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.DocumentImpl;
+import com.jslib.dom.ElementImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare legacy element trace, scanning all siblings of every ancestor and inserting at builder start, with trace
+ * computed from preceding siblings, on a document with one thousand rows. Also compare trace lookup by XPath with direct
+ * children navigation.
+ */
+@Ignore
+public class TraceBenchmark extends TestCase {
+	private static final int TEST_COUNT = 100;
+
+	private DocumentImpl doc;
+	private EList cells;
+
+	@Override
+	protected void setUp() throws SAXException {
+		StringBuilder xml = new StringBuilder("<table>");
+		for (int i = 0; i < 1000; ++i) {
+			xml.append("<row><cell/><cell/><cell/></row>");
+		}
+		xml.append("</table>");
+		this.doc = (DocumentImpl) new DocumentBuilderImpl().parseXML(xml.toString());
+		this.cells = this.doc.findByTag("cell");
+	}
+
+	public void testTrace() {
+		Metter metter = new Metter("legacy trace");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			for (Element cell : this.cells) {
+				traceLegacy(cell);
+			}
+		}
+		metter.stop();
+
+		metter = new Metter("trace");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			for (Element cell : this.cells) {
+				cell.trace();
+			}
+		}
+		metter.stop();
+	}
+
+	public void testLookup() throws XPathExpressionException {
+		String trace = this.cells.item(this.cells.size() - 1).trace();
+		String xpath = "/table/row[1000]/cell[3]";
+
+		Metter metter = new Metter("xpath lookup");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.doc.getByXPath(xpath);
+		}
+		metter.stop();
+
+		metter = new Metter("trace lookup");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.doc.getByTrace(trace);
+		}
+		metter.stop();
+	}
+
+	/** Legacy implementation. */
+	private static String traceLegacy(Element element) {
+		StringBuilder sb = new StringBuilder();
+		Element el = element;
+		while (el != null) {
+			int index = indexLegacy(el);
+			if (index != -1) {
+				sb.insert(0, ']');
+				sb.insert(0, index);
+				sb.insert(0, '[');
+			}
+			sb.insert(0, el.getTag());
+			sb.insert(0, '/');
+			el = el.getParent();
+		}
+		return sb.toString();
+	}
+
+	/** Legacy implementation, scanning all siblings. */
+	private static int indexLegacy(Element element) {
+		org.w3c.dom.Node node = (org.w3c.dom.Node) ((ElementImpl) element).getNode();
+		if (node.getParentNode() == null || node.getParentNode().getNodeType() != org.w3c.dom.Node.ELEMENT_NODE) {
+			return -1;
+		}
+		org.w3c.dom.Node n = node.getParentNode().getFirstChild();
+		int index = 0;
+		int twinsCount = 0;
+		boolean indexFound = false;
+		while (n != null) {
+			if (n == node) {
+				indexFound = true;
+			}
+			if (n.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE && n.getNodeName().equals(node.getNodeName())) {
+				++twinsCount;
+				if (!indexFound) {
+					++index;
+				}
+			}
+			n = n.getNextSibling();
+		}
+		return twinsCount > 1 ? index : -1;
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.jslib.dom.it;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Date;
+
+import org.junit.Ignore;
+import org.xml.sax.SAXException;
+
+import com.jslib.dom.DocumentBuilderImpl;
+import com.jslib.dom.ParseProfile;
+
+import junit.framework.TestCase;
+
+/**
+ * Compare NekoHTML parser with XHTML fast path on test fixtures. Well formed fixtures are parsed by XML parser; the
+ * others measure fast path fallback overhead.
+ */
+@Ignore
+public class XhtmlBenchmark extends TestCase {
+	private static final int TEST_COUNT = 2000;
+
+	private DocumentBuilderImpl nekoBuilder;
+	private DocumentBuilderImpl xhtmlBuilder;
+
+	@Override
+	protected void setUp() throws Exception {
+		this.nekoBuilder = new DocumentBuilderImpl();
+		this.xhtmlBuilder = new DocumentBuilderImpl(ParseProfile.builder().xhtmlMode(ParseProfile.XHTMLMode.ALWAYS).build());
+	}
+
+	public void testBenchProbe() throws IOException, SAXException {
+		run("bench-probe.html");
+	}
+
+	public void testPageIndex() throws IOException, SAXException {
+		run("page-index.html");
+	}
+
+	public void testPageHtml5() throws IOException, SAXException {
+		run("page-html5.html");
+	}
+
+	public void testFallback() throws IOException, SAXException {
+		run("page-simple.html");
+	}
+
+	private void run(String fixture) throws IOException, SAXException {
+		byte[] bytes = Files.readAllBytes(Paths.get("src/test/resources", fixture));
+
+		Metter metter = new Metter(fixture + " NekoHTML");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.nekoBuilder.loadHTML(new ByteArrayInputStream(bytes));
+		}
+		metter.stop();
+
+		metter = new Metter(fixture + " XHTML fast path");
+		for (int i = 0; i < TEST_COUNT; ++i) {
+			this.xhtmlBuilder.loadHTML(new ByteArrayInputStream(bytes));
+		}
+		metter.stop();
+	}
+
+	private static class Metter {
+		private long start;
+
+		public Metter(String label) {
+			System.out.print(TEST_COUNT + " " + label + ": ");
+			this.start = new Date().getTime();
+		}
+
+		public void stop() {
+			System.out.println(new Date().getTime() - this.start);
+		}
+	}
+}